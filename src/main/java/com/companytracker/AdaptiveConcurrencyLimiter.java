@@ -0,0 +1,141 @@
+package com.companytracker;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+
+/**
+ * AIMD concurrency limiter for calls to an upstream API.
+ * The limit grows by roughly one per window of successful calls while latency stays
+ * near the observed baseline, shrinks gently when latency rises and is halved on
+ * throttling (HTTP 429/5xx) or network failures.
+ */
+public class AdaptiveConcurrencyLimiter {
+    private static final double BACKOFF_RATIO = 0.5;
+    private static final double LATENCY_BACKOFF_RATIO = 0.9;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double SMOOTHING = 0.2;
+    private static final double BASELINE_DRIFT = 1.001;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+
+    private double limit;
+    private int inFlight;
+    private double baselineLatencyNanos;
+    private double smoothedLatencyNanos;
+
+    public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit) {
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+    }
+
+    /**
+     * Run a call once a slot is free and feed its outcome back into the limit.
+     */
+    public <T> T execute(Callable<T> call) throws IOException {
+        acquire();
+        long start = System.nanoTime();
+        boolean dropped = false;
+        boolean sent = true;
+        try {
+            return call.call();
+        } catch (UpstreamException e) {
+            dropped = e.isOverloaded();
+            throw e;
+        } catch (CircuitOpenException e) {
+            // Nothing was sent, so there is no latency or overload signal to learn from
+            sent = false;
+            throw e;
+        } catch (IOException e) {
+            // Timeouts and connection failures are the strongest overload signal we get
+            dropped = true;
+            throw e;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        } finally {
+            if (sent) {
+                release(System.nanoTime() - start, dropped);
+            } else {
+                releaseUnused();
+            }
+        }
+    }
+
+    public synchronized void acquire() throws InterruptedIOException {
+        while (inFlight >= (int) limit) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for " + name + " concurrency slot");
+            }
+        }
+        inFlight++;
+    }
+
+    private synchronized void releaseUnused() {
+        inFlight--;
+        notifyAll();
+    }
+
+    public synchronized void release(long latencyNanos, boolean dropped) {
+        inFlight--;
+
+        if (dropped) {
+            limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+        } else {
+            smoothedLatencyNanos = smoothedLatencyNanos == 0
+                    ? latencyNanos
+                    : smoothedLatencyNanos + SMOOTHING * (latencyNanos - smoothedLatencyNanos);
+            baselineLatencyNanos = baselineLatencyNanos == 0
+                    ? latencyNanos
+                    : Math.min(latencyNanos, baselineLatencyNanos * BASELINE_DRIFT);
+
+            if (smoothedLatencyNanos > baselineLatencyNanos * LATENCY_TOLERANCE) {
+                limit = Math.max(minLimit, limit * LATENCY_BACKOFF_RATIO);
+            } else {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+        }
+
+        notifyAll();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Current number of concurrent calls allowed
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * The most concurrent calls the limit can grow to, for sizing the worker pools feeding it
+     */
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized long getSmoothedLatencyMillis() {
+        return (long) (smoothedLatencyNanos / 1_000_000);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return name + " concurrency limit: " + (int) limit + " (in flight: " + inFlight +
+                ", latency: " + getSmoothedLatencyMillis() + " ms)";
+    }
+}
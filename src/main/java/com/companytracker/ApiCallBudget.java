@@ -0,0 +1,261 @@
+package com.companytracker;
+
+import io.github.cdimascio.dotenv.Dotenv;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks LangSearch API calls against a per-run and a per-day limit.
+ *
+ * The daily count lives in a small properties file shared by every process on the
+ * machine (workers, shards, the API server). Calls are claimed from it in blocks of
+ * CLAIM_BLOCK under a file lock, read-modify-write, so processes never overrun the
+ * daily limit together and the file is only written once per block. Calls claimed
+ * but not used are given back by close(); a process that crashes loses at most one
+ * block for the day.
+ */
+public class ApiCallBudget implements AutoCloseable {
+    public static final int DEFAULT_DAILY_LIMIT = 1000;
+    static final int CLAIM_BLOCK = 10;
+    private static final String DEFAULT_STATE_FILE = "api_budget.properties";
+    // File locks are held per JVM, so budgets in the same process take turns here first
+    private static final Object FILE_LOCK = new Object();
+
+    private final int maxPerRun;
+    private final int maxPerDay;
+    private final Path stateFile;
+    private final Path lockFile;
+    private final AtomicInteger usedThisRun = new AtomicInteger();
+
+    // Guarded by this: the day the claim is for, calls claimed and not yet used,
+    // and the shared count as of the last time the file was read
+    private long day;
+    private int claimed;
+    private int sharedUsed;
+
+    public ApiCallBudget(int maxPerRun) {
+        this(maxPerRun, configuredDailyLimit(), Paths.get(DEFAULT_STATE_FILE));
+    }
+
+    public ApiCallBudget(int maxPerRun, int maxPerDay, Path stateFile) {
+        this.maxPerRun = maxPerRun;
+        this.maxPerDay = maxPerDay;
+        this.stateFile = stateFile;
+        this.lockFile = stateFile.resolveSibling(stateFile.getFileName() + ".lock");
+        this.day = LocalDate.now().toEpochDay();
+        this.sharedUsed = readUsed(day);
+    }
+
+    /**
+     * A budget for a command-line process, closed by the shutdown hook if the process is
+     * stopped before it closes the budget itself
+     */
+    public static ApiCallBudget forProcess(int maxPerRun) {
+        ApiCallBudget budget = new ApiCallBudget(maxPerRun);
+        Shutdown.register("API budget " + budget.stateFile, budget);
+        return budget;
+    }
+
+    /**
+     * Reserve one API call if both the run and the daily limit allow it.
+     * Never waits for other threads' calls; returns false once the budget is exhausted.
+     */
+    public boolean tryAcquire() {
+        if (!reserveRunSlot()) {
+            return false;
+        }
+        synchronized (this) {
+            rollOver();
+            if (claimed == 0 && !claimBlock()) {
+                usedThisRun.decrementAndGet();
+                return false;
+            }
+            claimed--;
+            return true;
+        }
+    }
+
+    /**
+     * Give back a reservation that did not end up calling the API. It stays claimed
+     * by this process and is used by the next tryAcquire.
+     */
+    public void release() {
+        usedThisRun.decrementAndGet();
+        synchronized (this) {
+            if (day == LocalDate.now().toEpochDay()) {
+                claimed++;
+            }
+        }
+    }
+
+    /**
+     * Return claimed but unused calls to the shared count
+     */
+    @Override
+    public synchronized void close() {
+        Shutdown.unregister(this);
+        if (claimed == 0 || day != LocalDate.now().toEpochDay()) {
+            claimed = 0;
+            return;
+        }
+        int unused = claimed;
+        try {
+            updateShared(used -> Math.max(0, used - unused));
+            claimed = 0;
+        } catch (IOException e) {
+            Log.warn("Could not return %d unused API calls: %s", unused, e.getMessage());
+        }
+    }
+
+    public boolean isExhausted() {
+        return getRemaining() <= 0;
+    }
+
+    /**
+     * Calls left for this run. Other processes may use the shared daily calls first,
+     * so tryAcquire can still fail while this is positive.
+     */
+    public int getRemaining() {
+        synchronized (this) {
+            rollOver();
+            return Math.min(maxPerRun - usedThisRun.get(), claimed + maxPerDay - sharedUsed);
+        }
+    }
+
+    public int getUsedThisRun() {
+        return usedThisRun.get();
+    }
+
+    /**
+     * Calls used today by all processes, as of the last claim
+     */
+    public synchronized int getUsedToday() {
+        rollOver();
+        return sharedUsed - claimed;
+    }
+
+    public int getMaxPerRun() {
+        return maxPerRun;
+    }
+
+    public int getMaxPerDay() {
+        return maxPerDay;
+    }
+
+    private boolean reserveRunSlot() {
+        while (true) {
+            int used = usedThisRun.get();
+            if (used >= maxPerRun) {
+                return false;
+            }
+            if (usedThisRun.compareAndSet(used, used + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void rollOver() {
+        long today = LocalDate.now().toEpochDay();
+        if (day != today) {
+            // Yesterday's unused claim expired with the day
+            day = today;
+            claimed = 0;
+            sharedUsed = 0;
+        }
+    }
+
+    private boolean claimBlock() {
+        int[] granted = new int[1];
+        try {
+            sharedUsed = updateShared(used -> {
+                granted[0] = Math.max(0, Math.min(CLAIM_BLOCK, maxPerDay - used));
+                return used + granted[0];
+            });
+        } catch (IOException e) {
+            Log.warn("Could not update API budget state: %s", e.getMessage());
+            return false;
+        }
+        claimed = granted[0];
+        return claimed > 0;
+    }
+
+    private interface CountUpdate {
+        int apply(int used);
+    }
+
+    /**
+     * Read today's shared count, apply the update and write it back, holding the
+     * lock file so other processes can't interleave. Returns the new count.
+     */
+    private int updateShared(CountUpdate update) throws IOException {
+        synchronized (FILE_LOCK) {
+            try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock lock = channel.lock();
+                try {
+                    int used = update.apply(readUsed(day));
+                    writeUsed(day, used);
+                    return used;
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+    }
+
+    private int readUsed(long epochDay) {
+        if (!Files.exists(stateFile)) {
+            return 0;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(stateFile)) {
+            properties.load(input);
+            LocalDate date = LocalDate.parse(properties.getProperty("date"));
+            return date.toEpochDay() == epochDay ? Integer.parseInt(properties.getProperty("used", "0")) : 0;
+        } catch (Exception e) {
+            Log.warn("Could not read API budget state: %s", e.getMessage());
+            return 0;
+        }
+    }
+
+    private void writeUsed(long epochDay, int used) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("date", LocalDate.ofEpochDay(epochDay).toString());
+        properties.setProperty("used", Integer.toString(used));
+
+        Path tmp = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+        try (OutputStream output = Files.newOutputStream(tmp)) {
+            properties.store(output, "LangSearch API calls used per day");
+        }
+        Files.move(tmp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read LANGSEARCH_DAILY_LIMIT from .env.local or .env, falling back to the default
+     */
+    static int configuredDailyLimit() {
+        try {
+            String value = Dotenv.configure().filename(".env.local").ignoreIfMissing().load()
+                    .get("LANGSEARCH_DAILY_LIMIT");
+            if (value == null) {
+                value = Dotenv.configure().filename(".env").ignoreIfMissing().load()
+                        .get("LANGSEARCH_DAILY_LIMIT");
+            }
+            return value != null ? Integer.parseInt(value.trim()) : DEFAULT_DAILY_LIMIT;
+        } catch (Exception e) {
+            return DEFAULT_DAILY_LIMIT;
+        }
+    }
+}
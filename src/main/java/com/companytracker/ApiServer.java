@@ -0,0 +1,378 @@
+package com.companytracker;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-running local HTTP API that keeps storage, search clients and caches warm
+ * between lookups. Each admitted request runs on its own virtual thread when the
+ * JVM supports them (Java 21+), otherwise on a bounded platform thread pool.
+ * Requests beyond the concurrency and queue limits are shed with 503.
+ *
+ * Endpoints:
+ *   GET  /health
+ *   GET  /companies
+ *   GET  /companies/lookup?name=...
+ *   GET  /companies/search?name=...&limit=10
+ *   POST /check?name=...
+ */
+public class ApiServer {
+    private static final ThreadLocal<Boolean> SHEDDING = ThreadLocal.withInitial(() -> false);
+    // Set by handle() when the response is sent later, by whoever completes the handler's future
+    private static final ThreadLocal<Boolean> RESPONDING_LATER = ThreadLocal.withInitial(() -> false);
+
+    private final StorageService storageService;
+    private final SearchService searchService;
+    private final ApiCallBudget apiCallBudget;
+    private final RetryPolicy retryPolicy;
+    private final WebsiteCache websiteCache;
+    private final Gson gson = new Gson();
+
+    private final int port;
+    private final int maxConcurrent;
+    private final int maxAdmitted;
+    private final Semaphore admission;
+    // Admitted requests beyond maxConcurrent wait here, whatever executor runs them
+    private final Semaphore running;
+    private final AtomicLong shedCount = new AtomicLong();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    private HttpServer server;
+    private ExecutorService workers;
+
+    public ApiServer(StorageService storageService, SearchService searchService, ApiCallBudget apiCallBudget,
+                     int port, int maxConcurrent, int maxQueued) {
+        this.storageService = storageService;
+        this.searchService = searchService;
+        this.apiCallBudget = apiCallBudget;
+        this.retryPolicy = new RetryPolicy("LangSearch", apiCallBudget);
+        this.websiteCache = new WebsiteCache(storageService);
+        this.port = port;
+        this.maxConcurrent = maxConcurrent;
+        this.maxAdmitted = maxConcurrent + maxQueued;
+        this.admission = new Semaphore(maxAdmitted);
+        this.running = new Semaphore(maxConcurrent);
+    }
+
+    public void start() throws IOException {
+        workers = newWorkerExecutor(maxConcurrent);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext("/health", exchange -> handle(exchange, "GET", this::health));
+        server.createContext("/companies/lookup", exchange -> handle(exchange, "GET", this::lookup));
+        server.createContext("/companies/search", exchange -> handle(exchange, "GET", this::search));
+        server.createContext("/companies", exchange -> handle(exchange, "GET", this::listCompanies));
+        server.createContext("/check", exchange -> handle(exchange, "POST", this::check));
+
+        // Admission control happens before a request is handed to a worker:
+        // over the limit, the dispatcher thread answers 503 itself
+        server.setExecutor(task -> {
+            if (admission.tryAcquire()) {
+                try {
+                    workers.execute(() -> {
+                        running.acquireUninterruptibly();
+                        try {
+                            task.run();
+                        } finally {
+                            // A response sent later releases its permits once it is sent
+                            if (RESPONDING_LATER.get()) {
+                                RESPONDING_LATER.set(false);
+                            } else {
+                                running.release();
+                                admission.release();
+                            }
+                        }
+                    });
+                    return;
+                } catch (RejectedExecutionException e) {
+                    // Only once the workers are shutting down; answer 503 instead of dropping the request
+                    admission.release();
+                }
+            }
+            shedCount.incrementAndGet();
+            SHEDDING.set(true);
+            try {
+                task.run();
+            } finally {
+                SHEDDING.set(false);
+            }
+        });
+        server.start();
+        Log.info("API server listening on http://127.0.0.1:%d (max concurrent %d)",
+                server.getAddress().getPort(), maxConcurrent);
+    }
+
+    public void stop(int delaySeconds) {
+        if (server != null) {
+            server.stop(delaySeconds);
+        }
+        if (workers != null) {
+            workers.shutdown();
+            try {
+                workers.awaitTermination(delaySeconds, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        stopped.countDown();
+    }
+
+    public void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * One virtual thread per task on Java 21+. Looked up reflectively because the
+     * project still compiles for Java 17, where a fixed pool is used instead. Its
+     * queue is unbounded: admission already limits the tasks handed to it, and a
+     * bounded queue would reject admitted requests. Virtual threads aren't limited
+     * to maxConcurrent, so the tasks themselves wait for a running permit.
+     */
+    static ExecutorService newWorkerExecutor(int maxConcurrent) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>());
+        }
+    }
+
+    /**
+     * Returns the response body, or a CompletableFuture of it for a response that is
+     * sent once the future completes, off the worker thread
+     */
+    private interface Handler {
+        Object handle(Map<String, String> params) throws Exception;
+    }
+
+    private void handle(HttpExchange exchange, String method, Handler handler) {
+        Object body;
+        try {
+            if (SHEDDING.get()) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                respond(exchange, 503, error("Server overloaded, try again later"));
+                return;
+            }
+            if (!exchange.getRequestMethod().equalsIgnoreCase(method)) {
+                respond(exchange, 405, error("Use " + method));
+                return;
+            }
+            body = handler.handle(parseQuery(exchange.getRequestURI().getRawQuery()));
+        } catch (Exception e) {
+            respond(exchange, null, e);
+            return;
+        }
+
+        if (body instanceof CompletableFuture) {
+            RESPONDING_LATER.set(true);
+            ((CompletableFuture<?>) body).whenComplete((value, error) -> {
+                try {
+                    respond(exchange, value, error instanceof CompletionException ? error.getCause() : error);
+                } finally {
+                    running.release();
+                    admission.release();
+                }
+            });
+            return;
+        }
+        respond(exchange, body, null);
+    }
+
+    private void respond(HttpExchange exchange, Object body, Throwable error) {
+        if (error == null) {
+            respond(exchange, body == null ? 404 : 200, body == null ? error("Not found") : body);
+        } else if (error instanceof CircuitOpenException) {
+            CircuitOpenException open = (CircuitOpenException) error;
+            long seconds = Math.max(1, Duration.between(Instant.now(), open.getRetryAt()).getSeconds());
+            exchange.getResponseHeaders().set("Retry-After", String.valueOf(seconds));
+            respond(exchange, 503, error(error.getMessage()));
+        } else if (error instanceof BudgetExhaustedException) {
+            respond(exchange, 429, error(error.getMessage()));
+        } else if (error instanceof IllegalArgumentException) {
+            respond(exchange, 400, error(error.getMessage()));
+        } else {
+            respond(exchange, 500, error(error.getMessage()));
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, Object body) {
+        try {
+            send(exchange, status, body);
+        } catch (IOException e) {
+            Log.debug("Could not send the response: %s", e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Object health(Map<String, String> params) {
+        JsonObject json = new JsonObject();
+        json.addProperty("status", "ok");
+        json.addProperty("admitted", maxAdmitted - admission.availablePermits());
+        json.addProperty("running", maxConcurrent - running.availablePermits());
+        json.addProperty("shed", shedCount.get());
+        json.addProperty("apiCallsToday", apiCallBudget.getUsedToday());
+        json.addProperty("apiCallsRemaining", apiCallBudget.getRemaining());
+        json.addProperty("searchConcurrencyLimit", searchService.getLimiter().getLimit());
+        json.addProperty("searchCircuit", searchService.getCircuitBreaker().getState().name());
+        json.addProperty("cachedLookups", websiteCache.size());
+        return json;
+    }
+
+    private Object listCompanies(Map<String, String> params) throws Exception {
+        return storageService.getAllCompanies();
+    }
+
+    private Object lookup(Map<String, String> params) throws Exception {
+        return storageService.getCompanyByName(requireName(params));
+    }
+
+    private Object search(Map<String, String> params) throws Exception {
+        int limit;
+        try {
+            limit = Integer.parseInt(params.getOrDefault("limit", "10"));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid 'limit' parameter");
+        }
+        return storageService.findCompaniesFuzzy(requireName(params), Math.max(1, Math.min(limit, 100)));
+    }
+
+    private Object check(Map<String, String> params) throws Exception {
+        String name = requireName(params);
+        if (storageService.getCompanyByName(name) == null) {
+            storageService.addCompany(new Company(name));
+        }
+
+        BolagsfaktaCompany key = new BolagsfaktaCompany();
+        key.setCompanyName(name);
+        WebsiteCache.Entry cached = websiteCache.get(key);
+
+        JsonObject json = new JsonObject();
+        json.addProperty("name", name);
+        if (cached != null) {
+            json.addProperty("hasWebsite", cached.isHasWebsite());
+            json.addProperty("website", cached.getUrl());
+            json.addProperty("source", "cache");
+            return json;
+        }
+
+        if (!apiCallBudget.tryAcquire()) {
+            throw new BudgetExhaustedException("API call budget exhausted");
+        }
+        // Retries wait out their backoff off the worker thread; the response is sent when the search completes
+        CompletableFuture<SearchService.SearchResult> check;
+        try {
+            check = SearchClaims.runOnceAsync(storageService, name, () ->
+                    retryPolicy.executeAsync(() -> searchService.searchForMatchingUrl(name), Runnable::run)
+                            .thenApply(searched -> {
+                                try {
+                                    storageService.updateCompanyWebsite(name, searched.getMatchedUrl(),
+                                            searched.getMatchedUrl() != null);
+                                    storageService.saveSearchUrls(Map.of(name, searched.getAllUrls()),
+                                            searched.isComplete());
+                                } catch (Exception e) {
+                                    throw new CompletionException(e);
+                                }
+                                return searched;
+                            }));
+        } catch (Exception e) {
+            apiCallBudget.release();
+            throw e;
+        }
+        return check.handle((result, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                if (cause instanceof CircuitOpenException) {
+                    apiCallBudget.release();
+                }
+                throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+            }
+            boolean hasWebsite;
+            String website;
+            if (result == null) {
+                // Another process checked it meanwhile and stored the result
+                apiCallBudget.release();
+                Company stored;
+                try {
+                    stored = storageService.getCompanyByName(name);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+                hasWebsite = stored != null && stored.isHasWebsite();
+                website = stored != null ? stored.getWebsite() : null;
+            } else {
+                if (result.isShared()) {
+                    apiCallBudget.release();
+                }
+                website = result.getMatchedUrl();
+                hasWebsite = website != null;
+            }
+            websiteCache.put(key, hasWebsite, website);
+
+            json.addProperty("hasWebsite", hasWebsite);
+            json.addProperty("website", website);
+            json.addProperty("source", "search");
+            return json;
+        });
+    }
+
+    private String requireName(Map<String, String> params) {
+        String name = params.get("name");
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("Missing 'name' parameter");
+        }
+        return name.trim();
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq >= 0 ? pair.substring(0, eq) : pair;
+            String value = eq >= 0 ? pair.substring(eq + 1) : "";
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static JsonObject error(String message) {
+        JsonObject json = new JsonObject();
+        json.addProperty("error", message);
+        return json;
+    }
+
+    private void send(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = (body instanceof JsonObject ? body.toString() : gson.toJson(body))
+                .getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+}
@@ -1,16 +1,21 @@
 package com.companytracker;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 public class App {
     private StorageService storageService;
     private SearchService searchService;
+    private ApiCallBudget apiCallBudget;
     private Scanner scanner;
 
     public App() throws Exception {
         this.storageService = new DatabaseService();
         this.searchService = new SearchService();
+        this.apiCallBudget = ApiCallBudget.forProcess(Integer.MAX_VALUE);
         this.scanner = new Scanner(System.in);
     }
 
@@ -20,6 +25,7 @@ public class App {
 
         boolean running = true;
         while (running) {
+            Log.flush();
             displayMenu();
             String choice = scanner.nextLine().trim();
 
@@ -79,7 +85,10 @@ public class App {
         }
 
         Company company = new Company(name);
-        storageService.addCompany(company);
+        untilDone("add " + name, () -> {
+            storageService.addCompany(company);
+            return null;
+        });
         System.out.println("Company added successfully!");
     }
 
@@ -88,6 +97,12 @@ public class App {
         String name = scanner.nextLine().trim();
 
         Company company = storageService.getCompanyByName(name);
+        if (company == null) {
+            company = pickSimilarCompany(name);
+            if (company != null) {
+                name = company.getName();
+            }
+        }
         if (company == null) {
             System.out.println("Company not found. Would you like to add it first? (y/n)");
             String response = scanner.nextLine().trim().toLowerCase();
@@ -99,18 +114,64 @@ public class App {
             }
         }
 
-        System.out.println("Searching for website...");
-        SearchService.SearchResult result = searchService.searchCompanyWebsite(name);
+        if (!apiCallBudget.tryAcquire()) {
+            System.out.println("Daily API call limit reached (" + apiCallBudget.getMaxPerDay() + "). Try again tomorrow.");
+            return;
+        }
 
-        storageService.updateCompanyWebsite(name, result.getWebsiteUrl(), result.isHasWebsite());
+        System.out.println("Searching for website...");
+        String checkedName = name;
+        Company checked = untilDone("check " + name, () -> searchAndStore(checkedName));
 
-        if (result.isHasWebsite()) {
-            System.out.println("✓ Website found: " + result.getWebsiteUrl());
+        if (checked != null && checked.isHasWebsite()) {
+            System.out.println("✓ Website found: " + checked.getWebsite());
         } else {
             System.out.println("✗ No website found for this company.");
         }
     }
 
+    /**
+     * Search for the company's website and store the result, unless another process
+     * is already checking it; then wait for that result instead. Returns the stored
+     * company. The caller has acquired one API call, which is given back if unused.
+     */
+    private Company searchAndStore(String name) throws Exception {
+        SearchService.SearchResult result = SearchClaims.runOnce(storageService, name, () -> {
+            SearchService.SearchResult searched = searchService.searchForMatchingUrl(name);
+            storageService.updateCompanyWebsite(name, searched.getMatchedUrl(), searched.getMatchedUrl() != null);
+            storageService.saveSearchUrls(Map.of(name, searched.getAllUrls()), searched.isComplete());
+            return searched;
+        });
+        if (result == null || result.isShared()) {
+            apiCallBudget.release();
+        }
+        return storageService.getCompanyByName(name);
+    }
+
+    /**
+     * Offer stored companies with a similar name before adding a likely duplicate.
+     * Returns the chosen company or null.
+     */
+    private Company pickSimilarCompany(String name) throws Exception {
+        List<Company> similar = storageService.findCompaniesFuzzy(name, 5);
+        if (similar.isEmpty()) {
+            return null;
+        }
+
+        System.out.println("No exact match. Did you mean:");
+        for (int i = 0; i < similar.size(); i++) {
+            System.out.println("  " + (i + 1) + ". " + similar.get(i).getName());
+        }
+        System.out.print("Pick a number, or press Enter for none: ");
+        String choice = scanner.nextLine().trim();
+        try {
+            int index = Integer.parseInt(choice) - 1;
+            return index >= 0 && index < similar.size() ? similar.get(index) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     private void listAllCompanies() throws Exception {
         List<Company> companies = storageService.getAllCompanies();
 
@@ -145,27 +206,39 @@ public class App {
         }
 
         System.out.println("Checking websites for all companies...\n");
+        boolean finished = untilDone("check all", () -> checkEach(companies));
+        if (finished) {
+            System.out.println("\nFinished checking all companies!");
+        }
+    }
 
+    /**
+     * Returns false if the loop stopped before checking every company
+     */
+    private boolean checkEach(List<Company> companies) throws Exception {
         for (Company company : companies) {
+            if (Shutdown.isRequested()) {
+                System.out.println("\nShutting down. Stopping.");
+                return false;
+            }
+            if (!apiCallBudget.tryAcquire()) {
+                System.out.println("\nDaily API call limit reached (" + apiCallBudget.getMaxPerDay() + "). Stopping.");
+                return false;
+            }
+
             System.out.println("Checking: " + company.getName());
-            SearchService.SearchResult result = searchService.searchCompanyWebsite(company.getName());
-            storageService.updateCompanyWebsite(company.getName(), result.getWebsiteUrl(), result.isHasWebsite());
+            Company checked = searchAndStore(company.getName());
 
-            if (result.isHasWebsite()) {
-                System.out.println("  ✓ Found: " + result.getWebsiteUrl());
+            if (checked != null && checked.isHasWebsite()) {
+                System.out.println("  ✓ Found: " + checked.getWebsite());
             } else {
                 System.out.println("  ✗ Not found");
             }
 
             // Small delay to avoid rate limiting
-            try {
-                Thread.sleep(500);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
+            Shutdown.awaitRequest(500, TimeUnit.MILLISECONDS);
         }
-
-        System.out.println("\nFinished checking all companies!");
+        return true;
     }
 
     private void removeCompany() throws Exception {
@@ -186,10 +259,26 @@ public class App {
             return;
         }
 
-        storageService.removeCompany(name);
+        untilDone("remove " + name, () -> {
+            storageService.removeCompany(name);
+            return null;
+        });
         System.out.println("Company removed successfully!");
     }
 
+    /**
+     * Run a step the shutdown hook lets finish before closing the database. Prompts stay
+     * outside it, so Ctrl-C at a prompt exits at once instead of waiting out SHUTDOWN_TIMEOUT.
+     */
+    private <T> T untilDone(String name, Callable<T> step) throws Exception {
+        Shutdown.Work work = Shutdown.begin(name);
+        try {
+            return step.call();
+        } finally {
+            work.close();
+        }
+    }
+
     private void cleanup() {
         try {
             storageService.close();
@@ -199,13 +288,41 @@ public class App {
         }
     }
 
+    /**
+     * Run a headless batch command and return its exit code
+     */
+    public int runBatch(String[] args) {
+        Shutdown.Work work = Shutdown.begin("batch run");
+        try {
+            return new BatchRunner(storageService, searchService, apiCallBudget).run(args);
+        } finally {
+            cleanup();
+            Log.flush();
+            work.close();
+        }
+    }
+
     public static void main(String[] args) {
+        if (args.length > 0 && (args[0].equals("--help") || args[0].equals("-h"))) {
+            BatchRunner.printUsage();
+            return;
+        }
+
+        App app;
         try {
-            App app = new App();
-            app.run();
+            app = new App();
         } catch (Exception e) {
             System.out.println("Failed to initialize storage: " + e.getMessage());
             e.printStackTrace();
+            if (args.length > 0) {
+                System.exit(BatchRunner.EXIT_FAILURE);
+            }
+            return;
+        }
+
+        if (args.length > 0) {
+            System.exit(app.runBatch(args));
         }
+        app.run();
     }
 }
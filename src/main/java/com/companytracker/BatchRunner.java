@@ -0,0 +1,621 @@
+package com.companytracker;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Non-interactive entry point for scheduled jobs. Runs one command given on
+ * the command line and reports the outcome through the process exit code.
+ */
+public class BatchRunner {
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_COMPLETED_WITH_ERRORS = 1;
+    public static final int EXIT_USAGE = 2;
+    public static final int EXIT_BUDGET_EXHAUSTED = 3;
+    public static final int EXIT_FAILURE = 4;
+    public static final int EXIT_DEADLINE_REACHED = 5;
+    public static final int EXIT_UPSTREAM_UNAVAILABLE = 6;
+    public static final int EXIT_SHUT_DOWN = 7;
+
+    private static final int DEFAULT_PARALLELISM = 4;
+    private static final String CSV_HEADER = "id,name,website,has_website,created_at";
+    private static final Duration INITIAL_CHECK_ESTIMATE = Duration.ofSeconds(2);
+
+    private final StorageService storageService;
+    private final SearchService searchService;
+    private final ApiCallBudget apiCallBudget;
+    private final RetryPolicy retryPolicy;
+
+    // Unset: checks use the search limiter's ceiling, serve and rematch DEFAULT_PARALLELISM
+    private Integer parallelism;
+    private double rate = 2.0;
+    private int staleDays = 30;
+    private long progressIntervalSeconds = 10;
+    private int port = 8080;
+    private int maxQueued = 256;
+    private String deadlineSpec;
+    private Path remainingFile = Paths.get(RemainingWork.DEFAULT_FILE);
+    private double similarity = DuplicateDetector.DEFAULT_SIMILARITY;
+    private boolean merge;
+
+    public BatchRunner(StorageService storageService, SearchService searchService, ApiCallBudget apiCallBudget) {
+        this.storageService = storageService;
+        this.searchService = searchService;
+        this.apiCallBudget = apiCallBudget;
+        this.retryPolicy = new RetryPolicy("LangSearch", apiCallBudget);
+    }
+
+    public static void printUsage() {
+        System.out.println("Usage: java -jar company-website-checker.jar <command> [options]");
+        System.out.println();
+        System.out.println("Commands:");
+        System.out.println("  check-all                 Check every stored company");
+        System.out.println("  check-stale               Check companies not checked in --days days");
+        System.out.println("  import <file.csv>         Import companies from CSV (" + CSV_HEADER + ")");
+        System.out.println("  export <file.csv>         Export all companies to CSV");
+        System.out.println("  check-remaining           Check companies left over by a run that stopped early");
+        System.out.println("  dedup                     List clusters of near-duplicate company names");
+        System.out.println("  rematch                   Re-run name matching over stored search results (no API calls)");
+        System.out.println("  serve                     Run a local HTTP API until stopped");
+        System.out.println();
+        System.out.println("Options:");
+        System.out.println("  --parallelism N           Concurrent checks or requests (default for checks: as many as");
+        System.out.println("                            the adaptive search limit can grow to, else 4)");
+        System.out.println("  --rate R                  Max search requests per second (default 2)");
+        System.out.println("  --days N                  Staleness threshold for check-stale (default 30)");
+        System.out.println("  --progress-interval S     Seconds between progress lines (default 10)");
+        System.out.println("  --quiet                   Only log warnings and errors");
+        System.out.println("  --verbose                 Also log per-company details");
+        System.out.println("  --port N                  Port for serve (default 8080)");
+        System.out.println("  --max-queued N            Requests queued before serve answers 503 (default 256)");
+        System.out.println("  --deadline T              Stop starting checks that can't finish by T");
+        System.out.println("                            (HH:mm, yyyy-MM-ddTHH:mm or a duration like 90m)");
+        System.out.println("  --remaining-file F        Where unchecked companies are listed (default " +
+                RemainingWork.DEFAULT_FILE + ")");
+        System.out.println("  --similarity S            Name similarity (0-1) for dedup (default " +
+                DuplicateDetector.DEFAULT_SIMILARITY + ")");
+        System.out.println("  --merge                   Make dedup keep one company per cluster and delete the rest");
+        System.out.println();
+        System.out.println("Exit codes: 0 ok, 1 finished with errors, 2 usage error,");
+        System.out.println("            3 API budget exhausted before finishing, 4 failure,");
+        System.out.println("            5 deadline reached before finishing, 6 search API unavailable,");
+        System.out.println("            7 shut down before finishing");
+    }
+
+    public int run(String[] args) {
+        List<String> positional = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--parallelism":
+                        parallelism = Integer.parseInt(args[++i]);
+                        break;
+                    case "--rate":
+                        rate = Double.parseDouble(args[++i]);
+                        break;
+                    case "--days":
+                        staleDays = Integer.parseInt(args[++i]);
+                        break;
+                    case "--quiet":
+                        Log.setQuiet(true);
+                        break;
+                    case "--verbose":
+                        Log.setLevel(Log.Level.DEBUG);
+                        break;
+                    case "--progress-interval":
+                        progressIntervalSeconds = Long.parseLong(args[++i]);
+                        break;
+                    case "--port":
+                        port = Integer.parseInt(args[++i]);
+                        break;
+                    case "--max-queued":
+                        maxQueued = Integer.parseInt(args[++i]);
+                        break;
+                    case "--deadline":
+                        deadlineSpec = args[++i];
+                        break;
+                    case "--remaining-file":
+                        remainingFile = Paths.get(args[++i]);
+                        break;
+                    case "--similarity":
+                        similarity = Double.parseDouble(args[++i]);
+                        break;
+                    case "--merge":
+                        merge = true;
+                        break;
+                    default:
+                        positional.add(args[i]);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            System.err.println("Invalid option value: " + e.getMessage());
+            printUsage();
+            return EXIT_USAGE;
+        }
+
+        if (positional.isEmpty() || (parallelism != null && parallelism < 1) || rate <= 0 || progressIntervalSeconds < 1
+                || similarity <= 0 || similarity > 1) {
+            printUsage();
+            return EXIT_USAGE;
+        }
+
+        Deadline deadline = Deadline.NONE;
+        if (deadlineSpec != null) {
+            try {
+                deadline = Deadline.parse(deadlineSpec, INITIAL_CHECK_ESTIMATE);
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                return EXIT_USAGE;
+            }
+        }
+
+        String command = positional.get(0);
+        List<String> operands = positional.subList(1, positional.size());
+        try {
+            switch (command) {
+                case "check-all":
+                    return checkCompanies(storageService.getAllCompanies(), "check-all", deadline);
+                case "check-stale":
+                    return checkCompanies(storageService.getCompaniesNotCheckedSince(staleDays), "check-stale", deadline);
+                case "check-remaining":
+                    return checkRemaining(deadline);
+                case "import":
+                    return requireFile(operands) ? importCsv(Paths.get(operands.get(0))) : EXIT_USAGE;
+                case "export":
+                    return requireFile(operands) ? exportCsv(Paths.get(operands.get(0))) : EXIT_USAGE;
+                case "dedup":
+                    return dedup();
+                case "rematch":
+                    return rematch();
+                case "serve":
+                    return serve();
+                default:
+                    System.err.println("Unknown command: " + command);
+                    printUsage();
+                    return EXIT_USAGE;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Interrupted");
+            return EXIT_FAILURE;
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            return EXIT_FAILURE;
+        }
+    }
+
+    private int rematch() throws Exception {
+        long start = System.nanoTime();
+        SearchResultRematcher rematcher = new SearchResultRematcher(storageService, parallelism(DEFAULT_PARALLELISM));
+        int updated = rematcher.run();
+        Log.info("rematch: %d stored results in %d ms", rematcher.getScanned(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        System.out.println(updated + " of " + rematcher.getScanned() + " companies updated: " +
+                rematcher.getGained() + " found a website, " + rematcher.getLost() + " lost theirs, " +
+                rematcher.getMoved() + " matched a different URL");
+        if (rematcher.getIncomplete() > 0) {
+            System.out.println(rematcher.getIncomplete() + " kept their website: the stored result ends at its first match");
+        }
+        if (rematcher.getUnreadable() > 0) {
+            System.out.println(rematcher.getUnreadable() + " stored results could not be read");
+            return EXIT_COMPLETED_WITH_ERRORS;
+        }
+        return EXIT_OK;
+    }
+
+    private int dedup() throws Exception {
+        List<Company> companies = storageService.getAllCompanies();
+        long start = System.nanoTime();
+        List<List<Company>> clusters = new DuplicateDetector(similarity).findClusters(companies);
+        Log.info("dedup: %d companies, %d duplicate clusters in %d ms", companies.size(), clusters.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        int duplicates = 0;
+        for (List<Company> cluster : clusters) {
+            Company keeper = cluster.get(0);
+            List<Company> rest = cluster.subList(1, cluster.size());
+            duplicates += rest.size();
+
+            System.out.println((merge ? "Merged into " : "Keep ") + keeper.getName() + " (id " + keeper.getId() + ")");
+            for (Company duplicate : rest) {
+                System.out.println("  " + (merge ? "removed " : "duplicate ") + duplicate.getName() +
+                        " (id " + duplicate.getId() + ")");
+            }
+            if (merge) {
+                storageService.mergeDuplicates(keeper, rest);
+            }
+        }
+
+        System.out.println(clusters.size() + " clusters, " + duplicates + " duplicates" +
+                (merge ? " removed" : " found (run with --merge to remove them)"));
+        return EXIT_OK;
+    }
+
+    private int serve() throws IOException, InterruptedException {
+        ApiServer server = new ApiServer(storageService, searchService, apiCallBudget, port, parallelism(DEFAULT_PARALLELISM), maxQueued);
+        server.start();
+        Shutdown.onRequest(() -> server.stop(5));
+        server.awaitStop();
+        return EXIT_OK;
+    }
+
+    private int parallelism(int defaultValue) {
+        return parallelism != null ? parallelism : defaultValue;
+    }
+
+    private boolean requireFile(List<String> operands) {
+        if (operands.size() != 1) {
+            System.err.println("Expected exactly one file argument");
+            printUsage();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Check companies on a fixed pool. A check is admitted when a worker picks it up,
+     * so at a deadline or on shutdown the queue simply stops draining while running checks finish.
+     * Companies never started are added to the remaining-work marker.
+     */
+    private int checkCompanies(List<Company> companies, String label, Deadline deadline) throws InterruptedException {
+        // Enough workers for the limiter to raise concurrency to what LangSearch tolerates; it holds the rest back
+        int workers = parallelism(searchService.getLimiter().getMaxLimit());
+        Log.info("%s: %d companies, parallelism %d, rate %s/s%s", label, companies.size(), workers, rate,
+                deadline != Deadline.NONE ? ", deadline " + deadline.getEnd() : "");
+
+        RateLimiter rateLimiter = new RateLimiter(rate);
+        AtomicBoolean budgetExhausted = new AtomicBoolean(false);
+        AtomicBoolean deferred = new AtomicBoolean(false);
+        boolean[] started = new boolean[companies.size()];
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        // Checks in flight, including ones waiting out a retry backoff off the pool threads
+        Semaphore slots = new Semaphore(workers);
+
+        ProgressReporter progress = new ProgressReporter(label, companies.size(), progressIntervalSeconds);
+        try {
+            for (int i = 0; i < companies.size(); i++) {
+                int index = i;
+                Company company = companies.get(i);
+                executor.execute(() -> {
+                    slots.acquireUninterruptibly();
+                    if (budgetExhausted.get() || Shutdown.isRequested() || !deadline.tryAdmit()) {
+                        slots.release();
+                        return;
+                    }
+                    if (!apiCallBudget.tryAcquire()) {
+                        budgetExhausted.set(true);
+                        slots.release();
+                        return;
+                    }
+                    synchronized (started) {
+                        started[index] = true;
+                    }
+                    long start = deadline.begin();
+                    checkCompany(company, rateLimiter, progress).whenComplete((checked, error) -> {
+                        if (Boolean.FALSE.equals(checked)) {
+                            // Failed fast on the open circuit; timing it would skew the estimate
+                            deferred.set(true);
+                            synchronized (started) {
+                                started[index] = false;
+                            }
+                        } else {
+                            deadline.complete(start);
+                        }
+                        slots.release();
+                    });
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            slots.acquireUninterruptibly(workers);
+        } finally {
+            executor.shutdownNow();
+            progress.close();
+        }
+
+        List<String> remaining = new ArrayList<>();
+        synchronized (started) {
+            for (int i = 0; i < companies.size(); i++) {
+                if (!started[i]) {
+                    remaining.add(companies.get(i).getName());
+                }
+            }
+        }
+        if (!remaining.isEmpty()) {
+            writeRemaining(companies, remaining, label, deadline);
+        }
+
+        if (budgetExhausted.get()) {
+            System.err.println("API call budget exhausted after " + progress.getDone() + " of " +
+                    companies.size() + " companies");
+            return EXIT_BUDGET_EXHAUSTED;
+        }
+        if (deadline.isClosed() && !remaining.isEmpty()) {
+            System.err.println("Deadline reached after " + progress.getDone() + " of " +
+                    companies.size() + " companies");
+            return EXIT_DEADLINE_REACHED;
+        }
+        if (Shutdown.isRequested() && !remaining.isEmpty()) {
+            System.err.println("Shutting down after " + progress.getDone() + " of " +
+                    companies.size() + " companies");
+            return EXIT_SHUT_DOWN;
+        }
+        if (deferred.get()) {
+            System.err.println("Search API unavailable; " + remaining.size() + " companies left for check-remaining");
+            return EXIT_UPSTREAM_UNAVAILABLE;
+        }
+        return progress.getErrors() > 0 ? EXIT_COMPLETED_WITH_ERRORS : EXIT_OK;
+    }
+
+    /**
+     * Write the companies this run never started to the remaining-work marker. Names
+     * it already lists that this run didn't cover, such as companies a harvest deferred,
+     * are kept; the ones it covered are now either checked or among the remaining.
+     */
+    private void writeRemaining(List<Company> companies, List<String> remaining, String label, Deadline deadline) {
+        Set<String> items = new LinkedHashSet<>();
+        if (Files.exists(remainingFile)) {
+            try {
+                items.addAll(RemainingWork.read(remainingFile).getItems());
+            } catch (IOException e) {
+                Log.warn("Could not read the remaining work in %s, replacing it: %s", remainingFile, e.getMessage());
+            }
+            for (Company company : companies) {
+                items.remove(company.getName());
+            }
+        }
+        items.addAll(remaining);
+
+        RemainingWork work = new RemainingWork(new ArrayList<>(items))
+                .setAttribute("command", label)
+                .setAttribute("written_at", Instant.now())
+                .setAttribute("remaining", items.size());
+        if (deadline != Deadline.NONE) {
+            double perMinute = deadline.getThroughputPerMinute();
+            work.setAttribute("deadline", deadline.getEnd())
+                    .setAttribute("avg_check_ms", deadline.getEstimatedCheckTime().toMillis())
+                    .setAttribute("checks_per_minute", String.format(Locale.ROOT, "%.1f", perMinute));
+            if (perMinute > 0) {
+                work.setAttribute("estimated_minutes", (long) Math.ceil(items.size() / perMinute));
+            }
+        }
+        try {
+            work.write(remainingFile);
+            System.err.println(remaining.size() + " companies left unchecked, listed in " + remainingFile);
+        } catch (IOException e) {
+            Log.error("Could not write remaining work to %s: %s", remainingFile, e.getMessage());
+        }
+    }
+
+    /**
+     * Check the companies listed in the remaining-work marker. The marker is rewritten
+     * with what is still left, or removed once everything has been checked. Harvest
+     * runs list companies they deferred before saving them, so missing names are added.
+     */
+    private int checkRemaining(Deadline deadline) throws Exception {
+        if (!Files.exists(remainingFile)) {
+            System.out.println("No remaining work in " + remainingFile);
+            return EXIT_OK;
+        }
+
+        List<Company> companies = new ArrayList<>();
+        for (String name : RemainingWork.read(remainingFile).getItems()) {
+            Company company = storageService.getCompanyByName(name);
+            if (company == null) {
+                storageService.addCompany(new Company(name));
+                company = storageService.getCompanyByName(name);
+            }
+            if (company != null) {
+                companies.add(company);
+            }
+        }
+
+        int exitCode = checkCompanies(companies, "check-remaining", deadline);
+        if (exitCode != EXIT_BUDGET_EXHAUSTED && exitCode != EXIT_DEADLINE_REACHED
+                && exitCode != EXIT_UPSTREAM_UNAVAILABLE && exitCode != EXIT_SHUT_DOWN) {
+            Files.deleteIfExists(remainingFile);
+        }
+        return exitCode;
+    }
+
+    /**
+     * Completes with false if the check was not made because the search circuit is open,
+     * so the caller can leave the company for a later run instead of counting an error.
+     * A search that has to be retried completes later, after its backoff, without
+     * holding the calling thread.
+     */
+    private CompletableFuture<Boolean> checkCompany(Company company, RateLimiter rateLimiter,
+                                                    ProgressReporter progress) {
+        String name = company.getName();
+        CompletableFuture<SearchService.SearchResult> check;
+        try {
+            rateLimiter.acquire();
+            check = SearchClaims.runOnceAsync(storageService, name, () ->
+                    retryPolicy.executeAsync(() -> searchService.searchForMatchingUrl(name), Runnable::run)
+                            .thenApply(searched -> {
+                                try {
+                                    storageService.updateCompanyWebsite(name, searched.getMatchedUrl(),
+                                            searched.getMatchedUrl() != null);
+                                    storageService.saveSearchUrls(Map.of(name, searched.getAllUrls()),
+                                            searched.isComplete());
+                                } catch (Exception e) {
+                                    throw new CompletionException(e);
+                                }
+                                return searched;
+                            }));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            progress.recordError();
+            return CompletableFuture.completedFuture(true);
+        } catch (Exception e) {
+            Log.warn("Error checking %s: %s", name, e.getMessage());
+            progress.recordError();
+            return CompletableFuture.completedFuture(true);
+        }
+
+        return check.handle((result, error) -> {
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause instanceof CircuitOpenException) {
+                apiCallBudget.release();
+                Log.debug("Deferred %s: %s", name, cause.getMessage());
+                return false;
+            }
+            if (cause != null) {
+                Log.warn("Error checking %s: %s", name, cause.getMessage());
+                progress.recordError();
+                return true;
+            }
+            try {
+                boolean found;
+                if (result == null) {
+                    // Another process checked it meanwhile and stored the result
+                    apiCallBudget.release();
+                    Company stored = storageService.getCompanyByName(name);
+                    found = stored != null && stored.isHasWebsite();
+                } else {
+                    if (result.isShared()) {
+                        apiCallBudget.release();
+                    }
+                    found = result.getMatchedUrl() != null;
+                }
+                if (found) {
+                    progress.recordFound();
+                } else {
+                    progress.recordNotFound();
+                }
+            } catch (Exception e) {
+                Log.warn("Error checking %s: %s", name, e.getMessage());
+                progress.recordError();
+            }
+            return true;
+        });
+    }
+
+    private int importCsv(Path file) throws Exception {
+        List<Company> companies = new ArrayList<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null) {
+                System.out.println("Imported 0 companies (empty file)");
+                return EXIT_OK;
+            }
+            List<String> columns = new ArrayList<>();
+            for (String column : parseCsvLine(header.replace("\uFEFF", ""))) {
+                columns.add(column.trim().toLowerCase(Locale.ROOT));
+            }
+            int nameColumn = columns.indexOf("name");
+            int websiteColumn = columns.indexOf("website");
+            int hasWebsiteColumn = columns.indexOf("has_website");
+            if (nameColumn < 0) {
+                System.err.println("CSV header must contain a 'name' column");
+                return EXIT_USAGE;
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                List<String> fields = parseCsvLine(line);
+                if (nameColumn >= fields.size() || fields.get(nameColumn).isBlank()) {
+                    continue;
+                }
+                Company company = new Company(fields.get(nameColumn).trim());
+                if (websiteColumn >= 0 && websiteColumn < fields.size() && !fields.get(websiteColumn).isEmpty()) {
+                    company.setWebsite(fields.get(websiteColumn));
+                }
+                if (hasWebsiteColumn >= 0 && hasWebsiteColumn < fields.size()) {
+                    String value = fields.get(hasWebsiteColumn).trim();
+                    company.setHasWebsite(value.equalsIgnoreCase("true") || value.equals("1"));
+                }
+                companies.add(company);
+            }
+        }
+
+        int inserted = storageService.importCompanies(companies);
+        System.out.println("Imported " + inserted + " companies (" + (companies.size() - inserted) +
+                " already present)");
+        return EXIT_OK;
+    }
+
+    private int exportCsv(Path file) throws Exception {
+        List<Company> companies = storageService.getAllCompanies();
+
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(CSV_HEADER);
+            writer.newLine();
+            for (Company company : companies) {
+                writer.write(company.getId() + "," +
+                        escapeCsv(company.getName()) + "," +
+                        escapeCsv(company.getWebsite()) + "," +
+                        company.isHasWebsite() + "," +
+                        escapeCsv(company.getCreatedAt()));
+                writer.newLine();
+            }
+        }
+
+        System.out.println("Exported " + companies.size() + " companies to " + file);
+        return EXIT_OK;
+    }
+
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    static String escapeCsv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+}
@@ -1,6 +1,6 @@
 package com.companytracker;
 
-public class BolagsfaktaCompany {
+public class BolagsfaktaCompany implements CompanyRecord {
     private String orgNr;
     private String postNr;
     private int companyCode;
@@ -119,6 +119,11 @@ public class BolagsfaktaCompany {
         this.postOrt = postOrt;
     }
 
+    @Override
+    public BolagsfaktaCompany toCompany() {
+        return this;
+    }
+
     @Override
     public String toString() {
         return "BolagsfaktaCompany{" +
@@ -11,18 +11,22 @@ import okhttp3.Response;
 import java.io.IOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 public class BolagsfaktaService {
     private final OkHttpClient client;
+    private final AdaptiveConcurrencyLimiter limiter =
+            new AdaptiveConcurrencyLimiter("Bolagsfakta", 2, 1, 16);
+    private final CircuitBreaker breaker = CircuitBreaker.forUpstream("Bolagsfakta", Duration.ofSeconds(10));
 
     private static final String BASE_URL = "https://www.bolagsfakta.se";
     private static final String SEARCH_ENDPOINT = "/api/search";
 
     public BolagsfaktaService() {
-        this.client = new OkHttpClient.Builder()
+        this.client = HttpArchive.newClientBuilder()
                 .connectTimeout(30, TimeUnit.SECONDS)
                 .readTimeout(30, TimeUnit.SECONDS)
                 .build();
@@ -54,14 +58,25 @@ public class BolagsfaktaService {
                 .get()
                 .build();
 
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("API request failed with code: " + response.code());
+        return limiter.execute(() -> breaker.execute(() -> {
+            try (Response response = client.newCall(request).execute()) {
+                if (!response.isSuccessful()) {
+                    throw new UpstreamException("API request failed with code: " + response.code(),
+                            response.code(), response.header("Retry-After"));
+                }
+
+                String responseBody = response.body().string();
+                return parseSearchResponse(responseBody);
             }
+        }));
+    }
 
-            String responseBody = response.body().string();
-            return parseSearchResponse(responseBody);
-        }
+    public AdaptiveConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return breaker;
     }
 
     public List<BolagsfaktaCompany> searchCompaniesWithEmployeeFilter(String query, int maxEmployees) throws IOException {
@@ -103,7 +118,7 @@ public class BolagsfaktaService {
             }
 
         } catch (Exception e) {
-            System.err.println("Error parsing response: " + e.getMessage());
+            Log.error("Error parsing response: %s", e.getMessage());
         }
 
         searchResponse.setCompanies(companies);
@@ -0,0 +1,15 @@
+package com.companytracker;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of calling the search API once the run or daily API call budget
+ * is used up. No request was made; the call can be tried again tomorrow.
+ */
+public class BudgetExhaustedException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public BudgetExhaustedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,217 @@
+package com.companytracker;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Callable;
+
+/**
+ * Circuit breaker for one upstream. Outcomes of the last windowSize calls are kept;
+ * once at least minimumCalls are recorded and the share of failed or slow calls
+ * reaches its threshold, the circuit opens and calls fail at once with
+ * CircuitOpenException instead of waiting out timeouts. After openDuration a few
+ * probe calls are let through (half-open): if all succeed the circuit closes,
+ * otherwise it opens again.
+ *
+ * Network errors, 429/5xx responses and unexpected runtime errors (such as a garbled
+ * body) count as failures; other HTTP errors mean the upstream is answering and don't.
+ * An interrupted call says nothing about the upstream and isn't recorded.
+ *
+ * Each state change starts a new period, and a call only counts toward the period it
+ * was admitted in: a slow call admitted while closed that finishes during a later
+ * half-open period is not mistaken for a probe.
+ */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final String name;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long slowCallNanos;
+    private final double slowCallRateThreshold;
+    private final Duration openDuration;
+    private final int halfOpenProbes;
+
+    private final boolean[] failedCalls;
+    private final boolean[] slowCalls;
+    private int next;
+    private int recorded;
+    private int failures;
+    private int slow;
+
+    private State state = State.CLOSED;
+    private long period;
+    private Instant openUntil = Instant.MIN;
+    private int probesStarted;
+    private int probesSucceeded;
+
+    public CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRateThreshold,
+                          Duration slowCallThreshold, double slowCallRateThreshold, Duration openDuration,
+                          int halfOpenProbes) {
+        this.name = name;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallNanos = slowCallThreshold.toNanos();
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.openDuration = openDuration;
+        this.halfOpenProbes = halfOpenProbes;
+        this.failedCalls = new boolean[windowSize];
+        this.slowCalls = new boolean[windowSize];
+    }
+
+    /**
+     * Defaults for an HTTP API: open when half of the last 20 calls (at least 5) failed
+     * or took longer than slowCallThreshold, stay open 30 seconds, then probe twice.
+     */
+    public static CircuitBreaker forUpstream(String name, Duration slowCallThreshold) {
+        return new CircuitBreaker(name, 20, 5, 0.5, slowCallThreshold, 0.5, Duration.ofSeconds(30), 2);
+    }
+
+    public <T> T execute(Callable<T> call) throws IOException {
+        long admittedIn = acquirePermission();
+        long start = System.nanoTime();
+        boolean failed = false;
+        boolean interrupted = false;
+        try {
+            return call.call();
+        } catch (UpstreamException e) {
+            failed = e.isOverloaded();
+            throw e;
+        } catch (IOException e) {
+            interrupted = Thread.currentThread().isInterrupted();
+            failed = !interrupted;
+            throw e;
+        } catch (RuntimeException e) {
+            failed = true;
+            throw e;
+        } catch (InterruptedException e) {
+            interrupted = true;
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (Exception e) {
+            failed = true;
+            throw new IOException(e);
+        } finally {
+            if (interrupted) {
+                abandon(admittedIn);
+            } else {
+                record(admittedIn, failed, System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Admit a call, returning the period it was admitted in
+     */
+    private synchronized long acquirePermission() throws CircuitOpenException {
+        if (state == State.OPEN) {
+            if (Instant.now().isBefore(openUntil)) {
+                throw new CircuitOpenException(name, openUntil);
+            }
+            state = State.HALF_OPEN;
+            period++;
+            probesStarted = 0;
+            probesSucceeded = 0;
+            Log.info("[%s] circuit half-open, probing", name);
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesStarted >= halfOpenProbes) {
+                // Probes are still running; their outcome decides shortly
+                throw new CircuitOpenException(name, Instant.now().plusSeconds(1));
+            }
+            probesStarted++;
+        }
+        return period;
+    }
+
+    private synchronized void record(long admittedIn, boolean failed, long elapsedNanos) {
+        if (admittedIn != period) {
+            // Admitted before the last state change, e.g. a call that was still running
+            // when the circuit opened; its outcome belongs to a window that's gone
+            return;
+        }
+        boolean wasSlow = elapsedNanos >= slowCallNanos;
+        if (state == State.HALF_OPEN) {
+            if (failed || wasSlow) {
+                open(failed ? "probe failed" : "probe was slow");
+            } else if (++probesSucceeded >= halfOpenProbes) {
+                state = State.CLOSED;
+                period++;
+                clearWindow();
+                Log.info("[%s] circuit closed", name);
+            }
+            return;
+        }
+
+        if (recorded == failedCalls.length) {
+            failures -= failedCalls[next] ? 1 : 0;
+            slow -= slowCalls[next] ? 1 : 0;
+        } else {
+            recorded++;
+        }
+        failedCalls[next] = failed;
+        slowCalls[next] = wasSlow;
+        failures += failed ? 1 : 0;
+        slow += wasSlow ? 1 : 0;
+        next = (next + 1) % failedCalls.length;
+
+        if (recorded >= minimumCalls) {
+            if (failures >= failureRateThreshold * recorded) {
+                open(String.format("%d of the last %d calls failed", failures, recorded));
+            } else if (slow >= slowCallRateThreshold * recorded) {
+                open(String.format("%d of the last %d calls took over %d ms", slow, recorded, slowCallNanos / 1_000_000));
+            }
+        }
+    }
+
+    /**
+     * An interrupted probe gives its slot back, so the half-open period can still finish
+     */
+    private synchronized void abandon(long admittedIn) {
+        if (admittedIn == period && state == State.HALF_OPEN) {
+            probesStarted--;
+        }
+    }
+
+    private void open(String reason) {
+        state = State.OPEN;
+        period++;
+        openUntil = Instant.now().plus(openDuration);
+        clearWindow();
+        Log.warn("[%s] circuit open for %d s: %s", name, openDuration.getSeconds(), reason);
+    }
+
+    private void clearWindow() {
+        next = 0;
+        recorded = 0;
+        failures = 0;
+        slow = 0;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * How long until calls may be attempted again; zero unless the circuit is open
+     */
+    public synchronized Duration getTimeUntilRetry() {
+        if (state != State.OPEN) {
+            return Duration.ZERO;
+        }
+        Duration remaining = Duration.between(Instant.now(), openUntil);
+        return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
+
+    public Duration getOpenDuration() {
+        return openDuration;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
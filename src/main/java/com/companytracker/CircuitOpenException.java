@@ -0,0 +1,29 @@
+package com.companytracker;
+
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * Thrown instead of calling an upstream whose circuit breaker is open. No request was
+ * made, so the work can simply be tried again after getRetryAt().
+ */
+public class CircuitOpenException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final String upstream;
+    private final Instant retryAt;
+
+    public CircuitOpenException(String upstream, Instant retryAt) {
+        super(upstream + " circuit open until " + retryAt);
+        this.upstream = upstream;
+        this.retryAt = retryAt;
+    }
+
+    public String getUpstream() {
+        return upstream;
+    }
+
+    public Instant getRetryAt() {
+        return retryAt;
+    }
+}
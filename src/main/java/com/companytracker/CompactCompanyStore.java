@@ -0,0 +1,416 @@
+package com.companytracker;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * Columnar in-memory store for large Bolagsfakta harvests.
+ *
+ * Instead of one BolagsfaktaCompany with up to nine String objects per row, every
+ * field lives in a column: org.nr packed into a long, numbers in primitive arrays,
+ * low-cardinality text (postort, SNI text, bolagsform, postnummer) dictionary-encoded
+ * and the remaining text packed as length-prefixed UTF-8 into one shared byte array,
+ * with a single offset per row. A harvested company costs roughly 95 bytes instead
+ * of the 450-500 bytes of a BolagsfaktaCompany with its own strings.
+ *
+ * Rows are read through {@link Row}, a flyweight CompanyRecord holding nothing but
+ * its row number. Not safe for concurrent writes.
+ */
+public class CompactCompanyStore implements Iterable<CompanyRecord> {
+    private static final long NO_ORG_NR = -1L;
+
+    private int size;
+    private long[] orgNrs = new long[16];
+    private int[] companyCodes = new int[16];
+    private int[] responsibleCounts = new int[16];
+    private double[] omsattning = new double[16];
+    private double[] antalAnstallda = new double[16];
+
+    private final StringDictionary postNrs = new StringDictionary();
+    private final StringDictionary postOrter = new StringDictionary();
+    private final StringDictionary sniTexts = new StringDictionary();
+    private final StringDictionary bolagsformer = new StringDictionary();
+    private int[] postNrCodes = new int[16];
+    private int[] postOrtCodes = new int[16];
+    private int[] sniTextCodes = new int[16];
+    private int[] bolagsformCodes = new int[16];
+
+    private static final int NAME = 0;
+    private static final int POPULAR_NAME = 1;
+    private static final int ADDRESS = 2;
+    private static final int COMPANY_URL = 3;
+    private final TextHeap text = new TextHeap();
+
+    // Org.nrs that don't fit the 10/12 digit format are kept as-is
+    private final Map<Integer, String> irregularOrgNrs = new HashMap<>();
+
+    public int add(CompanyRecord company) {
+        ensureCapacity(size + 1);
+        int row = size;
+
+        long packed = packOrgNr(company.getOrgNr());
+        if (packed == NO_ORG_NR && company.getOrgNr() != null) {
+            irregularOrgNrs.put(row, company.getOrgNr());
+        }
+        orgNrs[row] = packed;
+        companyCodes[row] = company.getCompanyCode();
+        responsibleCounts[row] = company.getResponsibleCount();
+        omsattning[row] = company.getOmsattning();
+        antalAnstallda[row] = company.getAntalAnstallda();
+
+        postNrCodes[row] = postNrs.encode(company.getPostNr());
+        postOrtCodes[row] = postOrter.encode(company.getPostOrt());
+        sniTextCodes[row] = sniTexts.encode(company.getSniText());
+        bolagsformCodes[row] = bolagsformer.encode(company.getBolagsform());
+
+        text.addRow(company.getCompanyName(), company.getCompanyPopularName(),
+                company.getAddress(), company.getCompanyUrl());
+
+        size++;
+        return row;
+    }
+
+    public void addAll(Iterable<? extends CompanyRecord> companies) {
+        for (CompanyRecord company : companies) {
+            add(company);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Flyweight view of a row. Cheap to create; fields are decoded on access.
+     */
+    public Row get(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+        return new Row(row);
+    }
+
+    /**
+     * Visit every row through one reused flyweight. The company passed to the
+     * consumer is only valid until the next call; use toCompany to keep it.
+     */
+    public void forEachRow(Consumer<CompanyRecord> consumer) {
+        Row cursor = new Row(0);
+        for (int row = 0; row < size; row++) {
+            cursor.row = row;
+            consumer.accept(cursor);
+        }
+    }
+
+    @Override
+    public Iterator<CompanyRecord> iterator() {
+        return new Iterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public CompanyRecord next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return new Row(next++);
+            }
+        };
+    }
+
+    /**
+     * Materialize a row as a regular, independent BolagsfaktaCompany
+     */
+    public BolagsfaktaCompany toCompany(int row) {
+        return get(row).toCompany();
+    }
+
+    public long getPackedOrgNr(int row) {
+        return orgNrs[row];
+    }
+
+    /**
+     * Shrink all columns to their used size once a harvest is complete
+     */
+    public void trimToSize() {
+        resize(size);
+        text.trimToSize();
+    }
+
+    /**
+     * Approximate heap used by the columns, excluding dictionary entries
+     * shared across rows.
+     */
+    public long estimateHeapBytes() {
+        long primitives = (long) orgNrs.length * 8 + (long) companyCodes.length * 4 + (long) responsibleCounts.length * 4
+                + (long) omsattning.length * 8 + (long) antalAnstallda.length * 8
+                + (long) (postNrCodes.length + postOrtCodes.length + sniTextCodes.length + bolagsformCodes.length) * 4;
+        return primitives + text.heapBytes()
+                + postNrs.heapBytes() + postOrter.heapBytes() + sniTexts.heapBytes() + bolagsformer.heapBytes();
+    }
+
+    /**
+     * Pack a Swedish org.nr ("556123-4567", or 12 digits with century) into a long.
+     * Returns -1 when the value isn't 10 or 12 digits.
+     */
+    public static long packOrgNr(String orgNr) {
+        if (orgNr == null) {
+            return NO_ORG_NR;
+        }
+        long value = 0;
+        int digits = 0;
+        for (int i = 0; i < orgNr.length(); i++) {
+            char c = orgNr.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                digits++;
+            } else if (c != '-' && c != ' ') {
+                return NO_ORG_NR;
+            }
+        }
+        if (digits != 10 && digits != 12) {
+            return NO_ORG_NR;
+        }
+        // Digit count in the low bits so 10 and 12 digit forms unpack unambiguously
+        return value * 100 + digits;
+    }
+
+    public static String unpackOrgNr(long packed) {
+        if (packed == NO_ORG_NR) {
+            return null;
+        }
+        int digits = (int) (packed % 100);
+        String number = String.format("%0" + digits + "d", packed / 100);
+        return number.substring(0, digits - 4) + "-" + number.substring(digits - 4);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > orgNrs.length) {
+            resize(Math.max(capacity, orgNrs.length + (orgNrs.length >> 1)));
+        }
+    }
+
+    private void resize(int capacity) {
+        orgNrs = Arrays.copyOf(orgNrs, capacity);
+        companyCodes = Arrays.copyOf(companyCodes, capacity);
+        responsibleCounts = Arrays.copyOf(responsibleCounts, capacity);
+        omsattning = Arrays.copyOf(omsattning, capacity);
+        antalAnstallda = Arrays.copyOf(antalAnstallda, capacity);
+        postNrCodes = Arrays.copyOf(postNrCodes, capacity);
+        postOrtCodes = Arrays.copyOf(postOrtCodes, capacity);
+        sniTextCodes = Arrays.copyOf(sniTextCodes, capacity);
+        bolagsformCodes = Arrays.copyOf(bolagsformCodes, capacity);
+    }
+
+    /**
+     * Read-only view of one row, decoded from the columns on access
+     */
+    public class Row extends ReadOnlyCompany {
+        private int row;
+
+        Row(int row) {
+            this.row = row;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        @Override
+        public String getOrgNr() {
+            long packed = orgNrs[row];
+            return packed == NO_ORG_NR ? irregularOrgNrs.get(row) : unpackOrgNr(packed);
+        }
+
+        @Override
+        public String getPostNr() {
+            return postNrs.decode(postNrCodes[row]);
+        }
+
+        @Override
+        public int getCompanyCode() {
+            return companyCodes[row];
+        }
+
+        @Override
+        public String getCompanyName() {
+            return text.get(row, NAME);
+        }
+
+        @Override
+        public String getCompanyPopularName() {
+            return text.get(row, POPULAR_NAME);
+        }
+
+        @Override
+        public String getAddress() {
+            return text.get(row, ADDRESS);
+        }
+
+        @Override
+        public String getCompanyUrl() {
+            return text.get(row, COMPANY_URL);
+        }
+
+        @Override
+        public String getSniText() {
+            return sniTexts.decode(sniTextCodes[row]);
+        }
+
+        @Override
+        public int getResponsibleCount() {
+            return responsibleCounts[row];
+        }
+
+        @Override
+        public double getOmsattning() {
+            return omsattning[row];
+        }
+
+        @Override
+        public double getAntalAnstallda() {
+            return antalAnstallda[row];
+        }
+
+        @Override
+        public String getBolagsform() {
+            return bolagsformer.decode(bolagsformCodes[row]);
+        }
+
+        @Override
+        public String getPostOrt() {
+            return postOrter.decode(postOrtCodes[row]);
+        }
+    }
+
+    /**
+     * Maps each distinct string to a small int code. Code 0 is reserved for null.
+     */
+    static class StringDictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        StringDictionary() {
+            values.add(null);
+        }
+
+        int encode(String value) {
+            if (value == null) {
+                return 0;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                // Intern through the dictionary so each distinct value is held once
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+
+        String decode(int code) {
+            return values.get(code);
+        }
+
+        int size() {
+            return values.size() - 1;
+        }
+
+        long heapBytes() {
+            long bytes = 0;
+            for (int i = 1; i < values.size(); i++) {
+                bytes += 40 + values.get(i).length() + 32;
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Append-only heap holding a row's text fields back to back as UTF-8, each
+     * prefixed with a varint of (length + 1), where 0 marks null. One int offset
+     * per row locates the first field; later fields are found by skipping.
+     */
+    static class TextHeap {
+        private byte[] data = new byte[1024];
+        private int dataLength;
+        private int[] rowStarts = new int[16];
+        private int rows;
+
+        void addRow(String... fields) {
+            if (rows == rowStarts.length) {
+                // At least 16, since trimToSize can leave 0 or 1 slots
+                rowStarts = Arrays.copyOf(rowStarts, Math.max(rows + (rows >> 1), 16));
+            }
+            rowStarts[rows++] = dataLength;
+            for (String field : fields) {
+                if (field == null) {
+                    append(new byte[]{0}, 1);
+                    continue;
+                }
+                byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+                byte[] prefix = new byte[5];
+                int prefixLength = writeVarint(prefix, bytes.length + 1);
+                append(prefix, prefixLength);
+                append(bytes, bytes.length);
+            }
+        }
+
+        String get(int row, int field) {
+            int position = rowStarts[row];
+            for (int i = 0; ; i++) {
+                int value = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[position++];
+                    value |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+
+                int length = value - 1;
+                if (i == field) {
+                    return length < 0 ? null : new String(data, position, length, StandardCharsets.UTF_8);
+                }
+                position += Math.max(length, 0);
+            }
+        }
+
+        private void append(byte[] bytes, int length) {
+            if (dataLength + length > data.length) {
+                data = Arrays.copyOf(data, Math.max(dataLength + length, data.length + (data.length >> 1)));
+            }
+            System.arraycopy(bytes, 0, data, dataLength, length);
+            dataLength += length;
+        }
+
+        private static int writeVarint(byte[] target, int value) {
+            int i = 0;
+            while ((value & ~0x7F) != 0) {
+                target[i++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            target[i++] = (byte) value;
+            return i;
+        }
+
+        void trimToSize() {
+            data = Arrays.copyOf(data, dataLength);
+            rowStarts = Arrays.copyOf(rowStarts, rows);
+        }
+
+        long heapBytes() {
+            return data.length + (long) rowStarts.length * 4;
+        }
+    }
+}
@@ -6,6 +6,7 @@ public class Company {
     private String website;
     private boolean hasWebsite;
     private String createdAt;
+    private String checkedAt;
 
     public Company() {
     }
@@ -55,6 +56,14 @@ public class Company {
         this.createdAt = createdAt;
     }
 
+    public String getCheckedAt() {
+        return checkedAt;
+    }
+
+    public void setCheckedAt(String checkedAt) {
+        this.checkedAt = checkedAt;
+    }
+
     @Override
     public String toString() {
         return "Company{" +
@@ -63,6 +72,7 @@ public class Company {
                 ", website='" + website + '\'' +
                 ", hasWebsite=" + hasWebsite +
                 ", createdAt='" + createdAt + '\'' +
+                ", checkedAt='" + checkedAt + '\'' +
                 '}';
     }
 }
@@ -3,6 +3,7 @@ package com.companytracker;
 import java.text.Normalizer;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
 
@@ -13,6 +14,21 @@ public class CompanyNameMatcher {
             "kommanditbolag", "aktiebolag", "ekonomisk", "forening"
     ));
 
+    // Compiled once; normalization runs for every row the name index touches
+    private static final Pattern SUFFIX_PATTERN = Pattern.compile("\\b(" + String.join("|", COMPANY_SUFFIXES) + ")\\b");
+    private static final Pattern NON_ALPHANUMERIC_OR_SPACE = Pattern.compile("[^a-z0-9\\s]");
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^a-z0-9]");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+
+    // Words naming a legal form, mapped to one spelling per form
+    private static final Map<String, String> LEGAL_FORMS = Map.of(
+            "ab", "ab", "aktiebolag", "ab",
+            "hb", "hb", "handelsbolag", "hb",
+            "kb", "kb", "kommanditbolag", "kb",
+            "ek", "ek for", "ekonomisk", "ek for",
+            "enskild", "ef", "firma", "ef");
+
     private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
             "och", "i", "the", "and", "of", "sweden", "sverige"
     ));
@@ -59,28 +75,45 @@ public class CompanyNameMatcher {
         String normalized = name.toLowerCase();
 
         // Remove company suffixes
-        for (String suffix : COMPANY_SUFFIXES) {
-            normalized = normalized.replaceAll("\\b" + suffix + "\\b", "");
-        }
+        normalized = SUFFIX_PATTERN.matcher(normalized).replaceAll("");
 
         // Normalize Swedish characters
         normalized = normalizeSwedish(normalized);
 
         // Remove special characters, keep only letters and spaces
-        normalized = normalized.replaceAll("[^a-z0-9\\s]", "");
+        normalized = NON_ALPHANUMERIC_OR_SPACE.matcher(normalized).replaceAll("");
 
         // Collapse multiple spaces
-        normalized = normalized.replaceAll("\\s+", " ").trim();
+        normalized = WHITESPACE.matcher(normalized).replaceAll(" ").trim();
 
         return normalized;
     }
 
+    /**
+     * The legal form a company name states ("ab", "hb", "kb", "ek for", "ef"), or "" when it
+     * states none. "Svea Bygg Aktiebolag" and "Svea Bygg AB" give the same form. Unlike
+     * normalizeCompanyName this tells "Svea Bygg AB" and "Svea Bygg HB" apart.
+     */
+    public static String legalForm(String name) {
+        if (name == null) return "";
+
+        String form = "";
+        String words = NON_ALPHANUMERIC_OR_SPACE.matcher(normalizeSwedish(name.toLowerCase())).replaceAll(" ");
+        for (String word : WHITESPACE.split(words.trim())) {
+            String canonical = LEGAL_FORMS.get(word);
+            if (canonical != null) {
+                form = canonical;
+            }
+        }
+        return form;
+    }
+
     public static String normalizeForMatching(String text) {
         if (text == null) return "";
 
         String normalized = text.toLowerCase();
         normalized = normalizeSwedish(normalized);
-        normalized = normalized.replaceAll("[^a-z0-9]", "");
+        normalized = NON_ALPHANUMERIC.matcher(normalized).replaceAll("");
 
         return normalized;
     }
@@ -101,8 +134,7 @@ public class CompanyNameMatcher {
 
         // Use Normalizer to handle any remaining special characters
         text = Normalizer.normalize(text, Normalizer.Form.NFD);
-        Pattern pattern = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
-        text = pattern.matcher(text).replaceAll("");
+        text = COMBINING_MARKS.matcher(text).replaceAll("");
 
         return text;
     }
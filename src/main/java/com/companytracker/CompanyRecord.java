@@ -0,0 +1,39 @@
+package com.companytracker;
+
+/**
+ * Read access to a company's Bolagsfakta fields. Implemented by BolagsfaktaCompany
+ * and by the flyweight views over columnar and mapped storage, which hold no copy of
+ * the fields themselves; code that only reads companies should take this type.
+ */
+public interface CompanyRecord {
+    String getOrgNr();
+
+    String getPostNr();
+
+    int getCompanyCode();
+
+    String getCompanyName();
+
+    String getCompanyPopularName();
+
+    String getAddress();
+
+    String getCompanyUrl();
+
+    String getSniText();
+
+    int getResponsibleCount();
+
+    double getOmsattning();
+
+    double getAntalAnstallda();
+
+    String getBolagsform();
+
+    String getPostOrt();
+
+    /**
+     * The record as a BolagsfaktaCompany: the company itself, or an independent copy of a view
+     */
+    BolagsfaktaCompany toCompany();
+}
@@ -0,0 +1,454 @@
+package com.companytracker;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Versioned binary snapshot of a harvest and its check results, read back through
+ * a memory-mapped file so opening is O(1) and rows are decoded only when touched.
+ *
+ * Layout (big-endian):
+ *   header   32 bytes: magic, version, row count, record size, heap offset, source string offset
+ *   records  fixed-size, one per company, holding numbers inline and strings as heap offsets
+ *   heap     length-prefixed UTF-8 strings; repeated low-cardinality values are stored once
+ *
+ * Offsets are ints, so a snapshot is limited to 2 GB.
+ */
+public class CompanySnapshot implements Iterable<CompanyRecord>, AutoCloseable {
+    private static final int MAGIC = 0x4357534E; // "CWSN"
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 80;
+    private static final int NULL_STRING = -1;
+
+    // Record layout
+    private static final int ORG_NR = 0;
+    private static final int COMPANY_CODE = 8;
+    private static final int RESPONSIBLE_COUNT = 12;
+    private static final int OMSATTNING = 16;
+    private static final int ANTAL_ANSTALLDA = 24;
+    private static final int STATUS = 32;
+    private static final int TIER = 33;
+    private static final int STRINGS = 36;
+
+    // String slots, each an int offset into the heap
+    private static final int NAME = 0;
+    private static final int POPULAR_NAME = 1;
+    private static final int ADDRESS = 2;
+    private static final int COMPANY_URL = 3;
+    private static final int SNI_TEXT = 4;
+    private static final int BOLAGSFORM = 5;
+    private static final int POST_ORT = 6;
+    private static final int POST_NR = 7;
+    private static final int MATCHED_URL = 8;
+    private static final int ERROR = 9;
+    private static final int RAW_ORG_NR = 10;
+    private static final int STRING_SLOTS = 11;
+
+    public static final byte STATUS_UNCHECKED = 0;
+    public static final byte STATUS_HAS_WEBSITE = 1;
+    public static final byte STATUS_NO_WEBSITE = 2;
+    public static final byte STATUS_ERROR = 3;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final int heapOffset;
+
+    private CompanySnapshot(FileChannel channel, MappedByteBuffer buffer, int count, int heapOffset) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.count = count;
+        this.heapOffset = heapOffset;
+    }
+
+    /**
+     * Write companies without check results. source describes where they came from,
+     * e.g. the harvest's query, so a later run can tell whether the snapshot fits it.
+     */
+    public static void writeCompanies(Path file, Iterable<? extends CompanyRecord> companies, String source)
+            throws IOException {
+        List<CompanyRecord> records = new ArrayList<>();
+        for (CompanyRecord company : companies) {
+            records.add(company);
+        }
+        write(file, records, null, source);
+    }
+
+    public static void write(Path file, List<WebsiteChecker.CheckResult> results) throws IOException {
+        List<CompanyRecord> companies = new ArrayList<>(results.size());
+        for (WebsiteChecker.CheckResult result : results) {
+            companies.add(result.getCompany());
+        }
+        write(file, companies, results, null);
+    }
+
+    /**
+     * Records and heap are each written sequentially: records straight into a temporary
+     * copy of the target, heap strings into another temporary file that is appended once
+     * all records are out. The copy then replaces the target in one atomic move, so a
+     * reader never maps a half-written snapshot. results is null for companies that
+     * haven't been checked.
+     */
+    private static void write(Path file, List<CompanyRecord> companies, List<WebsiteChecker.CheckResult> results,
+                              String source) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Path recordsFile = Files.createTempFile(directory, "snapshot", ".tmp");
+        Path heapFile = Files.createTempFile(directory, "snapshot", ".heap");
+        long heapOffset = HEADER_SIZE + (long) companies.size() * RECORD_SIZE;
+
+        try {
+            int sourceOffset;
+            try (DataOutputStream records = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(recordsFile), 1 << 16));
+                 DataOutputStream heap = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(heapFile), 1 << 16))) {
+                records.write(new byte[HEADER_SIZE]);
+                HeapWriter heapWriter = new HeapWriter(heap, heapOffset);
+
+                for (int i = 0; i < companies.size(); i++) {
+                    CompanyRecord company = companies.get(i);
+                    WebsiteChecker.CheckResult result = results != null ? results.get(i) : null;
+                    long packedOrgNr = CompactCompanyStore.packOrgNr(company.getOrgNr());
+
+                    records.writeLong(packedOrgNr);
+                    records.writeInt(company.getCompanyCode());
+                    records.writeInt(company.getResponsibleCount());
+                    records.writeDouble(company.getOmsattning());
+                    records.writeDouble(company.getAntalAnstallda());
+                    records.writeByte(statusOf(result));
+                    records.writeByte(result != null && result.getResolvedBy() != null
+                            ? result.getResolvedBy().ordinal() + 1 : 0);
+                    records.writeShort(0);
+
+                    int[] slots = new int[STRING_SLOTS];
+                    slots[NAME] = heapWriter.write(company.getCompanyName(), false);
+                    slots[POPULAR_NAME] = heapWriter.write(company.getCompanyPopularName(), false);
+                    slots[ADDRESS] = heapWriter.write(company.getAddress(), false);
+                    slots[COMPANY_URL] = heapWriter.write(company.getCompanyUrl(), false);
+                    slots[SNI_TEXT] = heapWriter.write(company.getSniText(), true);
+                    slots[BOLAGSFORM] = heapWriter.write(company.getBolagsform(), true);
+                    slots[POST_ORT] = heapWriter.write(company.getPostOrt(), true);
+                    slots[POST_NR] = heapWriter.write(company.getPostNr(), true);
+                    slots[MATCHED_URL] = result != null ? heapWriter.write(result.getMatchedUrl(), false) : NULL_STRING;
+                    slots[ERROR] = result != null ? heapWriter.write(result.getError(), true) : NULL_STRING;
+                    slots[RAW_ORG_NR] = packedOrgNr == -1 ? heapWriter.write(company.getOrgNr(), false) : NULL_STRING;
+                    for (int slot : slots) {
+                        records.writeInt(slot);
+                    }
+                    records.write(new byte[RECORD_SIZE - STRINGS - STRING_SLOTS * 4]);
+                }
+                sourceOffset = heapWriter.write(source, false);
+            }
+
+            try (FileChannel target = FileChannel.open(recordsFile, StandardOpenOption.WRITE);
+                 FileChannel heap = FileChannel.open(heapFile, StandardOpenOption.READ)) {
+                long heapSize = heap.size();
+                if (heapOffset + heapSize > Integer.MAX_VALUE) {
+                    throw new IOException("Snapshot exceeds 2 GB limit");
+                }
+                long transferred = 0;
+                while (transferred < heapSize) {
+                    transferred += heap.transferTo(transferred, heapSize - transferred,
+                            target.position(heapOffset + transferred));
+                }
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+                header.putInt(MAGIC).putInt(VERSION).putInt(companies.size()).putInt(RECORD_SIZE).putLong(heapOffset)
+                        .putInt(sourceOffset);
+                header.flip();
+                target.write(header, 0);
+                target.force(false);
+            }
+            Files.move(recordsFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(heapFile);
+            Files.deleteIfExists(recordsFile);
+        }
+    }
+
+    private static byte statusOf(WebsiteChecker.CheckResult result) {
+        if (result == null) {
+            return STATUS_UNCHECKED;
+        }
+        if (result.getError() != null) {
+            return STATUS_ERROR;
+        }
+        return result.isHasWebsite() ? STATUS_HAS_WEBSITE : STATUS_NO_WEBSITE;
+    }
+
+    /**
+     * Map a snapshot file. Only the header is read and checked against the file size;
+     * rows are decoded on access.
+     */
+    public static CompanySnapshot open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot exceeds 2 GB limit");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a company snapshot: " + file);
+            }
+            int version = buffer.getInt(4);
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + " in " + file);
+            }
+            int count = buffer.getInt(8);
+            if (buffer.getInt(12) != RECORD_SIZE) {
+                throw new IOException("Unexpected record size in " + file);
+            }
+            // The records must fill the space up to the heap, and the heap must be in the file,
+            // or a truncated or corrupt file would be read past its end
+            long heapOffset = buffer.getLong(16);
+            if (count < 0 || heapOffset != HEADER_SIZE + (long) count * RECORD_SIZE || heapOffset > buffer.limit()) {
+                throw new IOException("Truncated or corrupt snapshot " + file + ": " + count + " records, heap at "
+                        + heapOffset + " of " + buffer.limit() + " bytes");
+            }
+            return new CompanySnapshot(channel, buffer, count, (int) heapOffset);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * What the snapshot was written from, as passed to writeCompanies, or null
+     */
+    public String getSource() {
+        return readString(buffer.getInt(24));
+    }
+
+    public Record get(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Row " + index + " of " + count);
+        }
+        return new Record(HEADER_SIZE + index * RECORD_SIZE);
+    }
+
+    /**
+     * Records in file order. They read from the mapping, so use them before close().
+     */
+    @Override
+    public Iterator<CompanyRecord> iterator() {
+        return new Iterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < count;
+            }
+
+            @Override
+            public CompanyRecord next() {
+                if (next >= count) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private String readString(int offset) {
+        if (offset == NULL_STRING) {
+            return null;
+        }
+        if (offset < heapOffset || offset > buffer.limit() - 4) {
+            throw new IllegalStateException("Corrupt snapshot: string offset " + offset + " outside the heap");
+        }
+        int length = buffer.getInt(offset);
+        if (length < 0 || length > buffer.limit() - offset - 4) {
+            throw new IllegalStateException("Corrupt snapshot: string of " + length + " bytes at " + offset);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(offset + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Flyweight over one record in the mapped file, read through CompanyRecord
+     */
+    public class Record extends ReadOnlyCompany {
+        private final int position;
+
+        Record(int position) {
+            this.position = position;
+        }
+
+        private String string(int slot) {
+            return readString(buffer.getInt(position + STRINGS + slot * 4));
+        }
+
+        @Override
+        public String getOrgNr() {
+            long packed = buffer.getLong(position + ORG_NR);
+            return packed == -1 ? string(RAW_ORG_NR) : CompactCompanyStore.unpackOrgNr(packed);
+        }
+
+        public long getPackedOrgNr() {
+            return buffer.getLong(position + ORG_NR);
+        }
+
+        @Override
+        public String getPostNr() {
+            return string(POST_NR);
+        }
+
+        @Override
+        public int getCompanyCode() {
+            return buffer.getInt(position + COMPANY_CODE);
+        }
+
+        @Override
+        public String getCompanyName() {
+            return string(NAME);
+        }
+
+        @Override
+        public String getCompanyPopularName() {
+            return string(POPULAR_NAME);
+        }
+
+        @Override
+        public String getAddress() {
+            return string(ADDRESS);
+        }
+
+        @Override
+        public String getCompanyUrl() {
+            return string(COMPANY_URL);
+        }
+
+        @Override
+        public String getSniText() {
+            return string(SNI_TEXT);
+        }
+
+        @Override
+        public int getResponsibleCount() {
+            return buffer.getInt(position + RESPONSIBLE_COUNT);
+        }
+
+        @Override
+        public double getOmsattning() {
+            return buffer.getDouble(position + OMSATTNING);
+        }
+
+        @Override
+        public double getAntalAnstallda() {
+            return buffer.getDouble(position + ANTAL_ANSTALLDA);
+        }
+
+        @Override
+        public String getBolagsform() {
+            return string(BOLAGSFORM);
+        }
+
+        @Override
+        public String getPostOrt() {
+            return string(POST_ORT);
+        }
+
+        public byte getStatus() {
+            return buffer.get(position + STATUS);
+        }
+
+        public boolean isChecked() {
+            return getStatus() != STATUS_UNCHECKED;
+        }
+
+        public boolean isHasWebsite() {
+            return getStatus() == STATUS_HAS_WEBSITE;
+        }
+
+        public String getMatchedUrl() {
+            return string(MATCHED_URL);
+        }
+
+        public String getError() {
+            return string(ERROR);
+        }
+
+        public WebsiteChecker.ResolutionTier getResolvedBy() {
+            int tier = buffer.get(position + TIER);
+            return tier == 0 ? null : WebsiteChecker.ResolutionTier.values()[tier - 1];
+        }
+
+        /**
+         * Materialize the record as a regular check result with its own company object
+         */
+        public WebsiteChecker.CheckResult toCheckResult() {
+            WebsiteChecker.CheckResult result = new WebsiteChecker.CheckResult();
+            result.setCompany(toCompany());
+            result.setHasWebsite(isHasWebsite());
+            result.setMatchedUrl(getMatchedUrl());
+            result.setError(getError());
+            result.setResolvedBy(getResolvedBy());
+            return result;
+        }
+    }
+
+    /**
+     * Appends length-prefixed strings to the heap stream. Dictionary-like fields are
+     * written once and shared by offset.
+     */
+    private static class HeapWriter {
+        private final DataOutputStream heap;
+        private final long baseOffset;
+        private final Map<String, Integer> shared = new HashMap<>();
+
+        HeapWriter(DataOutputStream heap, long baseOffset) {
+            this.heap = heap;
+            this.baseOffset = baseOffset;
+        }
+
+        int write(String value, boolean dedupe) throws IOException {
+            if (value == null) {
+                return NULL_STRING;
+            }
+            if (dedupe) {
+                Integer existing = shared.get(value);
+                if (existing != null) {
+                    return existing;
+                }
+            }
+
+            long offset = baseOffset + heap.size();
+            if (offset > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot exceeds 2 GB limit");
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            heap.writeInt(bytes.length);
+            heap.write(bytes);
+
+            if (dedupe) {
+                shared.put(value, (int) offset);
+            }
+            return (int) offset;
+        }
+    }
+}
@@ -1,21 +1,62 @@
 package com.companytracker;
 
+import org.sqlite.Function;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
-public class DatabaseService implements StorageService {
-    private static final String DB_URL = "jdbc:sqlite:companies.db";
+public class DatabaseService implements StorageService, AutoCloseable {
+    static final String DEFAULT_DB_PATH = "companies.db";
+    private static final String CLAIM_OWNER = ManagementFactory.getRuntimeMXBean().getName();
+    private final String dbPath;
     private Connection connection;
 
     public DatabaseService() throws SQLException {
+        this(DEFAULT_DB_PATH);
+    }
+
+    public DatabaseService(String dbPath) throws SQLException {
+        this.dbPath = dbPath;
         connect();
         createTable();
+        Shutdown.register("database " + dbPath, this);
     }
 
     private void connect() throws SQLException {
-        connection = DriverManager.getConnection(DB_URL);
-        System.out.println("Connected to SQLite database");
+        connection = openConnection(dbPath);
+        Log.info("Connected to SQLite database");
+    }
+
+    /**
+     * Open a connection set up for several processes sharing the same database file:
+     * WAL lets readers run alongside a writer and busy_timeout waits out short write locks.
+     * Also registers normalize_name(), which the name index triggers call: SQLite only
+     * knows application functions per connection, so a connection without it fails on
+     * any write to companies.
+     */
+    static Connection openConnection(String dbPath) throws SQLException {
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA journal_mode=WAL");
+            stmt.execute("PRAGMA busy_timeout=10000");
+        }
+        Function.create(connection, "normalize_name", new Function() {
+            @Override
+            protected void xFunc() throws SQLException {
+                result(CompanyNameMatcher.normalizeCompanyName(value_text(0)));
+            }
+        }, 1, Function.FLAG_DETERMINISTIC);
+        return connection;
+    }
+
+    public String getDbPath() {
+        return dbPath;
     }
 
     private void createTable() throws SQLException {
@@ -29,33 +70,114 @@ public class DatabaseService implements StorageService {
 
         try (Statement stmt = connection.createStatement()) {
             stmt.execute(sql);
-            System.out.println("Database table ready");
+        }
+        addColumnIfMissing("companies", "checked_at", "TIMESTAMP");
+        createNameIndex();
+        createSearchResultsTable();
+        // Rows from before the flag existed may be cut-off lists, so they count as incomplete
+        addColumnIfMissing("search_results", "complete", "INTEGER NOT NULL DEFAULT 0");
+        createSearchClaimsTable();
+        Log.info("Database table ready");
+    }
+
+    /**
+     * Raw search URL lists per company, compressed, so matcher changes can be re-applied
+     * offline. Rows go away with their company.
+     */
+    private void createSearchResultsTable() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS search_results (" +
+                    "company_id INTEGER PRIMARY KEY," +
+                    "urls BLOB NOT NULL," +
+                    "searched_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                    ")");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS search_results_delete AFTER DELETE ON companies BEGIN " +
+                    "DELETE FROM search_results WHERE company_id = old.id; END");
+        }
+    }
+
+    /**
+     * Companies a process is searching right now, so other processes sharing the
+     * database wait for its result instead of paying for the same search
+     */
+    private void createSearchClaimsTable() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS search_claims (" +
+                    "name TEXT PRIMARY KEY," +
+                    "owner TEXT NOT NULL," +
+                    "expires_at INTEGER NOT NULL" +
+                    ")");
         }
     }
 
-    public void addCompany(Company company) throws SQLException {
+    /**
+     * Contentless FTS5 index over normalize_name(name), keyed by company id and kept
+     * in sync by triggers. Built from the existing rows the first time it is created.
+     */
+    private void createNameIndex() throws SQLException {
+        boolean exists;
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT 1 FROM sqlite_master WHERE name = 'companies_fts'")) {
+            exists = rs.next();
+        }
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE VIRTUAL TABLE IF NOT EXISTS companies_fts USING fts5(" +
+                    "name_norm, content='', tokenize='unicode61', prefix='2 3')");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS companies_fts_insert AFTER INSERT ON companies BEGIN " +
+                    "INSERT INTO companies_fts(rowid, name_norm) VALUES (new.id, normalize_name(new.name)); END");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS companies_fts_delete AFTER DELETE ON companies BEGIN " +
+                    "INSERT INTO companies_fts(companies_fts, rowid, name_norm) " +
+                    "VALUES ('delete', old.id, normalize_name(old.name)); END");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS companies_fts_update AFTER UPDATE OF name ON companies BEGIN " +
+                    "INSERT INTO companies_fts(companies_fts, rowid, name_norm) " +
+                    "VALUES ('delete', old.id, normalize_name(old.name)); " +
+                    "INSERT INTO companies_fts(rowid, name_norm) VALUES (new.id, normalize_name(new.name)); END");
+            if (!exists) {
+                stmt.executeUpdate("INSERT INTO companies_fts(rowid, name_norm) " +
+                        "SELECT id, normalize_name(name) FROM companies");
+                Log.info("Indexed company names for fuzzy lookup");
+            }
+        }
+    }
+
+    private void addColumnIfMissing(String table, String column, String type) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (rs.getString("name").equalsIgnoreCase(column)) {
+                    return;
+                }
+            }
+        }
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + type);
+        }
+    }
+
+    public synchronized void addCompany(Company company) throws SQLException {
         String sql = "INSERT INTO companies(name) VALUES(?)";
 
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setString(1, company.getName());
             pstmt.executeUpdate();
-            System.out.println("Added company: " + company.getName());
+            Log.debug("Added company: %s", company.getName());
         }
     }
 
-    public void updateCompanyWebsite(String companyName, String website, boolean hasWebsite) throws SQLException {
-        String sql = "UPDATE companies SET website = ?, has_website = ? WHERE name = ?";
+    public synchronized void updateCompanyWebsite(String companyName, String website, boolean hasWebsite) throws SQLException {
+        String sql = "UPDATE companies SET website = ?, has_website = ?, checked_at = CURRENT_TIMESTAMP WHERE name = ?";
 
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setString(1, website);
             pstmt.setInt(2, hasWebsite ? 1 : 0);
             pstmt.setString(3, companyName);
             pstmt.executeUpdate();
-            System.out.println("Updated website info for: " + companyName);
+            Log.debug("Updated website info for: %s", companyName);
         }
     }
 
-    public List<Company> getAllCompanies() throws SQLException {
+    public synchronized List<Company> getAllCompanies() throws SQLException {
         List<Company> companies = new ArrayList<>();
         String sql = "SELECT * FROM companies";
 
@@ -69,7 +191,7 @@ public class DatabaseService implements StorageService {
         return companies;
     }
 
-    public Company getCompanyByName(String name) throws SQLException {
+    public synchronized Company getCompanyByName(String name) throws SQLException {
         String sql = "SELECT * FROM companies WHERE name = ?";
 
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
@@ -84,6 +206,311 @@ public class DatabaseService implements StorageService {
         return null;
     }
 
+    /**
+     * Companies whose normalized name shares words with the query, best match first.
+     * Words of two or more letters also match as prefixes, so "Frisor K" finds
+     * "K Frisör AB". Names containing every word are tried first; only if that gives
+     * fewer than limit rows are names sharing any word added, which keeps the common
+     * case from ranking every row that contains a frequent word.
+     */
+    public synchronized List<Company> findCompaniesFuzzy(String query, int limit) throws SQLException {
+        List<Company> companies = new ArrayList<>();
+        String all = toFtsQuery(query, " AND ");
+        if (all.isEmpty()) {
+            return companies;
+        }
+
+        addFuzzyMatches(all, limit, companies);
+        if (companies.size() < limit) {
+            addFuzzyMatches(toFtsQuery(query, " OR "), limit, companies);
+        }
+        return companies;
+    }
+
+    private void addFuzzyMatches(String match, int limit, List<Company> companies) throws SQLException {
+        String sql = "SELECT c.* FROM companies_fts JOIN companies c ON c.id = companies_fts.rowid " +
+                "WHERE companies_fts MATCH ? ORDER BY bm25(companies_fts) LIMIT ?";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, match);
+            pstmt.setInt(2, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next() && companies.size() < limit) {
+                    Company company = mapResultSetToCompany(rs);
+                    if (companies.stream().noneMatch(existing -> existing.getId() == company.getId())) {
+                        companies.add(company);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Normalized words as quoted FTS5 terms joined with the operator
+     */
+    static String toFtsQuery(String query, String operator) {
+        StringBuilder match = new StringBuilder();
+        for (String word : CompanyNameMatcher.normalizeCompanyName(query).split(" ")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (match.length() > 0) {
+                match.append(operator);
+            }
+            match.append('"').append(word).append('"');
+            if (word.length() >= 2) {
+                match.append('*');
+            }
+        }
+        return match.toString();
+    }
+
+    /**
+     * Companies that were never checked or were last checked more than the given number of days ago
+     */
+    public synchronized List<Company> getCompaniesNotCheckedSince(int days) throws SQLException {
+        List<Company> companies = new ArrayList<>();
+        String sql = "SELECT * FROM companies WHERE checked_at IS NULL OR checked_at < datetime('now', ?)";
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, "-" + days + " days");
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    companies.add(mapResultSetToCompany(rs));
+                }
+            }
+        }
+
+        return companies;
+    }
+
+    /**
+     * Insert companies in a single transaction, skipping names that already exist.
+     * Returns the number of rows inserted.
+     */
+    public synchronized int importCompanies(List<Company> companies) throws SQLException {
+        return writeStaged(companies, "INSERT OR IGNORE INTO companies(name, website, has_website) " +
+                "SELECT name, website, has_website FROM staged_companies WHERE true");
+    }
+
+    /**
+     * Insert or update website results in a single transaction.
+     */
+    public synchronized void upsertCompanies(List<Company> companies) throws SQLException {
+        writeStaged(companies, "INSERT INTO companies(name, website, has_website, checked_at) " +
+                "SELECT name, website, has_website, CURRENT_TIMESTAMP FROM staged_companies WHERE true " +
+                "ON CONFLICT(name) DO UPDATE SET website = excluded.website, has_website = excluded.has_website, " +
+                "checked_at = excluded.checked_at");
+    }
+
+    /**
+     * Load rows into a temp table, then apply them with one INSERT ... SELECT. Row-by-row
+     * statements would make the name index trigger flush a new FTS segment per row;
+     * a single statement lets FTS5 buffer the whole batch. Returns the rows changed.
+     */
+    private int writeStaged(List<Company> companies, String applySql) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TEMP TABLE IF NOT EXISTS staged_companies (name TEXT, website TEXT, has_website INTEGER)");
+            stmt.execute("DELETE FROM staged_companies");
+
+            try (PreparedStatement pstmt = connection.prepareStatement(
+                    "INSERT INTO staged_companies(name, website, has_website) VALUES(?, ?, ?)")) {
+                for (Company company : companies) {
+                    pstmt.setString(1, company.getName());
+                    pstmt.setString(2, company.getWebsite());
+                    pstmt.setInt(3, company.isHasWebsite() ? 1 : 0);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+
+            stmt.executeUpdate(applySql);
+            int changed;
+            // changes() counts only rows written by the statement itself, not by triggers
+            try (ResultSet rs = stmt.executeQuery("SELECT changes()")) {
+                changed = rs.next() ? rs.getInt(1) : 0;
+            }
+            stmt.execute("DELETE FROM staged_companies");
+            connection.commit();
+            return changed;
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Merge another database file (e.g. a shard's output) into this one with a single
+     * INSERT ... SELECT over an attached database. On name conflicts the more recently
+     * checked row wins. Stored search results follow the row that won, with company ids
+     * mapped by name. Returns the number of company rows inserted or updated.
+     */
+    public synchronized int mergeFrom(String otherDbPath) throws SQLException {
+        // ATTACH would silently create an empty database for a mistyped path
+        if (!Files.isRegularFile(Paths.get(otherDbPath))) {
+            throw new IllegalArgumentException("No such database: " + otherDbPath);
+        }
+        String sql = "INSERT INTO companies(name, website, has_website, created_at, checked_at) " +
+                "SELECT name, website, has_website, created_at, checked_at FROM shard.companies WHERE true " +
+                "ON CONFLICT(name) DO UPDATE SET website = excluded.website, has_website = excluded.has_website, " +
+                "checked_at = excluded.checked_at " +
+                "WHERE companies.checked_at IS NULL OR excluded.checked_at > companies.checked_at";
+
+        try (PreparedStatement attach = connection.prepareStatement("ATTACH DATABASE ? AS shard")) {
+            attach.setString(1, otherDbPath);
+            attach.execute();
+        }
+        // Companies whose row now is the shard's, by their id here and in the shard
+        String fromShard = "SELECT c.id AS id, sc.id AS shard_id FROM companies c " +
+                "JOIN shard.companies sc ON sc.name = c.name WHERE c.checked_at = sc.checked_at";
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate(sql);
+            // The update count includes rows written by the name index triggers
+            int merged;
+            try (ResultSet rs = stmt.executeQuery("SELECT changes()")) {
+                merged = rs.next() ? rs.getInt(1) : 0;
+            }
+            stmt.executeUpdate("DELETE FROM search_results WHERE company_id IN (SELECT id FROM (" + fromShard + "))");
+            stmt.executeUpdate("INSERT INTO search_results(company_id, urls, complete, searched_at) " +
+                    "SELECT m.id, s.urls, s.complete, s.searched_at FROM (" + fromShard + ") m " +
+                    "JOIN shard.search_results s ON s.company_id = m.shard_id");
+            connection.commit();
+            return merged;
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("DETACH DATABASE shard");
+            }
+        }
+    }
+
+    /**
+     * Store the URL lists searches returned, keyed by company name. Names not in the
+     * companies table are skipped. complete is false for lists cut off at the first match.
+     */
+    public synchronized void saveSearchUrls(Map<String, List<String>> urlsByCompanyName, boolean complete)
+            throws SQLException {
+        if (urlsByCompanyName.isEmpty()) {
+            return;
+        }
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "INSERT INTO search_results(company_id, urls, complete, searched_at) " +
+                "SELECT id, ?, ?, CURRENT_TIMESTAMP FROM companies WHERE name = ? " +
+                "ON CONFLICT(company_id) DO UPDATE SET urls = excluded.urls, complete = excluded.complete, " +
+                "searched_at = excluded.searched_at")) {
+            for (Map.Entry<String, List<String>> entry : urlsByCompanyName.entrySet()) {
+                pstmt.setBytes(1, StoredSearchResult.compress(entry.getValue()));
+                pstmt.setInt(2, complete ? 1 : 0);
+                pstmt.setString(3, entry.getKey());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Drop the stored search results of the named companies, e.g. once something
+     * other than a search has decided their website.
+     */
+    public synchronized void deleteSearchUrls(Collection<String> companyNames) throws SQLException {
+        if (companyNames.isEmpty()) {
+            return;
+        }
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "DELETE FROM search_results WHERE company_id IN (SELECT id FROM companies WHERE name = ?)")) {
+            for (String name : companyNames) {
+                pstmt.setString(1, name);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Up to limit stored search results with company id above afterId, in id order,
+     * so callers can page through all of them without holding everything in memory.
+     */
+    public synchronized List<StoredSearchResult> getSearchResults(int afterId, int limit) throws SQLException {
+        List<StoredSearchResult> results = new ArrayList<>();
+        String sql = "SELECT c.id, c.name, c.website, c.has_website, s.urls, s.complete FROM search_results s " +
+                "JOIN companies c ON c.id = s.company_id WHERE s.company_id > ? ORDER BY s.company_id LIMIT ?";
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, afterId);
+            pstmt.setInt(2, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    results.add(new StoredSearchResult(rs.getInt(1), rs.getString(2), rs.getString(3),
+                            rs.getInt(4) == 1, rs.getBytes(5), rs.getInt(6) == 1));
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Overwrite website and has_website for the given companies without touching
+     * checked_at, since nothing was checked again. Returns the rows changed.
+     */
+    public synchronized int updateWebsites(List<Company> companies) throws SQLException {
+        return writeStaged(companies, "UPDATE companies SET website = s.website, has_website = s.has_website " +
+                "FROM staged_companies AS s WHERE companies.name = s.name");
+    }
+
+    /**
+     * Fold duplicates into the keeper in one transaction: the keeper takes a duplicate's
+     * website if it has none of its own, then the duplicates are deleted.
+     */
+    public synchronized void mergeDuplicates(Company keeper, List<Company> duplicates) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (PreparedStatement adopt = connection.prepareStatement(
+                "UPDATE companies SET website = ?, has_website = 1, checked_at = COALESCE(?, checked_at) " +
+                "WHERE id = ? AND has_website = 0");
+             PreparedStatement delete = connection.prepareStatement("DELETE FROM companies WHERE id = ?")) {
+            for (Company duplicate : duplicates) {
+                if (duplicate.isHasWebsite() && duplicate.getWebsite() != null) {
+                    adopt.setString(1, duplicate.getWebsite());
+                    adopt.setString(2, duplicate.getCheckedAt());
+                    adopt.setInt(3, keeper.getId());
+                    adopt.executeUpdate();
+                }
+                delete.setInt(1, duplicate.getId());
+                delete.executeUpdate();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
     private Company mapResultSetToCompany(ResultSet rs) throws SQLException {
         Company company = new Company();
         company.setId(rs.getInt("id"));
@@ -91,10 +518,51 @@ public class DatabaseService implements StorageService {
         company.setWebsite(rs.getString("website"));
         company.setHasWebsite(rs.getInt("has_website") == 1);
         company.setCreatedAt(rs.getString("created_at"));
+        company.setCheckedAt(rs.getString("checked_at"));
         return company;
     }
 
-    public void removeCompany(String companyName) throws SQLException {
+    /**
+     * Claim the search for a company unless another process holds a live claim.
+     * A claim expires after leaseMillis, so a crashed process doesn't block others.
+     */
+    public synchronized boolean tryClaimSearch(String companyName, long leaseMillis) throws SQLException {
+        long now = System.currentTimeMillis();
+        try (PreparedStatement expire = connection.prepareStatement(
+                "DELETE FROM search_claims WHERE name = ? AND expires_at < ?");
+             PreparedStatement claim = connection.prepareStatement(
+                "INSERT OR IGNORE INTO search_claims(name, owner, expires_at) VALUES (?, ?, ?)")) {
+            expire.setString(1, companyName);
+            expire.setLong(2, now);
+            expire.executeUpdate();
+            claim.setString(1, companyName);
+            claim.setString(2, CLAIM_OWNER);
+            claim.setLong(3, now + leaseMillis);
+            return claim.executeUpdate() == 1;
+        }
+    }
+
+    public synchronized boolean isSearchClaimed(String companyName) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT 1 FROM search_claims WHERE name = ? AND expires_at >= ?")) {
+            pstmt.setString(1, companyName);
+            pstmt.setLong(2, System.currentTimeMillis());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    public synchronized void releaseSearchClaim(String companyName) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "DELETE FROM search_claims WHERE name = ? AND owner = ?")) {
+            pstmt.setString(1, companyName);
+            pstmt.setString(2, CLAIM_OWNER);
+            pstmt.executeUpdate();
+        }
+    }
+
+    public synchronized void removeCompany(String companyName) throws SQLException {
         String sql = "DELETE FROM companies WHERE id = ?";
 
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
@@ -105,16 +573,23 @@ public class DatabaseService implements StorageService {
                 throw new SQLException("Company not found: " + companyName);
             }
 
-            System.out.println("Removed company: " + companyName);
+            Log.info("Removed company: %s", companyName);
         } catch (SQLException error) {
-            System.out.println("Error removing company: " + error.getMessage());
+            Log.error("Error removing company: %s", error.getMessage());
         }
     }
 
-    public void close() throws SQLException {
+    public synchronized void close() throws SQLException {
+        Shutdown.unregister(this);
         if (connection != null && !connection.isClosed()) {
+            // Fold the WAL back into the database file, so a closed database is a single file
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+            } catch (SQLException e) {
+                Log.debug("WAL checkpoint on close failed: %s", e.getMessage());
+            }
             connection.close();
-            System.out.println("Database connection closed");
+            Log.info("Database connection closed");
         }
     }
 }
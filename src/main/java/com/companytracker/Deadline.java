@@ -0,0 +1,126 @@
+package com.companytracker;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * End of a time-boxed run. Tracks how long checks actually take and stops admitting
+ * new ones once a check started now would probably not finish before the end time.
+ * Checks already running are left to finish.
+ */
+public class Deadline {
+    public static final Deadline NONE = new Deadline(Instant.MAX, Duration.ZERO);
+
+    private static final double EWMA_ALPHA = 0.2;
+    private static final double SAFETY_FACTOR = 1.5;
+
+    private final Instant end;
+    private final long runStartNanos = System.nanoTime();
+    private double averageNanos;
+    private long completed;
+    private boolean closed;
+
+    public Deadline(Instant end, Duration initialEstimate) {
+        this.end = end;
+        this.averageNanos = initialEstimate.toNanos();
+    }
+
+    /**
+     * Parse "HH:mm" (next occurrence in local time), a local date-time like
+     * "2026-10-20T05:30", or a duration from now like "90m", "2h" or "45s".
+     */
+    public static Deadline parse(String spec, Duration initialEstimate) {
+        String value = spec.trim();
+        try {
+            if (value.matches("\\d+[smh]")) {
+                long amount = Long.parseLong(value.substring(0, value.length() - 1));
+                Duration duration;
+                switch (value.charAt(value.length() - 1)) {
+                    case 's':
+                        duration = Duration.ofSeconds(amount);
+                        break;
+                    case 'm':
+                        duration = Duration.ofMinutes(amount);
+                        break;
+                    default:
+                        duration = Duration.ofHours(amount);
+                }
+                return new Deadline(Instant.now().plus(duration), initialEstimate);
+            }
+            if (value.matches("\\d{1,2}:\\d{2}")) {
+                ZonedDateTime now = ZonedDateTime.now();
+                ZonedDateTime end = now.with(LocalTime.parse(value.length() == 4 ? "0" + value : value));
+                if (!end.isAfter(now)) {
+                    end = end.plusDays(1);
+                }
+                return new Deadline(end.toInstant(), initialEstimate);
+            }
+            return new Deadline(LocalDateTime.parse(value).atZone(ZoneId.systemDefault()).toInstant(), initialEstimate);
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new IllegalArgumentException("Deadline must be HH:mm, yyyy-MM-ddTHH:mm or a duration like 90m: " + spec);
+        }
+    }
+
+    /**
+     * True if a check started now is expected to finish in time. Once this returns
+     * false it keeps doing so, so a run never resumes admitting after a slow spell.
+     */
+    public synchronized boolean tryAdmit() {
+        if (closed) {
+            return false;
+        }
+        if (end.equals(Instant.MAX)) {
+            return true;
+        }
+        long marginNanos = (long) (averageNanos * SAFETY_FACTOR);
+        if (Instant.now().plusNanos(marginNanos).isAfter(end)) {
+            closed = true;
+            Log.info("Deadline %s: no longer admitting work (estimated %d ms per check)",
+                    end, marginNanos / 1_000_000);
+        }
+        return !closed;
+    }
+
+    /**
+     * Mark the start of an admitted check; pass the returned value to complete
+     */
+    public long begin() {
+        return System.nanoTime();
+    }
+
+    public synchronized void complete(long startNanos) {
+        if (this == NONE) {
+            return;
+        }
+        long elapsed = System.nanoTime() - startNanos;
+        averageNanos = completed == 0 && averageNanos == 0
+                ? elapsed
+                : EWMA_ALPHA * elapsed + (1 - EWMA_ALPHA) * averageNanos;
+        completed++;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    public Instant getEnd() {
+        return end;
+    }
+
+    public synchronized Duration getEstimatedCheckTime() {
+        return Duration.ofNanos((long) averageNanos);
+    }
+
+    /**
+     * Completed checks per minute since the run started
+     */
+    public synchronized double getThroughputPerMinute() {
+        double minutes = (System.nanoTime() - runStartNanos) / 60e9;
+        return minutes > 0 ? completed / minutes : 0;
+    }
+}
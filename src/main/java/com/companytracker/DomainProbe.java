@@ -0,0 +1,266 @@
+package com.companytracker;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cheap fast path before a search API call: guesses domains such as
+ * "kfrisor.se" from the normalized company name, resolves and HEAD-checks
+ * them concurrently and accepts the first one the matcher agrees with.
+ */
+public class DomainProbe {
+    private static final String[] TOP_LEVEL_DOMAINS = {".se", ".com", ".nu"};
+    private static final long DNS_CACHE_TTL_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    /**
+     * Decides whether a host name exists. Replaceable so tests can use a local stand-in.
+     */
+    public interface Resolver {
+        boolean resolves(String host) throws IOException;
+    }
+
+    /**
+     * Checks that a domain serves a website and returns the final URL after redirects,
+     * or null if nothing usable answered.
+     */
+    public interface HttpTarget {
+        String head(String domain) throws IOException;
+    }
+
+    private final Resolver resolver;
+    private final HttpTarget httpTarget;
+    private final long timeoutMillis;
+    private final ExecutorService executor;
+    // Registry URL checks get their own threads, so they neither wait behind probes nor hold them up
+    private final ExecutorService registryExecutor;
+    private final ConcurrentHashMap<String, DnsEntry> dnsCache = new ConcurrentHashMap<>();
+
+    public DomainProbe() {
+        this(HttpArchive.configured() != null ? new ArchiveResolver() : new SystemResolver(),
+                new OkHttpTarget(2000), 4000);
+    }
+
+    public DomainProbe(Resolver resolver, HttpTarget httpTarget, long timeoutMillis) {
+        this.resolver = resolver;
+        this.httpTarget = httpTarget;
+        this.timeoutMillis = timeoutMillis;
+        this.executor = Executors.newFixedThreadPool(8, runnable -> {
+            Thread thread = new Thread(runnable, "domain-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.registryExecutor = Executors.newFixedThreadPool(8, runnable -> {
+            Thread thread = new Thread(runnable, "registry-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Probe all candidate domains for the company concurrently and return the
+     * first matching URL, or an unmatched result if none answered in time.
+     */
+    public CompanyNameMatcher.MatchResult probe(String companyName) {
+        List<String> candidates = candidateDomains(companyName);
+        if (candidates.isEmpty()) {
+            return new CompanyNameMatcher.MatchResult(false, null);
+        }
+
+        CompletionService<String> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<String>> futures = new ArrayList<>();
+        for (String domain : candidates) {
+            futures.add(completionService.submit(() -> probeDomain(domain, companyName)));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                long remaining = deadline - System.nanoTime();
+                Future<String> done = completionService.poll(remaining, TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    break;
+                }
+                try {
+                    String url = done.get();
+                    if (url != null) {
+                        return new CompanyNameMatcher.MatchResult(true, url);
+                    }
+                } catch (ExecutionException e) {
+                    // This candidate failed, keep waiting for the others
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Future<String> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        return new CompanyNameMatcher.MatchResult(false, null);
+    }
+
+    /**
+     * Check a URL the caller already has (e.g. from a registry) on a pool of its own.
+     * Completes with the final URL after redirects, or null if the site doesn't answer
+     * within the timeout. The timeout starts when the check does, not while it is queued.
+     */
+    public CompletableFuture<String> checkUrlAsync(String url) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        registryExecutor.execute(() -> {
+            result.completeOnTimeout(null, timeoutMillis, TimeUnit.MILLISECONDS);
+            String domain = CompanyNameMatcher.extractDomainFromUrl(url);
+            try {
+                result.complete(!domain.isEmpty() && resolvesCached(domain) ? httpTarget.head(domain) : null);
+            } catch (IOException | RuntimeException e) {
+                result.complete(null);
+            }
+        });
+        return result;
+    }
+
+    private String probeDomain(String domain, String companyName) throws IOException {
+        if (!resolvesCached(domain)) {
+            return null;
+        }
+        String finalUrl = httpTarget.head(domain);
+        if (finalUrl != null && CompanyNameMatcher.urlMatchesCompanyName(finalUrl, companyName)) {
+            return finalUrl;
+        }
+        return null;
+    }
+
+    private boolean resolvesCached(String domain) throws IOException {
+        long now = System.currentTimeMillis();
+        DnsEntry entry = dnsCache.get(domain);
+        if (entry != null && entry.expiresAt > now) {
+            return entry.resolves;
+        }
+        boolean resolves = resolver.resolves(domain);
+        dnsCache.put(domain, new DnsEntry(resolves, now + DNS_CACHE_TTL_MILLIS));
+        return resolves;
+    }
+
+    /**
+     * Candidate domains built from the normalized name, e.g. "K Frisör AB" gives
+     * kfrisor.se, kfrisor.com and kfrisor.nu (plus k-frisor.* for multi-word names)
+     */
+    public static List<String> candidateDomains(String companyName) {
+        String normalized = CompanyNameMatcher.normalizeCompanyName(companyName);
+        if (normalized.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Set<String> labels = new LinkedHashSet<>();
+        labels.add(normalized.replace(" ", ""));
+        if (normalized.contains(" ")) {
+            labels.add(normalized.replace(" ", "-"));
+        }
+
+        List<String> domains = new ArrayList<>();
+        for (String label : labels) {
+            if (label.length() < 2 || label.length() > 63) {
+                continue;
+            }
+            for (String tld : TOP_LEVEL_DOMAINS) {
+                domains.add(label + tld);
+            }
+        }
+        return domains;
+    }
+
+    public void clearDnsCache() {
+        dnsCache.clear();
+    }
+
+    private static class DnsEntry {
+        private final boolean resolves;
+        private final long expiresAt;
+
+        DnsEntry(boolean resolves, long expiresAt) {
+            this.resolves = resolves;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    public static class SystemResolver implements Resolver {
+        @Override
+        public boolean resolves(String host) {
+            try {
+                InetAddress.getByName(host);
+                return true;
+            } catch (UnknownHostException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Used while recording or replaying an HTTP archive. Lookups aren't recorded, so every
+     * host counts as resolving and the HEAD request decides: a host that didn't resolve
+     * when recording fails without an archived exchange, and replay answers it with a 404.
+     */
+    public static class ArchiveResolver implements Resolver {
+        @Override
+        public boolean resolves(String host) {
+            return true;
+        }
+    }
+
+    /**
+     * HEAD request over https, falling back to http. Redirects are followed so the
+     * matcher sees where the domain actually ends up (parked domains redirect away).
+     * Goes through the configured HTTP archive, if any, like the API clients.
+     */
+    public static class OkHttpTarget implements HttpTarget {
+        private final OkHttpClient client;
+
+        public OkHttpTarget(long timeoutMillis) {
+            this.client = HttpArchive.newClientBuilder()
+                    .connectTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                    .readTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                    .callTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                    .followRedirects(true)
+                    .followSslRedirects(true)
+                    .build();
+        }
+
+        @Override
+        public String head(String domain) throws IOException {
+            try {
+                return head(client, "https://" + domain);
+            } catch (IOException e) {
+                return head(client, "http://" + domain);
+            }
+        }
+
+        static String head(OkHttpClient client, String url) throws IOException {
+            Request request = new Request.Builder().url(url).head().build();
+            try (Response response = client.newCall(request).execute()) {
+                // 405 means the server is there but doesn't allow HEAD
+                if (response.isSuccessful() || response.code() == 405) {
+                    return response.request().url().toString();
+                }
+                return null;
+            }
+        }
+    }
+}
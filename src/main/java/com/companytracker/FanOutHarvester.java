@@ -0,0 +1,275 @@
+package com.companytracker;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Runs many Bolagsfakta queries (industries, towns, employee filters) in parallel
+ * under one shared rate limit and merges them into a single stream in which every
+ * company appears once, keyed by org.nr.
+ */
+public class FanOutHarvester {
+    public static final double DEFAULT_REQUESTS_PER_SECOND = 2.0;
+
+    private final BolagsfaktaService bolagsfaktaService;
+    private final RetryPolicy retryPolicy;
+    private final RateLimiter rateLimiter;
+    private final int parallelism;
+    private final SeenSet seen;
+
+    private final AtomicInteger pagesFetched = new AtomicInteger();
+    private final AtomicInteger duplicates = new AtomicInteger();
+    private final AtomicInteger failedQueries = new AtomicInteger();
+
+    public FanOutHarvester(BolagsfaktaService bolagsfaktaService, RetryPolicy retryPolicy, int parallelism) {
+        this(bolagsfaktaService, retryPolicy, new RateLimiter(DEFAULT_REQUESTS_PER_SECOND), parallelism, new ExactSet());
+    }
+
+    public FanOutHarvester(BolagsfaktaService bolagsfaktaService, RetryPolicy retryPolicy, RateLimiter rateLimiter,
+                           int parallelism, SeenSet seen) {
+        this.bolagsfaktaService = bolagsfaktaService;
+        this.retryPolicy = retryPolicy;
+        this.rateLimiter = rateLimiter;
+        this.parallelism = parallelism;
+        this.seen = seen;
+    }
+
+    /**
+     * Fetch every page of every query, handing each company not seen before to the sink.
+     * The sink is called from worker threads and must be thread-safe. A query that
+     * fails is logged and skipped; the others keep going.
+     */
+    public void harvest(List<Query> queries, Consumer<BolagsfaktaCompany> sink) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, queries.size())), runnable -> {
+            Thread thread = new Thread(runnable, "fan-out-harvest");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (Query query : queries) {
+                tasks.add(pool.submit(() -> {
+                    harvestQuery(query, sink);
+                    return null;
+                }));
+            }
+            for (int i = 0; i < tasks.size(); i++) {
+                try {
+                    tasks.get(i).get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof InterruptedException) {
+                        Log.debug("%s", e.getCause().getMessage());
+                        continue;
+                    }
+                    failedQueries.incrementAndGet();
+                    Log.warn("Harvest of %s failed: %s", queries.get(i), e.getCause().getMessage());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void harvestQuery(Query query, Consumer<BolagsfaktaCompany> sink) throws IOException, InterruptedException {
+        for (int page = 1; page <= query.getPages(); page++) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            int currentPage = page;
+            BolagsfaktaService.SearchResponse response;
+            try {
+                response = retryPolicy.execute(() -> {
+                    try {
+                        rateLimiter.acquire();
+                    } catch (InterruptedException e) {
+                        // Keep the interrupt so it surfaces below as a stop, not as a failed query
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted waiting for the rate limit");
+                    }
+                    return bolagsfaktaService.searchCompanies(query.getWhat(), currentPage, query.getEmployeeFilter());
+                });
+            } catch (IOException e) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException("Harvest of " + query + " stopped at page " + page);
+                }
+                throw e;
+            }
+            pagesFetched.incrementAndGet();
+            Log.debug("Fetched %s page %d (%d companies)", query, page, response.getCompanies().size());
+
+            for (BolagsfaktaCompany company : response.getCompanies()) {
+                if (seen.add(keyOf(company))) {
+                    sink.accept(company);
+                } else {
+                    duplicates.incrementAndGet();
+                }
+            }
+
+            if (!response.isHasNextPage()) {
+                break;
+            }
+        }
+    }
+
+    private static String keyOf(BolagsfaktaCompany company) {
+        if (company.getOrgNr() != null) {
+            return company.getOrgNr().replace("-", "").replace(" ", "");
+        }
+        return "name:" + CompanyNameMatcher.normalizeCompanyName(company.getCompanyName());
+    }
+
+    public int getPagesFetched() {
+        return pagesFetched.get();
+    }
+
+    public int getDuplicates() {
+        return duplicates.get();
+    }
+
+    public int getFailedQueries() {
+        return failedQueries.get();
+    }
+
+    /**
+     * One search: the "what" string, optional employee filter codes and a page limit
+     */
+    public static class Query {
+        private final String what;
+        private final int[] employeeFilter;
+        private final int pages;
+
+        public Query(String what, int[] employeeFilter, int pages) {
+            this.what = what;
+            this.employeeFilter = employeeFilter;
+            this.pages = pages;
+        }
+
+        /**
+         * Parse "what" or "what:e1,e2", e.g. "Frisör Uppsala:0,1"
+         */
+        public static Query parse(String spec, int pages) {
+            int colon = spec.lastIndexOf(':');
+            if (colon < 0) {
+                return new Query(spec.trim(), null, pages);
+            }
+            try {
+                int[] filter = Arrays.stream(spec.substring(colon + 1).split(","))
+                        .map(String::trim)
+                        .mapToInt(Integer::parseInt)
+                        .toArray();
+                return new Query(spec.substring(0, colon).trim(), filter, pages);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Employee filter must be comma-separated numbers: " + spec);
+            }
+        }
+
+        public String getWhat() {
+            return what;
+        }
+
+        public int[] getEmployeeFilter() {
+            return employeeFilter;
+        }
+
+        public int getPages() {
+            return pages;
+        }
+
+        @Override
+        public String toString() {
+            return "'" + what + "'" + (employeeFilter != null ? " e=" + Arrays.toString(employeeFilter) : "");
+        }
+    }
+
+    /**
+     * Set of companies already emitted. add returns false for a company seen before.
+     */
+    public interface SeenSet {
+        boolean add(String key);
+    }
+
+    /**
+     * Exact concurrent set; memory grows with the number of distinct companies
+     */
+    public static class ExactSet implements SeenSet {
+        private final Set<String> keys = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public boolean add(String key) {
+            return keys.add(key);
+        }
+    }
+
+    /**
+     * Fixed-size Bloom filter for very large harvests. A false positive drops a company
+     * that was never seen, so size it for a low rate. Two threads adding the same key at
+     * the same moment can both get true; storage upserts by name absorb that rare case.
+     */
+    public static class BloomSet implements SeenSet {
+        private final AtomicLongArray bits;
+        private final long bitCount;
+        private final int hashCount;
+
+        public BloomSet(long expectedInsertions, double falsePositiveRate) {
+            long m = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (m + 63) / 64));
+            this.bits = new AtomicLongArray(words);
+            this.bitCount = (long) words * 64;
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+        }
+
+        @Override
+        public boolean add(String key) {
+            long hash = hash64(key);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            boolean added = false;
+            for (int i = 1; i <= hashCount; i++) {
+                long combined = (h1 + (long) i * h2) & Long.MAX_VALUE;
+                long bit = combined % bitCount;
+                if (setBit((int) (bit >>> 6), 1L << (bit & 63))) {
+                    added = true;
+                }
+            }
+            return added;
+        }
+
+        private boolean setBit(int word, long mask) {
+            while (true) {
+                long current = bits.get(word);
+                if ((current & mask) != 0) {
+                    return false;
+                }
+                if (bits.compareAndSet(word, current, current | mask)) {
+                    return true;
+                }
+            }
+        }
+
+        private static long hash64(String key) {
+            long h = 0xcbf29ce484222325L;
+            for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+                h ^= (b & 0xff);
+                h *= 0x100000001b3L;
+            }
+            h ^= (h >>> 33);
+            h *= 0xff51afd7ed558ccdL;
+            h ^= (h >>> 33);
+            return h;
+        }
+    }
+}
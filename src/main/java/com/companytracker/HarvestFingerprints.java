@@ -0,0 +1,225 @@
+package com.companytracker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * Remembers a 64-bit fingerprint of the fields we check on (name, address, SNI and
+ * registry URL) for every company seen in earlier harvests, so a new run only has
+ * to check companies that are new or whose fingerprint changed.
+ *
+ * Entries live in an open-addressing table of packed org.nr to fingerprint, 16 bytes
+ * per slot, and are persisted as a flat binary file.
+ */
+public class HarvestFingerprints {
+    public static final String DEFAULT_FILE = "harvest_fingerprints.bin";
+    private static final int MAGIC = 0x43574650; // "CWFP"
+    private static final int VERSION = 1;
+    private static final long EMPTY = 0L;
+
+    private final Path file;
+    private long[] keys;
+    private long[] fingerprints;
+    private int size;
+    private boolean dirty;
+
+    public HarvestFingerprints() {
+        this(Paths.get(DEFAULT_FILE));
+    }
+
+    public HarvestFingerprints(Path file) {
+        this.file = file;
+        allocate(1 << 10);
+        load();
+    }
+
+    /**
+     * True when the company was not seen before or any fingerprinted field changed.
+     * Companies without an org.nr can't be tracked and always count as new.
+     */
+    public synchronized boolean isNewOrChanged(BolagsfaktaCompany company) {
+        long key = keyOf(company);
+        if (key == EMPTY) {
+            return true;
+        }
+        int slot = find(key);
+        return keys[slot] == EMPTY || fingerprints[slot] != fingerprint(company);
+    }
+
+    /**
+     * Store the company's current fingerprint. Call this once it has been checked,
+     * so companies that failed are picked up again next run.
+     */
+    public synchronized void record(BolagsfaktaCompany company) {
+        long key = keyOf(company);
+        if (key == EMPTY) {
+            return;
+        }
+        int slot = find(key);
+        long fingerprint = fingerprint(company);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            size++;
+            if (size * 4 > keys.length * 3) {
+                rehash(keys.length * 2);
+            }
+        } else if (fingerprints[slot] == fingerprint) {
+            return;
+        }
+        fingerprints[find(key)] = fingerprint;
+        dirty = true;
+    }
+
+    /**
+     * Record every result that completed without an error
+     */
+    public void recordAll(List<WebsiteChecker.CheckResult> results) {
+        for (WebsiteChecker.CheckResult result : results) {
+            if (result.getError() == null) {
+                record(result.getCompany());
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Write the table to disk via a temp file and atomic move. No-op when nothing changed.
+     */
+    public synchronized void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != EMPTY) {
+                    out.writeLong(keys[i]);
+                    out.writeLong(fingerprints[i]);
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        dirty = false;
+    }
+
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Log.warn("Ignoring unrecognized fingerprint file %s", file);
+                return;
+            }
+            int count = in.readInt();
+            allocate(Math.max(1 << 10, Integer.highestOneBit(Math.max(1, count)) * 4));
+            for (int i = 0; i < count; i++) {
+                long key = in.readLong();
+                long fingerprint = in.readLong();
+                int slot = find(key);
+                keys[slot] = key;
+                fingerprints[slot] = fingerprint;
+            }
+            size = count;
+        } catch (IOException e) {
+            Log.warn("Could not read harvest fingerprints, treating all companies as new: %s", e.getMessage());
+            allocate(1 << 10);
+            size = 0;
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        fingerprints = new long[capacity];
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldFingerprints = fingerprints;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                fingerprints[slot] = oldFingerprints[i];
+            }
+        }
+    }
+
+    /**
+     * Slot holding the key, or the empty slot where it would go (linear probing)
+     */
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int slot = (int) mix(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Packed org.nr, or a tagged hash for org.nrs that don't pack. EMPTY when there is none.
+     */
+    private static long keyOf(BolagsfaktaCompany company) {
+        String orgNr = company.getOrgNr();
+        if (orgNr == null || orgNr.isBlank()) {
+            return EMPTY;
+        }
+        long packed = CompactCompanyStore.packOrgNr(orgNr);
+        if (packed != -1) {
+            return packed;
+        }
+        long hashed = hash(FNV_OFFSET, orgNr) | Long.MIN_VALUE;
+        return hashed == -1 ? Long.MIN_VALUE : hashed;
+    }
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    static long fingerprint(BolagsfaktaCompany company) {
+        long h = FNV_OFFSET;
+        h = hash(h, company.getCompanyName());
+        h = hash(h, company.getAddress());
+        h = hash(h, company.getSniText());
+        h = hash(h, company.getCompanyUrl());
+        return h;
+    }
+
+    /**
+     * FNV-1a over the UTF-8 bytes, followed by a separator so field boundaries count
+     */
+    private static long hash(long h, String value) {
+        if (value != null) {
+            for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+                h ^= (b & 0xff);
+                h *= FNV_PRIME;
+            }
+        }
+        h ^= value == null ? 0xfe : 0xff;
+        h *= FNV_PRIME;
+        return h;
+    }
+
+    private static long mix(long key) {
+        key ^= (key >>> 33);
+        key *= 0xff51afd7ed558ccdL;
+        key ^= (key >>> 33);
+        return key;
+    }
+}
@@ -0,0 +1,376 @@
+package com.companytracker;
+
+import io.github.cdimascio.dotenv.Dotenv;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Records HTTP exchanges to a gzip archive, or serves them back from it, so full
+ * pipeline runs can be repeated offline and compared build against build.
+ *
+ * Configured from HTTP_MODE (off, record or replay), HTTP_ARCHIVE (default
+ * http_archive.gz) and HTTP_REPLAY_LATENCY (0 for full speed, a fixed number of
+ * milliseconds, or "recorded" to wait as long as the original response took).
+ *
+ * Requests are keyed by method, URL and a hash of the body; headers such as the
+ * API key are left out. A request seen several times is answered with its
+ * recordings in order, repeating the last one. Calls that failed without a
+ * response are recorded too, and replayed as the same kind of IOException.
+ */
+public class HttpArchive implements Interceptor, Closeable {
+    public enum Mode {
+        OFF,
+        RECORD,
+        REPLAY
+    }
+
+    public static final String DEFAULT_FILE = "http_archive.gz";
+
+    private static final int MAGIC = 0x43574841; // "CWHA"
+    private static final int VERSION = 2;
+    private static final long RECORDED_LATENCY = -1;
+    // Code of an exchange whose call failed; its message is the exception class, its body the exception message
+    private static final int FAILED = -1;
+
+    private static HttpArchive configured;
+    private static boolean configuredLoaded;
+
+    private final Mode mode;
+    private final Path file;
+    private final long replayLatencyMillis;
+    private final Map<String, Deque<Exchange>> recorded = new HashMap<>();
+    private DataOutputStream out;
+    private int count;
+
+    public HttpArchive(Mode mode, Path file, long replayLatencyMillis) throws IOException {
+        this.mode = mode;
+        this.file = file;
+        this.replayLatencyMillis = replayLatencyMillis;
+        if (mode == Mode.RECORD) {
+            // Sync flush after every exchange, so an interrupted run still leaves a readable archive
+            out = new DataOutputStream(new GZIPOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(file)), 8192, true));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.flush();
+        } else if (mode == Mode.REPLAY) {
+            load();
+        }
+    }
+
+    /**
+     * Client builder for calls to outside services, with the archive from the
+     * environment installed when recording or replaying.
+     */
+    public static OkHttpClient.Builder newClientBuilder() {
+        OkHttpClient.Builder builder = new OkHttpClient.Builder();
+        HttpArchive archive = configured();
+        if (archive != null) {
+            builder.addInterceptor(archive);
+        }
+        return builder;
+    }
+
+    /**
+     * The archive set up by HTTP_MODE, shared by every client, or null when off
+     */
+    public static synchronized HttpArchive configured() {
+        if (configuredLoaded) {
+            return configured;
+        }
+        configuredLoaded = true;
+
+        String modeValue = setting("HTTP_MODE", "off");
+        Mode mode;
+        try {
+            mode = Mode.valueOf(modeValue.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            Log.warn("Unknown HTTP_MODE '%s', using the network directly", modeValue);
+            return null;
+        }
+        if (mode == Mode.OFF) {
+            return null;
+        }
+
+        Path file = Paths.get(setting("HTTP_ARCHIVE", DEFAULT_FILE));
+        String latency = setting("HTTP_REPLAY_LATENCY", "0").trim();
+        try {
+            long latencyMillis = latency.equalsIgnoreCase("recorded") ? RECORDED_LATENCY : Long.parseLong(latency);
+            configured = new HttpArchive(mode, file, latencyMillis);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("HTTP_REPLAY_LATENCY must be milliseconds or 'recorded': " + latency);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open HTTP archive " + file + ": " + e.getMessage(), e);
+        }
+
+        if (mode == Mode.RECORD) {
+            // Closed after in-flight requests finish, so their responses are recorded too
+            Shutdown.register("HTTP archive " + file, configured);
+            Log.info("Recording HTTP exchanges to %s", file);
+        } else {
+            Log.info("Replaying %d recorded HTTP exchanges from %s", configured.count, file);
+        }
+        return configured;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String key = key(request);
+        return mode == Mode.REPLAY ? replay(request, key) : record(chain, key);
+    }
+
+    private Response record(Chain chain, String key) throws IOException {
+        long start = System.nanoTime();
+        Response response = null;
+        byte[] body;
+        try {
+            response = chain.proceed(chain.request());
+            // Peeking buffers a copy, so callers that stop reading early still work as before
+            body = response.peekBody(Long.MAX_VALUE).bytes();
+        } catch (IOException e) {
+            if (response != null) {
+                response.close();
+            }
+            if (!(e instanceof InterruptedIOException) || e instanceof SocketTimeoutException) {
+                // A caller that is stopping isn't something the upstream did, so that isn't recorded
+                long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                write(new Exchange(key, chain.request().url().toString(), FAILED, e.getClass().getName(), "", "",
+                        (int) Math.min(Integer.MAX_VALUE, elapsedMillis),
+                        nullToEmpty(e.getMessage()).getBytes(StandardCharsets.UTF_8)));
+            }
+            throw e;
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        MediaType contentType = response.body() != null ? response.body().contentType() : null;
+        write(new Exchange(key, response.request().url().toString(), response.code(), response.message(),
+                contentType != null ? contentType.toString() : "", nullToEmpty(response.header("Retry-After")),
+                (int) Math.min(Integer.MAX_VALUE, elapsedMillis), body));
+        return response;
+    }
+
+    private Response replay(Request request, String key) throws IOException {
+        Exchange exchange;
+        synchronized (recorded) {
+            Deque<Exchange> exchanges = recorded.get(key);
+            exchange = exchanges == null ? null : exchanges.size() > 1 ? exchanges.poll() : exchanges.peek();
+        }
+        if (exchange == null) {
+            Log.warn("No recorded response for %s", key);
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(404)
+                    .message("Not Recorded")
+                    .body(ResponseBody.create("No recorded response for " + key, MediaType.get("text/plain")))
+                    .build();
+        }
+
+        long latency = replayLatencyMillis == RECORDED_LATENCY ? exchange.elapsedMillis : replayLatencyMillis;
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted during simulated latency");
+            }
+        }
+        if (exchange.code == FAILED) {
+            throw failure(exchange.message, new String(exchange.body, StandardCharsets.UTF_8));
+        }
+
+        Response.Builder response = new Response.Builder()
+                .request(request.newBuilder().url(exchange.finalUrl).build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(exchange.code)
+                .message(exchange.message)
+                .body(ResponseBody.create(exchange.body,
+                        exchange.contentType.isEmpty() ? null : MediaType.parse(exchange.contentType)));
+        if (!exchange.contentType.isEmpty()) {
+            response.header("Content-Type", exchange.contentType);
+        }
+        if (!exchange.retryAfter.isEmpty()) {
+            response.header("Retry-After", exchange.retryAfter);
+        }
+        return response.build();
+    }
+
+    /**
+     * The recorded failure as the exception the call threw, as far as callers tell
+     * them apart: timeouts and DNS failures are retried or skipped differently
+     */
+    private static IOException failure(String type, String message) {
+        String replayed = "Replayed failure: " + message;
+        if (type.equals(SocketTimeoutException.class.getName())) {
+            return new SocketTimeoutException(replayed);
+        }
+        if (type.equals(UnknownHostException.class.getName())) {
+            return new UnknownHostException(replayed);
+        }
+        if (type.equals(ConnectException.class.getName())) {
+            return new ConnectException(replayed);
+        }
+        return new IOException(type + ": " + replayed);
+    }
+
+    private synchronized void write(Exchange exchange) throws IOException {
+        if (out == null) {
+            return;
+        }
+        out.writeUTF(exchange.key);
+        out.writeUTF(exchange.finalUrl);
+        out.writeInt(exchange.code);
+        out.writeUTF(exchange.message);
+        out.writeUTF(exchange.contentType);
+        out.writeUTF(exchange.retryAfter);
+        out.writeInt(exchange.elapsedMillis);
+        out.writeInt(exchange.body.length);
+        out.write(exchange.body);
+        out.flush();
+        count++;
+    }
+
+    private void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an HTTP archive: " + file);
+            }
+            // Version 1 archives are the same, only without failed exchanges
+            int version = in.readInt();
+            if (version != 1 && version != VERSION) {
+                throw new IOException("Unsupported HTTP archive version " + version + ": " + file);
+            }
+            while (true) {
+                String key;
+                try {
+                    key = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                String finalUrl = in.readUTF();
+                int code = in.readInt();
+                String message = in.readUTF();
+                String contentType = in.readUTF();
+                String retryAfter = in.readUTF();
+                int elapsedMillis = in.readInt();
+                byte[] body = new byte[in.readInt()];
+                in.readFully(body);
+                recorded.computeIfAbsent(key, k -> new ArrayDeque<>())
+                        .add(new Exchange(key, finalUrl, code, message, contentType, retryAfter, elapsedMillis, body));
+                count++;
+            }
+        } catch (EOFException e) {
+            // A recording cut off mid-exchange; use what was complete
+            Log.warn("HTTP archive %s ends mid-exchange, using the first %d exchanges", file, count);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+            Log.info("Recorded %d HTTP exchanges to %s", count, file);
+        }
+    }
+
+    static String key(Request request) throws IOException {
+        StringBuilder key = new StringBuilder(request.method()).append(' ').append(request.url());
+        if (request.body() != null) {
+            Buffer body = new Buffer();
+            request.body().writeTo(body);
+            key.append(' ').append(sha256(body.readByteArray()));
+        }
+        return key.toString();
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 12; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    private static String setting(String key, String defaultValue) {
+        try {
+            String value = Dotenv.configure().filename(".env.local").ignoreIfMissing().load().get(key);
+            if (value == null) {
+                value = Dotenv.configure().filename(".env").ignoreIfMissing().load().get(key);
+            }
+            return value != null ? value : defaultValue;
+        } catch (Exception e) {
+            return defaultValue;
+        }
+    }
+
+    private static class Exchange {
+        final String key;
+        final String finalUrl;
+        final int code;
+        final String message;
+        final String contentType;
+        final String retryAfter;
+        final int elapsedMillis;
+        final byte[] body;
+
+        Exchange(String key, String finalUrl, int code, String message, String contentType, String retryAfter,
+                 int elapsedMillis, byte[] body) {
+            this.key = key;
+            this.finalUrl = finalUrl;
+            this.code = code;
+            this.message = message;
+            this.contentType = contentType;
+            this.retryAfter = retryAfter;
+            this.elapsedMillis = elapsedMillis;
+            this.body = body;
+        }
+    }
+}
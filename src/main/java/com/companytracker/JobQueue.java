@@ -0,0 +1,266 @@
+package com.companytracker;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Durable queue of website checks in the SQLite database, shared by any number of
+ * worker processes. Workers lease batches of jobs atomically; a lease that isn't
+ * renewed by heartbeats expires and the jobs become available to other workers.
+ */
+public class JobQueue implements AutoCloseable {
+    public static final String PENDING = "PENDING";
+    public static final String LEASED = "LEASED";
+    public static final String DONE = "DONE";
+    public static final String FAILED = "FAILED";
+
+    private final Connection connection;
+    private final int maxAttempts;
+
+    public JobQueue() throws SQLException {
+        this(DatabaseService.DEFAULT_DB_PATH, 3);
+    }
+
+    public JobQueue(String dbPath, int maxAttempts) throws SQLException {
+        this.connection = DatabaseService.openConnection(dbPath);
+        this.maxAttempts = maxAttempts;
+        createTable();
+        Shutdown.register("job queue " + dbPath, this);
+    }
+
+    private void createTable() throws SQLException {
+        String sql = "CREATE TABLE IF NOT EXISTS check_jobs (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "org_nr TEXT NOT NULL UNIQUE," +
+                "company_name TEXT NOT NULL," +
+                "company_url TEXT," +
+                "state TEXT NOT NULL DEFAULT 'PENDING'," +
+                "lease_owner TEXT," +
+                "lease_expires_at INTEGER," +
+                "attempts INTEGER NOT NULL DEFAULT 0," +
+                "last_error TEXT," +
+                "has_website INTEGER," +
+                "matched_url TEXT," +
+                "updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                ")";
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(sql);
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_check_jobs_state ON check_jobs(state, lease_expires_at)");
+        }
+    }
+
+    /**
+     * Add companies as pending jobs, ignoring org.nrs that are already queued.
+     * Returns the number of new jobs.
+     */
+    public synchronized int enqueue(List<BolagsfaktaCompany> companies) throws SQLException {
+        String sql = "INSERT OR IGNORE INTO check_jobs(org_nr, company_name, company_url) VALUES(?, ?, ?)";
+        int inserted = 0;
+
+        connection.setAutoCommit(false);
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            for (BolagsfaktaCompany company : companies) {
+                if (company.getOrgNr() == null || company.getCompanyName() == null) {
+                    continue;
+                }
+                pstmt.setString(1, company.getOrgNr());
+                pstmt.setString(2, company.getCompanyName());
+                pstmt.setString(3, company.getCompanyUrl());
+                inserted += pstmt.executeUpdate();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+
+        return inserted;
+    }
+
+    /**
+     * Atomically lease up to batchSize jobs that are pending or whose lease has expired.
+     * A single UPDATE ... RETURNING takes SQLite's write lock, so two workers can
+     * never lease the same job. An expired lease counts as a failed attempt: jobs
+     * that used up maxAttempts that way (e.g. crashing their worker every time) are
+     * marked failed instead of being leased again.
+     */
+    public synchronized List<Job> lease(String owner, int batchSize, long leaseMillis) throws SQLException {
+        long now = System.currentTimeMillis();
+        failExhaustedLeases(now);
+
+        String sql = "UPDATE check_jobs SET state = 'LEASED', lease_owner = ?, lease_expires_at = ?, " +
+                "attempts = attempts + 1, updated_at = CURRENT_TIMESTAMP " +
+                "WHERE id IN (SELECT id FROM check_jobs " +
+                "WHERE state = 'PENDING' OR (state = 'LEASED' AND lease_expires_at < ? AND attempts < ?) " +
+                "ORDER BY id LIMIT ?) " +
+                "RETURNING id, org_nr, company_name, company_url, attempts";
+
+        List<Job> jobs = new ArrayList<>();
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, owner);
+            pstmt.setLong(2, now + leaseMillis);
+            pstmt.setLong(3, now);
+            pstmt.setInt(4, maxAttempts);
+            pstmt.setInt(5, batchSize);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    jobs.add(new Job(rs.getLong("id"), rs.getString("org_nr"), rs.getString("company_name"),
+                            rs.getString("company_url"), rs.getInt("attempts")));
+                }
+            }
+        }
+        return jobs;
+    }
+
+    private void failExhaustedLeases(long now) throws SQLException {
+        String sql = "UPDATE check_jobs SET state = 'FAILED', last_error = 'Lease expired after ' || attempts || ' attempts', " +
+                "lease_owner = NULL, lease_expires_at = NULL, updated_at = CURRENT_TIMESTAMP " +
+                "WHERE state = 'LEASED' AND lease_expires_at < ? AND attempts >= ?";
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setLong(1, now);
+            pstmt.setInt(2, maxAttempts);
+            int failed = pstmt.executeUpdate();
+            if (failed > 0) {
+                Log.warn("%d jobs failed: their leases expired after %d attempts", failed, maxAttempts);
+            }
+        }
+    }
+
+    /**
+     * Extend all leases held by the owner. Returns the number of leases renewed.
+     */
+    public synchronized int heartbeat(String owner, long leaseMillis) throws SQLException {
+        String sql = "UPDATE check_jobs SET lease_expires_at = ? WHERE lease_owner = ? AND state = 'LEASED'";
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setLong(1, System.currentTimeMillis() + leaseMillis);
+            pstmt.setString(2, owner);
+            return pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Mark a job done. Ignored if the lease was lost to another worker in the meantime.
+     */
+    public synchronized boolean complete(Job job, String owner, boolean hasWebsite, String matchedUrl) throws SQLException {
+        String sql = "UPDATE check_jobs SET state = 'DONE', has_website = ?, matched_url = ?, last_error = NULL, " +
+                "lease_owner = NULL, lease_expires_at = NULL, updated_at = CURRENT_TIMESTAMP " +
+                "WHERE id = ? AND lease_owner = ? AND state = 'LEASED'";
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, hasWebsite ? 1 : 0);
+            pstmt.setString(2, matchedUrl);
+            pstmt.setLong(3, job.getId());
+            pstmt.setString(4, owner);
+            return pstmt.executeUpdate() == 1;
+        }
+    }
+
+    /**
+     * Record a failed attempt. The job goes back to pending until it has used up maxAttempts.
+     */
+    public synchronized boolean fail(Job job, String owner, String error) throws SQLException {
+        String sql = "UPDATE check_jobs SET state = CASE WHEN attempts >= ? THEN 'FAILED' ELSE 'PENDING' END, " +
+                "last_error = ?, lease_owner = NULL, lease_expires_at = NULL, updated_at = CURRENT_TIMESTAMP " +
+                "WHERE id = ? AND lease_owner = ? AND state = 'LEASED'";
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, maxAttempts);
+            pstmt.setString(2, error);
+            pstmt.setLong(3, job.getId());
+            pstmt.setString(4, owner);
+            return pstmt.executeUpdate() == 1;
+        }
+    }
+
+    /**
+     * Hand a leased job back without counting the attempt, e.g. when the API budget ran out.
+     */
+    public synchronized boolean release(Job job, String owner) throws SQLException {
+        String sql = "UPDATE check_jobs SET state = 'PENDING', attempts = MAX(attempts - 1, 0), " +
+                "lease_owner = NULL, lease_expires_at = NULL, updated_at = CURRENT_TIMESTAMP " +
+                "WHERE id = ? AND lease_owner = ? AND state = 'LEASED'";
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setLong(1, job.getId());
+            pstmt.setString(2, owner);
+            return pstmt.executeUpdate() == 1;
+        }
+    }
+
+    public synchronized Map<String, Integer> countByState() throws SQLException {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        String sql = "SELECT state, COUNT(*) AS n FROM check_jobs GROUP BY state ORDER BY state";
+
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                counts.put(rs.getString("state"), rs.getInt("n"));
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public synchronized void close() throws SQLException {
+        Shutdown.unregister(this);
+        if (!connection.isClosed()) {
+            connection.close();
+        }
+    }
+
+    public static class Job {
+        private final long id;
+        private final String orgNr;
+        private final String companyName;
+        private final String companyUrl;
+        private final int attempts;
+
+        public Job(long id, String orgNr, String companyName, String companyUrl, int attempts) {
+            this.id = id;
+            this.orgNr = orgNr;
+            this.companyName = companyName;
+            this.companyUrl = companyUrl;
+            this.attempts = attempts;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getOrgNr() {
+            return orgNr;
+        }
+
+        public String getCompanyName() {
+            return companyName;
+        }
+
+        public String getCompanyUrl() {
+            return companyUrl;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public BolagsfaktaCompany toCompany() {
+            BolagsfaktaCompany company = new BolagsfaktaCompany();
+            company.setOrgNr(orgNr);
+            company.setCompanyName(companyName);
+            company.setCompanyUrl(companyUrl);
+            return company;
+        }
+    }
+}
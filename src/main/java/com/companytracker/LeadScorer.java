@@ -0,0 +1,117 @@
+package com.companytracker;
+
+import io.github.cdimascio.dotenv.Dotenv;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Scores how valuable it is to spend a search call on a company. Higher is better.
+ *
+ *   score = revenueWeight   * log10(1 + omsattning)
+ *         + employeeWeight  * log2(1 + antalAnstallda)
+ *         + bolagsform weight
+ *         + stalenessWeight * min(days since last check, 365) / 365   (never checked counts as 365)
+ *
+ * Logarithms keep a handful of very large companies from drowning out everything else.
+ */
+public class LeadScorer {
+    private static final DateTimeFormatter SQLITE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final double MAX_STALENESS_DAYS = 365;
+
+    private final double revenueWeight;
+    private final double employeeWeight;
+    private final double stalenessWeight;
+    private final Map<String, Double> bolagsformWeights;
+    private final ToDoubleFunction<CompanyRecord> daysSinceChecked;
+
+    public LeadScorer(double revenueWeight, double employeeWeight, double stalenessWeight,
+                      Map<String, Double> bolagsformWeights, ToDoubleFunction<CompanyRecord> daysSinceChecked) {
+        this.revenueWeight = revenueWeight;
+        this.employeeWeight = employeeWeight;
+        this.stalenessWeight = stalenessWeight;
+        this.bolagsformWeights = new HashMap<>();
+        bolagsformWeights.forEach((form, weight) -> this.bolagsformWeights.put(form.toLowerCase(Locale.ROOT), weight));
+        this.daysSinceChecked = daysSinceChecked;
+    }
+
+    /**
+     * Weights from LEAD_WEIGHT_REVENUE, LEAD_WEIGHT_EMPLOYEES and LEAD_WEIGHT_STALENESS
+     * in .env.local or .env (defaults 1.0, 1.0 and 2.0), with every company treated as never checked.
+     */
+    public static LeadScorer configured() {
+        return configured(company -> Double.POSITIVE_INFINITY);
+    }
+
+    public static LeadScorer configured(ToDoubleFunction<CompanyRecord> daysSinceChecked) {
+        return new LeadScorer(
+                configuredWeight("LEAD_WEIGHT_REVENUE", 1.0),
+                configuredWeight("LEAD_WEIGHT_EMPLOYEES", 1.0),
+                configuredWeight("LEAD_WEIGHT_STALENESS", 2.0),
+                defaultBolagsformWeights(),
+                daysSinceChecked);
+    }
+
+    public static Map<String, Double> defaultBolagsformWeights() {
+        Map<String, Double> weights = new HashMap<>();
+        weights.put("Aktiebolag", 1.0);
+        weights.put("Handelsbolag", 0.6);
+        weights.put("Kommanditbolag", 0.6);
+        weights.put("Ekonomisk förening", 0.4);
+        weights.put("Enskild näringsidkare", 0.3);
+        weights.put("Enskild firma", 0.3);
+        weights.put("AB", 1.0);
+        weights.put("HB", 0.6);
+        weights.put("KB", 0.6);
+        weights.put("EF", 0.3);
+        return weights;
+    }
+
+    public double score(CompanyRecord company) {
+        double score = revenueWeight * Math.log10(1 + Math.max(0, company.getOmsattning()))
+                + employeeWeight * (Math.log(1 + Math.max(0, company.getAntalAnstallda())) / Math.log(2));
+
+        if (company.getBolagsform() != null) {
+            score += bolagsformWeights.getOrDefault(company.getBolagsform().toLowerCase(Locale.ROOT), 0.0);
+        }
+
+        double days = daysSinceChecked.applyAsDouble(company);
+        score += stalenessWeight * Math.min(days, MAX_STALENESS_DAYS) / MAX_STALENESS_DAYS;
+        return score;
+    }
+
+    /**
+     * Days since a SQLite CURRENT_TIMESTAMP value (UTC), or infinity for null or unparseable values
+     */
+    public static double daysSince(String checkedAt) {
+        if (checkedAt == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+        try {
+            LocalDateTime checked = LocalDateTime.parse(checkedAt, SQLITE_TIMESTAMP);
+            Duration age = Duration.between(checked, LocalDateTime.now(ZoneOffset.UTC));
+            return Math.max(0, age.toMinutes() / (60.0 * 24));
+        } catch (DateTimeParseException e) {
+            return Double.POSITIVE_INFINITY;
+        }
+    }
+
+    private static double configuredWeight(String key, double defaultValue) {
+        try {
+            String value = Dotenv.configure().filename(".env.local").ignoreIfMissing().load().get(key);
+            if (value == null) {
+                value = Dotenv.configure().filename(".env").ignoreIfMissing().load().get(key);
+            }
+            return value != null ? Double.parseDouble(value.trim()) : defaultValue;
+        } catch (Exception e) {
+            return defaultValue;
+        }
+    }
+}
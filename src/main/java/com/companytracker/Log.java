@@ -0,0 +1,191 @@
+package com.companytracker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous, level-gated logger. Callers only enqueue a message; a single
+ * background thread writes batches to stdout/stderr, so worker threads never
+ * contend on the console. Messages below the current level are not even formatted.
+ *
+ * The level comes from the LOG_LEVEL environment variable (default INFO) and can
+ * be changed at runtime, e.g. setQuiet(true) for warnings and errors only.
+ */
+public final class Log {
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    private static final int QUEUE_CAPACITY = 65_536;
+    private static final BlockingQueue<Entry> QUEUE = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static final AtomicLong DROPPED = new AtomicLong();
+    private static volatile Level level = initialLevel();
+
+    static {
+        Thread writer = new Thread(Log::writeLoop, "async-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        try {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(2, TimeUnit.SECONDS), "log-flush"));
+        } catch (IllegalStateException e) {
+            // First logged from a shutdown hook; the graceful shutdown flushes the log when it is done
+        }
+    }
+
+    private Log() {
+    }
+
+    public static void setLevel(Level newLevel) {
+        level = newLevel;
+    }
+
+    public static Level getLevel() {
+        return level;
+    }
+
+    /**
+     * Quiet mode keeps only warnings and errors
+     */
+    public static void setQuiet(boolean quiet) {
+        level = quiet ? Level.WARN : Level.INFO;
+    }
+
+    public static boolean isEnabled(Level messageLevel) {
+        return messageLevel.compareTo(level) >= 0;
+    }
+
+    public static void debug(String format, Object... args) {
+        if (isEnabled(Level.DEBUG)) {
+            enqueue(Level.DEBUG, format, args);
+        }
+    }
+
+    public static void info(String format, Object... args) {
+        if (isEnabled(Level.INFO)) {
+            enqueue(Level.INFO, format, args);
+        }
+    }
+
+    public static void warn(String format, Object... args) {
+        if (isEnabled(Level.WARN)) {
+            enqueue(Level.WARN, format, args);
+        }
+    }
+
+    public static void error(String format, Object... args) {
+        if (isEnabled(Level.ERROR)) {
+            enqueue(Level.ERROR, format, args);
+        }
+    }
+
+    /**
+     * Wait until everything logged so far has been written
+     */
+    public static void flush() {
+        flush(5, TimeUnit.SECONDS);
+    }
+
+    public static void flush(long timeout, TimeUnit unit) {
+        CountDownLatch written = new CountDownLatch(1);
+        try {
+            if (QUEUE.offer(new Entry(null, null, written), timeout, unit)) {
+                written.await(timeout, unit);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Number of debug/info messages dropped because the queue was full
+     */
+    public static long getDroppedCount() {
+        return DROPPED.get();
+    }
+
+    private static void enqueue(Level messageLevel, String format, Object[] args) {
+        String message = args.length == 0 ? format : String.format(format, args);
+        Entry entry = new Entry(messageLevel, message, null);
+
+        if (messageLevel.compareTo(Level.WARN) >= 0) {
+            // Never lose warnings or errors; wait for room instead
+            try {
+                QUEUE.put(entry);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else if (!QUEUE.offer(entry)) {
+            DROPPED.incrementAndGet();
+        }
+    }
+
+    private static void writeLoop() {
+        List<Entry> batch = new ArrayList<>();
+        StringBuilder out = new StringBuilder();
+        StringBuilder err = new StringBuilder();
+
+        while (true) {
+            try {
+                batch.add(QUEUE.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            QUEUE.drainTo(batch, 1024);
+
+            List<CountDownLatch> flushed = new ArrayList<>();
+            for (Entry entry : batch) {
+                if (entry.flushed != null) {
+                    flushed.add(entry.flushed);
+                } else if (entry.level.compareTo(Level.WARN) >= 0) {
+                    err.append(entry.level).append(": ").append(entry.message).append(System.lineSeparator());
+                } else {
+                    out.append(entry.message).append(System.lineSeparator());
+                }
+            }
+
+            if (out.length() > 0) {
+                System.out.print(out);
+                System.out.flush();
+                out.setLength(0);
+            }
+            if (err.length() > 0) {
+                System.err.print(err);
+                System.err.flush();
+                err.setLength(0);
+            }
+            for (CountDownLatch latch : flushed) {
+                latch.countDown();
+            }
+            batch.clear();
+        }
+    }
+
+    private static Level initialLevel() {
+        String value = System.getenv("LOG_LEVEL");
+        if (value != null) {
+            try {
+                return Level.valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                // Fall through to the default
+            }
+        }
+        return Level.INFO;
+    }
+
+    private static class Entry {
+        private final Level level;
+        private final String message;
+        private final CountDownLatch flushed;
+
+        Entry(Level level, String message, CountDownLatch flushed) {
+            this.level = level;
+            this.message = message;
+            this.flushed = flushed;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.companytracker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One stage of a pipeline: a bounded input queue drained by its own workers. The
+ * handler passes results on by putting them into the next stage, so a slow stage
+ * fills its queue and blocks the stage before it instead of buffering without limit.
+ *
+ * The counters show where a pipeline is limited: a stage whose queue stays full and
+ * whose workers are all busy is the bottleneck, and the time upstream stages spent
+ * blocked in put() is the backpressure it caused.
+ */
+public class PipelineStage<T> {
+    public interface Handler<T> {
+        void handle(T item) throws Exception;
+    }
+
+    private static final long POLL_MILLIS = 100;
+
+    private final String name;
+    private final int workers;
+    private final BlockingQueue<T> queue;
+    private final Handler<T> handler;
+    private final List<Thread> threads = new ArrayList<>();
+    private final AtomicInteger running;
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private final AtomicInteger busy = new AtomicInteger();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private final AtomicLong blockedPutNanos = new AtomicLong();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private volatile boolean closed;
+    private volatile Runnable onDrained = () -> { };
+
+    public PipelineStage(String name, int workers, int capacity, Handler<T> handler) {
+        this.name = name;
+        this.workers = Math.max(1, workers);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.handler = handler;
+        this.running = new AtomicInteger(this.workers);
+    }
+
+    /**
+     * Run once the input is closed and every worker has finished its last item,
+     * typically to flush a batch or close the next stage. awaitDrained() returns
+     * only after it has run.
+     */
+    public PipelineStage<T> onDrained(Runnable onDrained) {
+        this.onDrained = onDrained;
+        return this;
+    }
+
+    public PipelineStage<T> start() {
+        for (int i = 0; i < workers; i++) {
+            Thread thread = new Thread(this::work, "pipeline-" + name + "-" + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+        return this;
+    }
+
+    /**
+     * Hand an item to this stage, waiting while its queue is full
+     */
+    public void put(T item) throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("Stage " + name + " is closed");
+        }
+        if (!queue.offer(item)) {
+            long start = System.nanoTime();
+            queue.put(item);
+            blockedPutNanos.addAndGet(System.nanoTime() - start);
+        }
+        maxDepth.accumulateAndGet(queue.size(), Math::max);
+    }
+
+    /**
+     * No more input; workers finish what is queued and then exit
+     */
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * Stop without draining: queued items are dropped and workers are interrupted
+     */
+    public void abort() {
+        closed = true;
+        queue.clear();
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+    }
+
+    public boolean awaitDrained(long timeout, TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit);
+    }
+
+    public void awaitDrained() throws InterruptedException {
+        finished.await();
+    }
+
+    private void work() {
+        try {
+            while (true) {
+                T item = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (item == null) {
+                    if (closed && queue.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+                busy.incrementAndGet();
+                long start = System.nanoTime();
+                try {
+                    handler.handle(item);
+                    processed.incrementAndGet();
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    Log.warn("Pipeline stage %s failed on an item: %s", name, e.getMessage());
+                } finally {
+                    busyNanos.addAndGet(System.nanoTime() - start);
+                    busy.decrementAndGet();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Only the last worker out runs it, and waiters are let go once it has
+            if (running.decrementAndGet() == 0) {
+                try {
+                    onDrained.run();
+                } finally {
+                    finished.countDown();
+                }
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getDepth() {
+        return queue.size();
+    }
+
+    public int getCapacity() {
+        return queue.size() + queue.remainingCapacity();
+    }
+
+    public int getMaxDepth() {
+        return maxDepth.get();
+    }
+
+    public int getBusyWorkers() {
+        return busy.get();
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Time callers of put() spent waiting for room in this stage's queue
+     */
+    public long getBlockedPutMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(blockedPutNanos.get());
+    }
+
+    public double getAverageMillis() {
+        long count = processed.get() + failed.get();
+        return count > 0 ? busyNanos.get() / 1e6 / count : 0;
+    }
+
+    /**
+     * One-line gauge for periodic progress output, e.g. "search 64/64 busy 4/4"
+     */
+    public String describeDepth() {
+        return name + " " + getDepth() + "/" + getCapacity() + " busy " + getBusyWorkers() + "/" + workers;
+    }
+
+    /**
+     * End-of-run line, e.g. "match: 1200 items, 0 failed, 0.4 ms avg, max queue 12/64, upstream blocked 0 ms"
+     */
+    public String describeTotals() {
+        return String.format("%s: %d items, %d failed, %.1f ms avg, max queue %d/%d, upstream blocked %d ms",
+                name, getProcessed(), getFailed(), getAverageMillis(), getMaxDepth(), getCapacity(),
+                getBlockedPutMillis());
+    }
+}
@@ -0,0 +1,119 @@
+package com.companytracker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Feeds pending checks to a pool of workers highest score first, so a limited API
+ * budget is spent on the most valuable leads. Companies are scored once on submit;
+ * equal scores run in submission order.
+ */
+public class PriorityCheckScheduler {
+    private final LeadScorer scorer;
+    private final int workers;
+    private final PriorityBlockingQueue<Pending> queue = new PriorityBlockingQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    public PriorityCheckScheduler(LeadScorer scorer, int workers) {
+        this.scorer = scorer;
+        this.workers = Math.max(1, workers);
+    }
+
+    public void submit(CompanyRecord company) {
+        queue.add(new Pending(company, scorer.score(company), sequence.getAndIncrement()));
+    }
+
+    public void submitAll(Iterable<? extends CompanyRecord> companies) {
+        for (CompanyRecord company : companies) {
+            submit(company);
+        }
+    }
+
+    public int getPending() {
+        return queue.size();
+    }
+
+    /**
+     * Remove the companies still queued, highest score first
+     */
+    public List<CompanyRecord> drainPending() {
+        List<Pending> drained = new ArrayList<>();
+        queue.drainTo(drained);
+        Collections.sort(drained);
+        List<CompanyRecord> companies = new ArrayList<>(drained.size());
+        for (Pending pending : drained) {
+            companies.add(pending.company);
+        }
+        return companies;
+    }
+
+    /**
+     * Run checks until the queue is empty, maxChecks have been started or shouldStop
+     * returns true. Workers only ever take the current top of the queue. Companies
+     * not checked stay queued. Results are returned in completion order.
+     */
+    public <R> List<R> run(Function<CompanyRecord, R> check, int maxChecks, BooleanSupplier shouldStop)
+            throws InterruptedException {
+        List<R> results = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger started = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "priority-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        for (int i = 0; i < workers; i++) {
+            pool.execute(() -> {
+                while (!Thread.currentThread().isInterrupted() && !shouldStop.getAsBoolean()) {
+                    if (started.incrementAndGet() > maxChecks) {
+                        return;
+                    }
+                    Pending next = queue.poll();
+                    if (next == null) {
+                        return;
+                    }
+                    Log.debug("Checking %s (score %.2f)", next.company.getCompanyName(), next.score);
+                    results.add(check.apply(next.company));
+                }
+            });
+        }
+
+        pool.shutdown();
+        try {
+            while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+                // Keep waiting; checks are bounded by their own timeouts
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            throw e;
+        }
+        return new ArrayList<>(results);
+    }
+
+    private static class Pending implements Comparable<Pending> {
+        final CompanyRecord company;
+        final double score;
+        final long sequence;
+
+        Pending(CompanyRecord company, double score, long sequence) {
+            this.company = company;
+            this.score = score;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Pending other) {
+            int byScore = Double.compare(other.score, score);
+            return byScore != 0 ? byScore : Long.compare(sequence, other.sequence);
+        }
+    }
+}
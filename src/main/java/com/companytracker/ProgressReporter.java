@@ -0,0 +1,78 @@
+package com.companytracker;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Prints one progress line (done/total, throughput, ETA) at a fixed interval
+ * instead of a line per company.
+ */
+public class ProgressReporter implements AutoCloseable {
+    private final String label;
+    private final int total;
+    private final long startNanos = System.nanoTime();
+    private final AtomicInteger found = new AtomicInteger();
+    private final AtomicInteger notFound = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+    private final ScheduledExecutorService scheduler;
+
+    public ProgressReporter(String label, int total, long intervalSeconds) {
+        this.label = label;
+        this.total = total;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "progress-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::print, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public void recordFound() {
+        found.incrementAndGet();
+    }
+
+    public void recordNotFound() {
+        notFound.incrementAndGet();
+    }
+
+    public void recordError() {
+        errors.incrementAndGet();
+    }
+
+    public int getDone() {
+        return found.get() + notFound.get() + errors.get();
+    }
+
+    public int getErrors() {
+        return errors.get();
+    }
+
+    public void print() {
+        int done = getDone();
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+        double rate = elapsedSeconds > 0 ? done / elapsedSeconds : 0;
+        String eta = rate > 0 ? formatDuration((long) ((total - done) / rate)) : "?";
+
+        Log.info("[%s] %d/%d (%.1f%%) | %.2f/s | found %d, not found %d, errors %d | elapsed %s | ETA %s",
+                label, done, total, total > 0 ? 100.0 * done / total : 100.0, rate,
+                found.get(), notFound.get(), errors.get(), formatDuration((long) elapsedSeconds), eta);
+    }
+
+    static String formatDuration(long seconds) {
+        if (seconds >= 3600) {
+            return String.format("%dh %02dm", seconds / 3600, (seconds % 3600) / 60);
+        }
+        if (seconds >= 60) {
+            return String.format("%dm %02ds", seconds / 60, seconds % 60);
+        }
+        return seconds + "s";
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        print();
+    }
+}
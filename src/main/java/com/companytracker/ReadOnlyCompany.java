@@ -0,0 +1,43 @@
+package com.companytracker;
+
+/**
+ * Base for flyweight views that decode a company from shared storage on access, such
+ * as CompactCompanyStore rows and CompanySnapshot records. Subclasses implement the
+ * getters. A view holds only its position in the storage, not the company's fields;
+ * toCompany() copies them out when a modifiable company is needed.
+ */
+abstract class ReadOnlyCompany implements CompanyRecord {
+
+    /**
+     * Materialize the view as a regular, independent BolagsfaktaCompany
+     */
+    @Override
+    public BolagsfaktaCompany toCompany() {
+        BolagsfaktaCompany company = new BolagsfaktaCompany();
+        company.setOrgNr(getOrgNr());
+        company.setPostNr(getPostNr());
+        company.setCompanyCode(getCompanyCode());
+        company.setCompanyName(getCompanyName());
+        company.setCompanyPopularName(getCompanyPopularName());
+        company.setAddress(getAddress());
+        company.setCompanyUrl(getCompanyUrl());
+        company.setSniText(getSniText());
+        company.setResponsibleCount(getResponsibleCount());
+        company.setOmsattning(getOmsattning());
+        company.setAntalAnstallda(getAntalAnstallda());
+        company.setBolagsform(getBolagsform());
+        company.setPostOrt(getPostOrt());
+        return company;
+    }
+
+    @Override
+    public String toString() {
+        return "BolagsfaktaCompany{" +
+                "orgNr='" + getOrgNr() + '\'' +
+                ", companyName='" + getCompanyName() + '\'' +
+                ", address='" + getAddress() + '\'' +
+                ", sniText='" + getSniText() + '\'' +
+                ", antalAnstallda=" + getAntalAnstallda() +
+                '}';
+    }
+}
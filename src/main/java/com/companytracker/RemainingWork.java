@@ -0,0 +1,98 @@
+package com.companytracker;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Marker left behind by a run that stopped before finishing, so the next window can
+ * pick up exactly where it ended. Plain text: "# key: value" header lines followed
+ * by one item (company name) per line. Items that start with '#' or '\\' get a
+ * leading backslash, so a company named "# 1 Städ AB" isn't read back as a header.
+ */
+public class RemainingWork {
+    public static final String DEFAULT_FILE = "remaining_work.txt";
+
+    private final Map<String, String> attributes = new LinkedHashMap<>();
+    private final List<String> items = new ArrayList<>();
+
+    public RemainingWork() {
+    }
+
+    public RemainingWork(List<String> items) {
+        this.items.addAll(items);
+    }
+
+    public static RemainingWork read(Path file) throws IOException {
+        RemainingWork work = new RemainingWork();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("\\")) {
+                    work.items.add(line.substring(1));
+                } else if (line.startsWith("# ")) {
+                    int colon = line.indexOf(": ");
+                    if (colon > 2) {
+                        work.attributes.put(line.substring(2, colon), line.substring(colon + 2));
+                    }
+                } else if (!line.isEmpty()) {
+                    work.items.add(line);
+                }
+            }
+        }
+        return work;
+    }
+
+    /**
+     * Write via a temp file and atomic move so a crash never leaves a half-written marker
+     */
+    public void write(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+                writer.write("# " + oneLine(attribute.getKey()) + ": " + oneLine(attribute.getValue()));
+                writer.newLine();
+            }
+            for (String item : items) {
+                String line = oneLine(item);
+                writer.write(line.startsWith("#") || line.startsWith("\\") ? "\\" + line : line);
+                writer.newLine();
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String oneLine(String value) {
+        return value.replace('\r', ' ').replace('\n', ' ');
+    }
+
+    public RemainingWork setAttribute(String key, Object value) {
+        attributes.put(key, String.valueOf(value));
+        return this;
+    }
+
+    public String getAttribute(String key) {
+        return attributes.get(key);
+    }
+
+    public int getIntAttribute(String key, int defaultValue) {
+        String value = attributes.get(key);
+        try {
+            return value != null ? Integer.parseInt(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public List<String> getItems() {
+        return items;
+    }
+}
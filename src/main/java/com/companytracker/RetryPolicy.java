@@ -0,0 +1,201 @@
+package com.companytracker;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retries transient upstream failures with exponential backoff and full jitter.
+ * Honors Retry-After headers and limits retries with a token bucket so that
+ * retries can't multiply load during an outage. With executeAsync, retries are
+ * scheduled on a delayed executor instead of sleeping on the calling thread;
+ * execute() is the blocking form for callers that need the result in hand.
+ *
+ * Policies for a paid API take the call budget: every retry is a billed call and
+ * is only made if the budget grants it.
+ */
+public class RetryPolicy {
+    private static final int RETRY_THREADS = 8;
+    // Bounded: during an outage retries queue here instead of each taking a new thread
+    private static final ExecutorService RETRY_EXECUTOR = Executors.newFixedThreadPool(RETRY_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "retry-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String name;
+    private final ApiCallBudget budget;
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final long maxRetryAfterMillis;
+
+    // Each request earns retryRatio tokens, each retry spends one
+    private final double retryRatio;
+    private final double maxTokens;
+    private double tokens;
+
+    public RetryPolicy(String name) {
+        this(name, null);
+    }
+
+    /**
+     * Charge each retry to the budget; pass null for free upstreams
+     */
+    public RetryPolicy(String name, ApiCallBudget budget) {
+        this(name, budget, 4, 500, 10_000, 60_000, 0.1, 10);
+    }
+
+    public RetryPolicy(String name, ApiCallBudget budget, int maxAttempts, long baseDelayMillis, long maxDelayMillis,
+                       long maxRetryAfterMillis, double retryRatio, double maxTokens) {
+        this.name = name;
+        this.budget = budget;
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.maxRetryAfterMillis = maxRetryAfterMillis;
+        this.retryRatio = retryRatio;
+        this.maxTokens = maxTokens;
+        this.tokens = maxTokens;
+    }
+
+    /**
+     * Run the call on the caller's thread and wait for it, including any retries.
+     * The caller is blocked through the backoff delays.
+     */
+    public <T> T execute(Callable<T> call) throws IOException {
+        try {
+            return executeAsync(call, Runnable::run).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Run the first attempt on the given executor; retries are rescheduled
+     * on a shared pool after their backoff delay.
+     */
+    public <T> CompletableFuture<T> executeAsync(Callable<T> call, Executor executor) {
+        depositToken();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(call, executor, 1, result);
+        return result;
+    }
+
+    private <T> void attempt(Callable<T> call, Executor executor, int attempt, CompletableFuture<T> result) {
+        executor.execute(() -> {
+            try {
+                result.complete(call.call());
+            } catch (Exception e) {
+                if (attempt < maxAttempts && isRetryable(e) && withdrawToken()) {
+                    if (budget != null && !budget.tryAcquire()) {
+                        Log.info("  [%s] %s - no API budget left to retry", name, e.getMessage());
+                        result.completeExceptionally(e);
+                        return;
+                    }
+                    long delay = delayMillis(attempt, e);
+                    Log.info("  [%s] %s - retrying in %d ms (attempt %d/%d)",
+                            name, e.getMessage(), delay, attempt + 1, maxAttempts);
+                    Executor delayed = CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, RETRY_EXECUTOR);
+                    attempt(call, delayed, attempt + 1, result);
+                } else {
+                    result.completeExceptionally(e);
+                }
+            } catch (Throwable t) {
+                // Errors too, or waiters on the result would block forever. Not rethrown: on a
+                // retry thread nobody would catch it, and execute() rethrows it from the result
+                result.completeExceptionally(t);
+            }
+        });
+    }
+
+    public boolean isRetryable(Exception e) {
+        if (e instanceof CircuitOpenException) {
+            // Retrying within the backoff window would only hit the open circuit again
+            return false;
+        }
+        if (e instanceof UpstreamException) {
+            return ((UpstreamException) e).isOverloaded();
+        }
+        if ((e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException))
+                || Thread.currentThread().isInterrupted()) {
+            // Interrupted because the caller is stopping, not because the upstream failed
+            return false;
+        }
+        // Connection resets, timeouts and DNS hiccups
+        return e instanceof IOException;
+    }
+
+    long delayMillis(int attempt, Exception e) {
+        long cap = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 20));
+        long delay = ThreadLocalRandom.current().nextLong(cap + 1);
+
+        if (e instanceof UpstreamException) {
+            long retryAfter = parseRetryAfter(((UpstreamException) e).getRetryAfter());
+            if (retryAfter > 0) {
+                delay = Math.max(delay, Math.min(retryAfter, maxRetryAfterMillis));
+            }
+        }
+        return delay;
+    }
+
+    /**
+     * Parse a Retry-After header given either as delay-seconds or as an HTTP-date.
+     * Returns -1 when the header is missing or malformed.
+     */
+    static long parseRetryAfter(String header) {
+        if (header == null || header.isBlank()) {
+            return -1;
+        }
+        String value = header.trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            // Not a number, try HTTP-date below
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(Instant.now(), date.toInstant()).toMillis());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private synchronized void depositToken() {
+        tokens = Math.min(maxTokens, tokens + retryRatio);
+    }
+
+    private synchronized boolean withdrawToken() {
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    public synchronized double getAvailableRetries() {
+        return tokens;
+    }
+}
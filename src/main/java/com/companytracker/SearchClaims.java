@@ -0,0 +1,87 @@
+package com.companytracker;
+
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Single flight across processes sharing one database, e.g. an interactive check
+ * racing a batch run. The process that claims a company runs its search and stores
+ * the result; the others wait for the claim to go away and read the stored result
+ * instead of paying for the same search. SingleFlight covers callers in one process.
+ */
+public final class SearchClaims {
+    static final long LEASE_MILLIS = 60_000;
+    private static final long POLL_MILLIS = 250;
+
+    private SearchClaims() {
+    }
+
+    /**
+     * Run checkAndStore under the company's claim. Returns null, without running it,
+     * if another process held the claim and stored its result meanwhile. If that process
+     * stores nothing or doesn't finish within the lease, the check runs here after all.
+     */
+    public static <T> T runOnce(StorageService storage, String companyName, Callable<T> checkAndStore)
+            throws Exception {
+        if (!claim(storage, companyName)) {
+            return null;
+        }
+        try {
+            return checkAndStore.call();
+        } finally {
+            storage.releaseSearchClaim(companyName);
+        }
+    }
+
+    /**
+     * Like runOnce for a check that completes later, e.g. one whose retries are scheduled
+     * off the calling thread. The claim is held until the returned future completes.
+     */
+    public static <T> CompletableFuture<T> runOnceAsync(StorageService storage, String companyName,
+                                                        Callable<CompletableFuture<T>> checkAndStore)
+            throws Exception {
+        if (!claim(storage, companyName)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<T> check;
+        try {
+            check = checkAndStore.call();
+        } catch (Exception e) {
+            storage.releaseSearchClaim(companyName);
+            throw e;
+        }
+        return check.whenComplete((value, error) -> {
+            try {
+                storage.releaseSearchClaim(companyName);
+            } catch (Exception e) {
+                Log.warn("Could not release the search claim for %s: %s", companyName, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Claim the company, waiting out another process's claim. Returns false if that
+     * process stored a result meanwhile. Its claim also goes away when it failed and
+     * stored nothing, or its lease ran out; then the company is claimed here.
+     */
+    private static boolean claim(StorageService storage, String companyName) throws Exception {
+        String checkedBefore = checkedAt(storage, companyName);
+        while (!storage.tryClaimSearch(companyName, LEASE_MILLIS)) {
+            Log.debug("%s is being checked by another process, waiting for its result", companyName);
+            long end = System.currentTimeMillis() + LEASE_MILLIS;
+            while (storage.isSearchClaimed(companyName) && System.currentTimeMillis() < end) {
+                Thread.sleep(POLL_MILLIS);
+            }
+            if (!Objects.equals(checkedAt(storage, companyName), checkedBefore)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String checkedAt(StorageService storage, String companyName) throws Exception {
+        Company company = storage.getCompanyByName(companyName);
+        return company != null ? company.getCheckedAt() : null;
+    }
+}
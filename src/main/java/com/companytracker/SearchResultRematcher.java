@@ -0,0 +1,190 @@
+package com.companytracker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Re-runs CompanyNameMatcher over stored search results after the matching rules
+ * change, without paying for new searches. Results are read a page at a time; while
+ * one page is matched on a fork-join pool the next is already being read, and only
+ * companies whose decision changed are written back. A list the search cut off at
+ * its first match can't show that no URL matches, or that an unread one matches
+ * better, so those companies never lose or change their website here.
+ */
+public class SearchResultRematcher {
+    private static final int PAGE_SIZE = 5000;
+    private static final int SPLIT_THRESHOLD = 256;
+
+    private final StorageService storageService;
+    private final int parallelism;
+    private final AtomicInteger scanned = new AtomicInteger();
+    private final AtomicInteger gained = new AtomicInteger();
+    private final AtomicInteger lost = new AtomicInteger();
+    private final AtomicInteger moved = new AtomicInteger();
+    private final AtomicInteger unreadable = new AtomicInteger();
+    private final AtomicInteger incomplete = new AtomicInteger();
+
+    public SearchResultRematcher(StorageService storageService, int parallelism) {
+        this.storageService = storageService;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Re-match every stored result and write back the changed decisions.
+     * Returns the number of companies updated.
+     */
+    public int run() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        ExecutorService reader = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rematch-reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        int updated = 0;
+        try {
+            Future<List<StoredSearchResult>> next = reader.submit(() -> storageService.getSearchResults(0, PAGE_SIZE));
+            while (true) {
+                List<StoredSearchResult> page = next.get();
+                if (page.isEmpty()) {
+                    break;
+                }
+                if (Shutdown.isRequested()) {
+                    // Earlier pages are already written; a later run re-matches the rest
+                    Log.info("Shutting down after re-matching %d stored results", scanned.get());
+                    break;
+                }
+                int lastId = page.get(page.size() - 1).getCompanyId();
+                next = reader.submit(() -> storageService.getSearchResults(lastId, PAGE_SIZE));
+
+                List<Company> changed = pool.invoke(new MatchTask(page, 0, page.size()));
+                scanned.addAndGet(page.size());
+                if (!changed.isEmpty()) {
+                    updated += storageService.updateWebsites(changed);
+                }
+                Log.debug("Re-matched %d stored results, %d updated so far", scanned.get(), updated);
+            }
+        } finally {
+            reader.shutdownNow();
+            pool.shutdown();
+        }
+        return updated;
+    }
+
+    public int getScanned() {
+        return scanned.get();
+    }
+
+    /**
+     * Companies that had no website and now match one
+     */
+    public int getGained() {
+        return gained.get();
+    }
+
+    /**
+     * Companies that had a website and no longer match any URL
+     */
+    public int getLost() {
+        return lost.get();
+    }
+
+    /**
+     * Companies that still have a website but now match a different URL
+     */
+    public int getMoved() {
+        return moved.get();
+    }
+
+    public int getUnreadable() {
+        return unreadable.get();
+    }
+
+    /**
+     * Companies left as they were because their stored URL list is incomplete
+     */
+    public int getIncomplete() {
+        return incomplete.get();
+    }
+
+    /**
+     * The new decision for a stored result, or null if it is unchanged
+     */
+    private Company rematch(StoredSearchResult stored) {
+        List<String> urls;
+        try {
+            urls = stored.getUrls();
+        } catch (IllegalArgumentException e) {
+            Log.warn("Skipping stored search for %s: %s", stored.getCompanyName(), e.getMessage());
+            unreadable.incrementAndGet();
+            return null;
+        }
+
+        CompanyNameMatcher.MatchResult match = CompanyNameMatcher.findMatchingUrl(urls, stored.getCompanyName());
+        if (match.isMatched() == stored.isHasWebsite()
+                && (!match.isMatched() || Objects.equals(match.getMatchedUrl(), stored.getWebsite()))) {
+            return null;
+        }
+
+        if (stored.isHasWebsite() && !stored.isComplete()) {
+            incomplete.incrementAndGet();
+            return null;
+        }
+
+        if (!stored.isHasWebsite()) {
+            gained.incrementAndGet();
+        } else if (!match.isMatched()) {
+            lost.incrementAndGet();
+        } else {
+            moved.incrementAndGet();
+        }
+        Company company = new Company(stored.getCompanyName());
+        company.setId(stored.getCompanyId());
+        company.setHasWebsite(match.isMatched());
+        company.setWebsite(match.getMatchedUrl());
+        return company;
+    }
+
+    private class MatchTask extends RecursiveTask<List<Company>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<StoredSearchResult> page;
+        private final int from;
+        private final int to;
+
+        MatchTask(List<StoredSearchResult> page, int from, int to) {
+            this.page = page;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Company> compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                List<Company> changed = new ArrayList<>();
+                for (int i = from; i < to; i++) {
+                    Company company = rematch(page.get(i));
+                    if (company != null) {
+                        changed.add(company);
+                    }
+                }
+                return changed;
+            }
+
+            int middle = (from + to) >>> 1;
+            MatchTask left = new MatchTask(page, from, middle);
+            left.fork();
+            List<Company> changed = new MatchTask(page, middle, to).compute();
+            List<Company> leftChanged = left.join();
+            leftChanged.addAll(changed);
+            return leftChanged;
+        }
+    }
+}
@@ -3,18 +3,30 @@ package com.companytracker;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import io.github.cdimascio.dotenv.Dotenv;
 import okhttp3.*;
 
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class SearchService {
     private final OkHttpClient client;
+    private final AdaptiveConcurrencyLimiter limiter =
+            new AdaptiveConcurrencyLimiter("LangSearch", 2, 1, 32);
+    private final CircuitBreaker breaker = CircuitBreaker.forUpstream("LangSearch", Duration.ofSeconds(10));
+    // Shared by every SearchService in the process, so App, BatchRunner, ApiServer and
+    // WebsiteChecker instances coalesce with each other
+    private static final SingleFlight<String, SearchResult> IN_FLIGHT_SEARCHES = new SingleFlight<>();
+    private static final SingleFlight<String, SearchResult> IN_FLIGHT_MATCHES = new SingleFlight<>();
+    private final AtomicBoolean mockWarningLogged = new AtomicBoolean(false);
     private String apiKey;
     private String apiUrl;
     private String freshness;
@@ -25,14 +37,21 @@ public class SearchService {
     private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
 
     public SearchService() {
-        this.client = new OkHttpClient();
+        this.client = HttpArchive.newClientBuilder().build();
         loadConfiguration();
     }
 
     public SearchService(String apiKey) {
-        this.client = new OkHttpClient();
+        this(apiKey, DEFAULT_API_URL);
+    }
+
+    /**
+     * Against another endpoint, e.g. a local stand-in in tests
+     */
+    SearchService(String apiKey, String apiUrl) {
+        this.client = HttpArchive.newClientBuilder().build();
         this.apiKey = apiKey;
-        this.apiUrl = DEFAULT_API_URL;
+        this.apiUrl = apiUrl;
         this.freshness = "noLimit";
         this.summary = true;
         this.resultsCount = 10;
@@ -112,13 +131,184 @@ public class SearchService {
      * Search for a company using LangSearch API
      * LangSearch provides free web search API optimized for AI applications
      * Get your free API key from: https://langsearch.com/api-keys
+     *
+     * Concurrent searches for the same normalized company name share one request;
+     * callers that joined another caller's request get a copy marked as shared.
      */
     public SearchResult searchCompanyWebsite(String companyName) throws IOException {
+        String key = CompanyNameMatcher.normalizeCompanyName(companyName);
+        if (key.isEmpty()) {
+            key = companyName.trim().toLowerCase();
+        }
+
+        SingleFlight.Call<SearchResult> call = IN_FLIGHT_SEARCHES.execute(key, () -> doSearch(companyName));
+        return call.isShared() ? call.getValue().sharedCopy() : call.getValue();
+    }
+
+    private SearchResult doSearch(String companyName) throws IOException {
         if (apiKey == null) {
-            System.out.println("Warning: API key not configured. Using mock search results.");
+            if (mockWarningLogged.compareAndSet(false, true)) {
+                Log.warn("API key not configured. Using mock search results.");
+            }
             return mockSearch(companyName);
         }
 
+        Request request = buildSearchRequest(companyName);
+        return limiter.execute(() -> breaker.execute(() -> {
+            try (Response response = client.newCall(request).execute()) {
+                if (!response.isSuccessful()) {
+                    String errorBody = response.body() != null ? response.body().string() : "No error details";
+                    throw new UpstreamException("LangSearch API error (HTTP " + response.code() + "): " + errorBody,
+                            response.code(), response.header("Retry-After"));
+                }
+
+                String responseBody = response.body().string();
+                return parseSearchResponse(responseBody);
+            }
+        }));
+    }
+
+    /**
+     * Search and match in one pass: URLs are handed to CompanyNameMatcher as they are
+     * parsed from the response stream, and the connection is closed at the first match
+     * instead of downloading and parsing the rest of the body. getAllUrls() holds the
+     * URLs read up to that point and getMatchedUrl() the match, if any.
+     *
+     * A full search already in flight for the same company is joined and matched
+     * here; the reverse isn't possible, since a streamed result stops at its match.
+     */
+    public SearchResult searchForMatchingUrl(String companyName) throws IOException {
+        String key = CompanyNameMatcher.normalizeCompanyName(companyName);
+        if (key.isEmpty()) {
+            key = companyName.trim().toLowerCase();
+        }
+
+        SingleFlight.Call<SearchResult> full = IN_FLIGHT_SEARCHES.joinIfInFlight(key);
+        if (full != null) {
+            SearchResult result = full.getValue().sharedCopy();
+            result.setMatchedUrl(CompanyNameMatcher.findMatchingUrl(result.getAllUrls(), companyName).getMatchedUrl());
+            return result;
+        }
+
+        SingleFlight.Call<SearchResult> call = IN_FLIGHT_MATCHES.execute(key, () -> doMatchingSearch(companyName));
+        return call.isShared() ? call.getValue().sharedCopy() : call.getValue();
+    }
+
+    private SearchResult doMatchingSearch(String companyName) throws IOException {
+        if (apiKey == null) {
+            SearchResult result = doSearch(companyName);
+            result.setMatchedUrl(CompanyNameMatcher.findMatchingUrl(result.getAllUrls(), companyName).getMatchedUrl());
+            return result;
+        }
+
+        Request request = buildSearchRequest(companyName);
+        return limiter.execute(() -> breaker.execute(() -> {
+            try (Response response = client.newCall(request).execute()) {
+                if (!response.isSuccessful()) {
+                    String errorBody = response.body() != null ? response.body().string() : "No error details";
+                    throw new UpstreamException("LangSearch API error (HTTP " + response.code() + "): " + errorBody,
+                            response.code(), response.header("Retry-After"));
+                }
+
+                // Returning before the body is fully read makes OkHttp close the connection
+                return streamMatchingUrl(new JsonReader(response.body().charStream()), companyName);
+            }
+        }));
+    }
+
+    private SearchResult streamMatchingUrl(JsonReader reader, String companyName) throws IOException {
+        SearchResult result = new SearchResult();
+        List<String> urls = new ArrayList<>();
+        result.setAllUrls(urls);
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            boolean matched;
+            // LangSearch wraps the response in a "data" object
+            if (name.equals("data") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                matched = false;
+                while (!matched && reader.hasNext()) {
+                    if (reader.nextName().equals("webPages")) {
+                        matched = streamWebPages(reader, companyName, result);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                if (!matched) {
+                    reader.endObject();
+                }
+            } else if (name.equals("webPages")) {
+                matched = streamWebPages(reader, companyName, result);
+            } else {
+                reader.skipValue();
+                matched = false;
+            }
+            if (matched) {
+                return result;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Read webPages.value[].url until one matches. Returns true on a match, leaving
+     * the rest of the stream unread; otherwise consumes the whole webPages value.
+     */
+    private boolean streamWebPages(JsonReader reader, String companyName, SearchResult result) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return false;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals("value") || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String url = readUrl(reader);
+                if (url == null) {
+                    continue;
+                }
+                if (result.getAllUrls().isEmpty()) {
+                    result.setHasWebsite(true);
+                    result.setWebsiteUrl(url);
+                }
+                result.getAllUrls().add(url);
+                if (CompanyNameMatcher.urlMatchesCompanyName(url, companyName)) {
+                    result.setMatchedUrl(url);
+                    result.setComplete(false);
+                    return true;
+                }
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+        return false;
+    }
+
+    private String readUrl(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        String url = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("url") && reader.peek() == JsonToken.STRING) {
+                url = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return url;
+    }
+
+    private Request buildSearchRequest(String companyName) {
         // Build search query
         String searchQuery = companyName + " company website";
 
@@ -131,22 +321,24 @@ public class SearchService {
 
         RequestBody body = RequestBody.create(requestBody.toString(), JSON);
 
-        Request request = new Request.Builder()
+        return new Request.Builder()
                 .url(apiUrl)
                 .addHeader("Authorization", "Bearer " + apiKey)
                 .addHeader("Content-Type", "application/json")
                 .post(body)
                 .build();
+    }
 
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                String errorBody = response.body() != null ? response.body().string() : "No error details";
-                throw new IOException("LangSearch API error (HTTP " + response.code() + "): " + errorBody);
-            }
+    public AdaptiveConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
 
-            String responseBody = response.body().string();
-            return parseSearchResponse(responseBody);
-        }
+    public CircuitBreaker getCircuitBreaker() {
+        return breaker;
+    }
+
+    public long getSharedSearchCount() {
+        return IN_FLIGHT_SEARCHES.getSharedCalls() + IN_FLIGHT_MATCHES.getSharedCalls();
     }
 
     private SearchResult parseSearchResponse(String jsonResponse) {
@@ -193,7 +385,31 @@ public class SearchService {
     public static class SearchResult {
         private boolean hasWebsite;
         private String websiteUrl;
+        private String matchedUrl;
         private List<String> allUrls = new ArrayList<>();
+        private boolean complete = true;
+        private boolean shared;
+
+        /**
+         * Copy handed to callers that piggybacked on another caller's request
+         */
+        SearchResult sharedCopy() {
+            SearchResult copy = new SearchResult();
+            copy.setHasWebsite(hasWebsite);
+            copy.setWebsiteUrl(websiteUrl);
+            copy.setMatchedUrl(matchedUrl);
+            copy.setAllUrls(new ArrayList<>(allUrls));
+            copy.setComplete(complete);
+            copy.shared = true;
+            return copy;
+        }
+
+        /**
+         * True when this result came from another caller's in-flight request and cost no API call
+         */
+        public boolean isShared() {
+            return shared;
+        }
 
         public boolean isHasWebsite() {
             return hasWebsite;
@@ -211,6 +427,17 @@ public class SearchService {
             this.websiteUrl = websiteUrl;
         }
 
+        /**
+         * URL that matched the company name; only set by searchForMatchingUrl
+         */
+        public String getMatchedUrl() {
+            return matchedUrl;
+        }
+
+        public void setMatchedUrl(String matchedUrl) {
+            this.matchedUrl = matchedUrl;
+        }
+
         public List<String> getAllUrls() {
             return allUrls;
         }
@@ -218,5 +445,17 @@ public class SearchService {
         public void setAllUrls(List<String> allUrls) {
             this.allUrls = allUrls;
         }
+
+        /**
+         * False when searchForMatchingUrl stopped reading at the first match, so
+         * allUrls lacks whatever the response listed after it
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        public void setComplete(boolean complete) {
+            this.complete = complete;
+        }
     }
 }
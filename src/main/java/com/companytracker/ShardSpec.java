@@ -0,0 +1,67 @@
+package com.companytracker;
+
+/**
+ * One shard out of N for splitting a harvest across machines. A company belongs
+ * to the shard its org.nr hashes to, so every instance agrees without coordination.
+ */
+public class ShardSpec {
+    private final int index;
+    private final int count;
+
+    public ShardSpec(int index, int count) {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("Invalid shard " + index + "/" + count);
+        }
+        this.index = index;
+        this.count = count;
+    }
+
+    /**
+     * Parse "i/N", e.g. "0/4" for the first of four shards
+     */
+    public static ShardSpec parse(String spec) {
+        String[] parts = spec.split("/");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Shard must be given as i/N, got: " + spec);
+        }
+        try {
+            return new ShardSpec(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Shard must be given as i/N, got: " + spec);
+        }
+    }
+
+    public boolean contains(BolagsfaktaCompany company) {
+        String key = company.getOrgNr() != null ? company.getOrgNr() : company.getCompanyName();
+        return key != null && shardOf(key, count) == index;
+    }
+
+    /**
+     * String.hashCode is specified by the JLS, so the result is stable across JVMs.
+     * The extra mixing step spreads sequential org.nrs evenly over shards.
+     */
+    static int shardOf(String key, int count) {
+        int h = key.replace("-", "").hashCode();
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return Math.floorMod(h, count);
+    }
+
+    public String getStorageFile() {
+        return "companies-shard-" + index + "-of-" + count + ".db";
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return index + "/" + count;
+    }
+}
@@ -0,0 +1,187 @@
+package com.companytracker;
+
+import io.github.cdimascio.dotenv.Dotenv;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Graceful shutdown on SIGTERM or Ctrl-C. A single shutdown hook runs three phases:
+ * listeners registered with onRequest stop admitting new work (loops poll isRequested()),
+ * then the hook waits up to SHUTDOWN_TIMEOUT seconds (default 30) for running work to
+ * finish and write its results and checkpoints, and finally closes registered resources
+ * such as database connections, most recently registered first.
+ *
+ * Work has to end before the code calls System.exit, which blocks once shutdown has begun.
+ */
+public final class Shutdown {
+    public static final int DEFAULT_TIMEOUT_SECONDS = 30;
+
+    private static final CountDownLatch REQUESTED = new CountDownLatch(1);
+    private static final List<Runnable> LISTENERS = new CopyOnWriteArrayList<>();
+    private static final Set<Work> RUNNING = new HashSet<>();
+    private static final Deque<Resource> RESOURCES = new ArrayDeque<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(Shutdown::shutDown, "graceful-shutdown"));
+    }
+
+    private Shutdown() {
+    }
+
+    public static boolean isRequested() {
+        return REQUESTED.getCount() == 0;
+    }
+
+    /**
+     * Sleep that ends early on shutdown. Returns true if shutdown was requested.
+     */
+    public static boolean awaitRequest(long timeout, TimeUnit unit) {
+        try {
+            return REQUESTED.await(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return isRequested();
+        }
+    }
+
+    /**
+     * Run when shutdown is requested, before waiting for running work, e.g. to stop a server
+     */
+    public static void onRequest(Runnable listener) {
+        LISTENERS.add(listener);
+    }
+
+    /**
+     * Mark a unit of work the shutdown hook waits for; close it when done
+     */
+    public static Work begin(String name) {
+        Work work = new Work(name);
+        synchronized (RUNNING) {
+            RUNNING.add(work);
+        }
+        return work;
+    }
+
+    /**
+     * Close the resource on shutdown once running work has finished, unless it was
+     * unregistered (closed normally) before
+     */
+    public static void register(String name, AutoCloseable resource) {
+        synchronized (RESOURCES) {
+            RESOURCES.push(new Resource(name, resource));
+        }
+    }
+
+    public static void unregister(AutoCloseable resource) {
+        synchronized (RESOURCES) {
+            RESOURCES.removeIf(registered -> registered.resource == resource);
+        }
+    }
+
+    private static void shutDown() {
+        REQUESTED.countDown();
+        for (Runnable listener : LISTENERS) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                Log.warn("Shutdown listener failed: %s", e.getMessage());
+            }
+        }
+
+        long timeoutSeconds = configuredTimeoutSeconds();
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        synchronized (RUNNING) {
+            if (!RUNNING.isEmpty()) {
+                Log.info("Shutting down, waiting up to %d s for %s to finish", timeoutSeconds, names(RUNNING));
+            }
+            try {
+                while (!RUNNING.isEmpty()) {
+                    long remainingMillis = TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime());
+                    if (remainingMillis <= 0) {
+                        Log.warn("Shutdown timed out after %d s with %s still running", timeoutSeconds,
+                                names(RUNNING));
+                        break;
+                    }
+                    RUNNING.wait(remainingMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        while (true) {
+            Resource next;
+            synchronized (RESOURCES) {
+                next = RESOURCES.poll();
+            }
+            if (next == null) {
+                break;
+            }
+            try {
+                next.resource.close();
+            } catch (Exception e) {
+                Log.warn("Could not close %s: %s", next.name, e.getMessage());
+            }
+        }
+        Log.flush(2, TimeUnit.SECONDS);
+    }
+
+    private static String names(Set<Work> works) {
+        List<String> names = new ArrayList<>();
+        for (Work work : works) {
+            names.add(work.name);
+        }
+        return String.join(", ", names);
+    }
+
+    /**
+     * Read SHUTDOWN_TIMEOUT (seconds) from .env.local or .env, falling back to the default
+     */
+    static int configuredTimeoutSeconds() {
+        try {
+            String value = Dotenv.configure().filename(".env.local").ignoreIfMissing().load()
+                    .get("SHUTDOWN_TIMEOUT");
+            if (value == null) {
+                value = Dotenv.configure().filename(".env").ignoreIfMissing().load()
+                        .get("SHUTDOWN_TIMEOUT");
+            }
+            return value != null ? Integer.parseInt(value.trim()) : DEFAULT_TIMEOUT_SECONDS;
+        } catch (Exception e) {
+            return DEFAULT_TIMEOUT_SECONDS;
+        }
+    }
+
+    public static final class Work implements AutoCloseable {
+        private final String name;
+
+        private Work(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void close() {
+            synchronized (RUNNING) {
+                RUNNING.remove(this);
+                RUNNING.notifyAll();
+            }
+        }
+    }
+
+    private static class Resource {
+        final String name;
+        final AutoCloseable resource;
+
+        Resource(String name, AutoCloseable resource) {
+            this.name = name;
+            this.resource = resource;
+        }
+    }
+}
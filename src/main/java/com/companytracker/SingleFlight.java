@@ -0,0 +1,102 @@
+package com.companytracker;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent calls for the same key: the first caller runs the call,
+ * everyone arriving while it is in flight waits for and shares its result.
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong sharedCalls = new AtomicLong();
+
+    public Call<V> execute(K key, Callable<V> call) throws IOException {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+
+        if (existing != null) {
+            sharedCalls.incrementAndGet();
+            return new Call<>(await(existing), true);
+        }
+
+        try {
+            V value = call.call();
+            created.complete(value);
+            return new Call<>(value, false);
+        } catch (IOException | RuntimeException | Error e) {
+            // Errors too, or callers waiting on this call would block forever
+            created.completeExceptionally(e);
+            throw e;
+        } catch (Throwable e) {
+            created.completeExceptionally(e);
+            throw new IOException(e);
+        } finally {
+            inFlight.remove(key, created);
+        }
+    }
+
+    private V await(CompletableFuture<V> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for shared call");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Join the call in flight for the key, if there is one, without starting a new one.
+     * Returns null when nothing is in flight.
+     */
+    public Call<V> joinIfInFlight(K key) throws IOException {
+        CompletableFuture<V> existing = inFlight.get(key);
+        if (existing == null) {
+            return null;
+        }
+        sharedCalls.incrementAndGet();
+        return new Call<>(await(existing), true);
+    }
+
+    /**
+     * Number of calls that were answered by another caller's in-flight call
+     */
+    public long getSharedCalls() {
+        return sharedCalls.get();
+    }
+
+    public static class Call<V> {
+        private final V value;
+        private final boolean shared;
+
+        public Call(V value, boolean shared) {
+            this.value = value;
+            this.shared = shared;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public boolean isShared() {
+            return shared;
+        }
+    }
+}
@@ -1,12 +1,26 @@
 package com.companytracker;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface StorageService {
     void addCompany(Company company) throws Exception;
     void updateCompanyWebsite(String companyName, String website, boolean hasWebsite) throws Exception;
     List<Company> getAllCompanies() throws Exception;
     Company getCompanyByName(String name) throws Exception;
+    List<Company> findCompaniesFuzzy(String query, int limit) throws Exception;
+    List<Company> getCompaniesNotCheckedSince(int days) throws Exception;
+    int importCompanies(List<Company> companies) throws Exception;
+    void upsertCompanies(List<Company> companies) throws Exception;
+    void saveSearchUrls(Map<String, List<String>> urlsByCompanyName, boolean complete) throws Exception;
+    void deleteSearchUrls(Collection<String> companyNames) throws Exception;
+    List<StoredSearchResult> getSearchResults(int afterId, int limit) throws Exception;
+    int updateWebsites(List<Company> companies) throws Exception;
+    void mergeDuplicates(Company keeper, List<Company> duplicates) throws Exception;
     void removeCompany(String companyName) throws Exception;
+    boolean tryClaimSearch(String companyName, long leaseMillis) throws Exception;
+    boolean isSearchClaimed(String companyName) throws Exception;
+    void releaseSearchClaim(String companyName) throws Exception;
     void close() throws Exception;
 }
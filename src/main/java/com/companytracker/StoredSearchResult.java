@@ -0,0 +1,105 @@
+package com.companytracker;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A company's stored decision together with the raw URL list the search returned,
+ * so the matcher can be re-run without searching again. URL lists are kept as
+ * newline-separated UTF-8, deflated; search URLs share long prefixes and compress well.
+ */
+public class StoredSearchResult {
+    private final int companyId;
+    private final String companyName;
+    private final String website;
+    private final boolean hasWebsite;
+    private final byte[] compressedUrls;
+    private final boolean complete;
+
+    public StoredSearchResult(int companyId, String companyName, String website, boolean hasWebsite,
+                              byte[] compressedUrls, boolean complete) {
+        this.companyId = companyId;
+        this.companyName = companyName;
+        this.website = website;
+        this.hasWebsite = hasWebsite;
+        this.compressedUrls = compressedUrls;
+        this.complete = complete;
+    }
+
+    public int getCompanyId() {
+        return companyId;
+    }
+
+    public String getCompanyName() {
+        return companyName;
+    }
+
+    public String getWebsite() {
+        return website;
+    }
+
+    public boolean isHasWebsite() {
+        return hasWebsite;
+    }
+
+    /**
+     * False when the search stopped reading at the first match, so later URLs are missing
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public List<String> getUrls() {
+        return decompress(compressedUrls);
+    }
+
+    public static byte[] compress(List<String> urls) {
+        byte[] input = String.join("\n", urls).getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(16, input.length / 2));
+            byte[] buffer = new byte[1024];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static List<String> decompress(byte[] compressed) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 4);
+            byte[] buffer = new byte[1024];
+            while (!inflater.finished()) {
+                int read = inflater.inflate(buffer);
+                if (read == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated search URL list");
+                }
+                out.write(buffer, 0, read);
+            }
+            String text = out.toString(StandardCharsets.UTF_8);
+            List<String> urls = new ArrayList<>();
+            if (!text.isEmpty()) {
+                for (String url : text.split("\n")) {
+                    urls.add(url);
+                }
+            }
+            return urls;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt search URL list: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
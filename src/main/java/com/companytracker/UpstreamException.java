@@ -0,0 +1,35 @@
+package com.companytracker;
+
+import java.io.IOException;
+
+/**
+ * Thrown when an upstream API answers with a non-successful HTTP status.
+ * Keeps the status code and Retry-After header so callers can tell throttling apart from bad requests.
+ */
+public class UpstreamException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+    private final String retryAfter;
+
+    public UpstreamException(String message, int statusCode, String retryAfter) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * True for 429 Too Many Requests and 5xx responses
+     */
+    public boolean isOverloaded() {
+        return statusCode == 429 || statusCode >= 500;
+    }
+}
@@ -0,0 +1,135 @@
+package com.companytracker;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LRU cache of website lookups, keyed by org.nr (or normalized name when a company
+ * has no org.nr). Negative results are cached too, since a repeated search for a
+ * company without a website costs just as much.
+ *
+ * With a storage the cache reads through to the companies table on a miss: a row
+ * whose checked_at is within the TTL answers the lookup, so results stored by
+ * earlier runs and other processes are reused. Entries put here reach the table
+ * through the caller's own saves (saveResults, updateCompanyWebsite).
+ */
+public class WebsiteCache {
+    private static final long DEFAULT_TTL_MILLIS = TimeUnit.DAYS.toMillis(7);
+    private static final int DEFAULT_MAX_ENTRIES = 100_000;
+
+    private final long ttlMillis;
+    private final Map<String, Entry> entries;
+    private final StorageService storage;
+
+    public WebsiteCache() {
+        this(null);
+    }
+
+    public WebsiteCache(StorageService storage) {
+        this(storage, DEFAULT_TTL_MILLIS, DEFAULT_MAX_ENTRIES);
+    }
+
+    public WebsiteCache(StorageService storage, long ttlMillis, int maxEntries) {
+        this.storage = storage;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public Entry get(BolagsfaktaCompany company) {
+        String key = keyFor(company);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && System.currentTimeMillis() - entry.cachedAt > ttlMillis) {
+                entries.remove(key);
+                entry = null;
+            }
+            if (entry != null) {
+                return entry;
+            }
+        }
+
+        // Read outside the lock, so parallel lookups don't queue up behind the database
+        Entry stored = loadStored(company.getCompanyName());
+        if (stored == null) {
+            return null;
+        }
+        synchronized (this) {
+            // A result put meanwhile is newer than the stored row
+            Entry current = entries.get(key);
+            if (current != null && current.cachedAt >= stored.cachedAt) {
+                return current;
+            }
+            entries.put(key, stored);
+            return stored;
+        }
+    }
+
+    /**
+     * The stored result for the company if it was checked within the TTL
+     */
+    private Entry loadStored(String companyName) {
+        if (storage == null) {
+            return null;
+        }
+        try {
+            Company stored = storage.getCompanyByName(companyName);
+            if (stored == null) {
+                return null;
+            }
+            double ageDays = LeadScorer.daysSince(stored.getCheckedAt());
+            long ageMillis = (long) (ageDays * TimeUnit.DAYS.toMillis(1));
+            if (Double.isInfinite(ageDays) || ageMillis > ttlMillis) {
+                return null;
+            }
+            return new Entry(stored.isHasWebsite(), stored.getWebsite(), System.currentTimeMillis() - ageMillis);
+        } catch (Exception e) {
+            Log.warn("Could not read cached website for %s: %s", companyName, e.getMessage());
+            return null;
+        }
+    }
+
+    public synchronized void put(BolagsfaktaCompany company, boolean hasWebsite, String url) {
+        entries.put(keyFor(company), new Entry(hasWebsite, url, System.currentTimeMillis()));
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    static String keyFor(BolagsfaktaCompany company) {
+        if (company.getOrgNr() != null && !company.getOrgNr().isEmpty()) {
+            return company.getOrgNr();
+        }
+        return CompanyNameMatcher.normalizeCompanyName(company.getCompanyName());
+    }
+
+    public static class Entry {
+        private final boolean hasWebsite;
+        private final String url;
+        private final long cachedAt;
+
+        Entry(boolean hasWebsite, String url, long cachedAt) {
+            this.hasWebsite = hasWebsite;
+            this.url = url;
+            this.cachedAt = cachedAt;
+        }
+
+        public boolean isHasWebsite() {
+            return hasWebsite;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public long getCachedAt() {
+            return cachedAt;
+        }
+    }
+}
@@ -1,108 +1,1111 @@
 package com.companytracker;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 public class WebsiteChecker {
 
     private final BolagsfaktaService bolagsfaktaService;
     private final SearchService searchService;
-    private int apiCallCount = 0;
-    private int maxApiCalls;
+    private final ApiCallBudget apiCallBudget;
+    private final DomainProbe domainProbe;
+    private WebsiteCache websiteCache = new WebsiteCache();
+    private StorageService storage;
+    private Deadline deadline = Deadline.NONE;
+    private Path remainingFile = Paths.get(REMAINING_HARVEST_FILE);
+    private Path remainingWorkFile = Paths.get(RemainingWork.DEFAULT_FILE);
+    private boolean remainingWritten;
+
+    private static final long JOB_LEASE_MILLIS = TimeUnit.MINUTES.toMillis(2);
+    private static final String REMAINING_HARVEST_FILE = "remaining_harvest.txt";
+    private static final int PIPELINE_PERSIST_BATCH = 100;
+    private static final long PIPELINE_METRICS_SECONDS = 5;
+    private static final Duration SNAPSHOT_MAX_AGE = Duration.ofHours(24);
+    private static Path commandRemainingWorkFile = Paths.get(RemainingWork.DEFAULT_FILE);
+    private final RetryPolicy searchRetryPolicy;
+    private final RetryPolicy bolagsfaktaRetryPolicy = new RetryPolicy("Bolagsfakta");
 
     public WebsiteChecker() {
-        this.bolagsfaktaService = new BolagsfaktaService();
-        this.searchService = new SearchService();
-        this.maxApiCalls = 20; // Default limit during testing
+        this(20); // Default limit during testing
     }
 
     public WebsiteChecker(int maxApiCalls) {
+        this(new ApiCallBudget(maxApiCalls));
+    }
+
+    public WebsiteChecker(ApiCallBudget apiCallBudget) {
+        this(apiCallBudget, new DomainProbe());
+    }
+
+    public WebsiteChecker(ApiCallBudget apiCallBudget, DomainProbe domainProbe) {
         this.bolagsfaktaService = new BolagsfaktaService();
         this.searchService = new SearchService();
-        this.maxApiCalls = maxApiCalls;
+        this.apiCallBudget = apiCallBudget;
+        this.searchRetryPolicy = new RetryPolicy("LangSearch", apiCallBudget);
+        this.domainProbe = domainProbe;
     }
 
     public List<CheckResult> findCompaniesWithoutWebsite(String searchQuery, int[] employeeFilter, int maxCompanies) {
+        return findCompaniesWithoutWebsite(searchQuery, employeeFilter, 1, maxCompanies, company -> true);
+    }
+
+    /**
+     * Check companies from up to the given number of Bolagsfakta result pages,
+     * skipping companies the filter rejects (e.g. unchanged ones in an incremental run).
+     */
+    public List<CheckResult> findCompaniesWithoutWebsite(String searchQuery, int[] employeeFilter, int pages,
+                                                         int maxCompanies, Predicate<BolagsfaktaCompany> filter) {
+        return findCompaniesWithoutWebsite(searchQuery, employeeFilter, 1, 0, pages, maxCompanies, filter);
+    }
+
+    /**
+     * Check this shard's companies on the first pages result pages. Every shard reads
+     * all the pages and keeps the companies whose org.nr hashes to it: result pages
+     * shift as companies are added while the shards run, so only the org.nr split
+     * gives each company to exactly one shard.
+     */
+    public List<CheckResult> checkShard(String searchQuery, int[] employeeFilter, int pages, ShardSpec shard) {
+        return findCompaniesWithoutWebsite(searchQuery, employeeFilter, pages, Integer.MAX_VALUE, shard::contains);
+    }
+
+    /**
+     * Continue a harvest that stopped at its deadline, from the page and position
+     * recorded in the marker. Pass the same filter the original run used.
+     */
+    public List<CheckResult> resumeHarvest(RemainingWork marker, int maxCompanies, Predicate<BolagsfaktaCompany> filter) {
+        String filterValue = marker.getAttribute("employee_filter");
+        int[] employeeFilter = filterValue == null || filterValue.isEmpty() ? null
+                : Arrays.stream(filterValue.split(",")).mapToInt(Integer::parseInt).toArray();
+        return findCompaniesWithoutWebsite(marker.getAttribute("query"), employeeFilter,
+                marker.getIntAttribute("next_page", 1), marker.getIntAttribute("next_offset", 0),
+                marker.getIntAttribute("last_page", 1), maxCompanies, filter);
+    }
+
+    /**
+     * Resume the query from the resume point in the remaining-harvest file if one was
+     * left for it, else start from the first page. A resume point for another query is
+     * left for that query's next run. Set a storage first: the resume point is removed
+     * once used, which is only safe when the results are saved.
+     */
+    public List<CheckResult> harvestOrResume(String searchQuery, int[] employeeFilter, int pages, int maxCompanies)
+            throws IOException {
+        RemainingWork marker = Files.exists(remainingFile) ? RemainingWork.read(remainingFile) : null;
+        if (marker == null || !searchQuery.equals(marker.getAttribute("query"))) {
+            return findCompaniesWithoutWebsite(searchQuery, employeeFilter, pages, maxCompanies, company -> true);
+        }
+        Log.info("Resuming '%s' at page %s, position %s", searchQuery, marker.getAttribute("next_page"),
+                marker.getAttribute("next_offset"));
+        List<CheckResult> results = resumeHarvest(marker, maxCompanies, company -> true);
+        // Results are saved by now (a failed save throws), so the old resume point is spent
+        if (!remainingWritten) {
+            Files.deleteIfExists(remainingFile);
+        }
+        return results;
+    }
+
+    /**
+     * With a storage set, each page's results are saved before the next page is fetched,
+     * so a crash or shutdown loses at most the page in progress.
+     */
+    private List<CheckResult> findCompaniesWithoutWebsite(String searchQuery, int[] employeeFilter, int firstPage,
+                                                          int firstOffset, int lastPage, int maxCompanies,
+                                                          Predicate<BolagsfaktaCompany> filter) {
         List<CheckResult> results = new ArrayList<>();
+        int saved = 0;
+        boolean stopped = false;
+        // Written only once the results before it are saved, so resuming never skips unsaved work
+        Runnable resumePoint = null;
+        int fetchingPage = firstPage;
+        // As many checks at once as the search limiter could ever allow; the limiter decides how many
+        // of them actually call LangSearch, so throughput follows what the upstream tolerates
+        int workers = searchService.getLimiter().getMaxLimit();
+        Semaphore slots = new Semaphore(workers);
+        ExecutorService pool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "harvest-check");
+            thread.setDaemon(true);
+            return thread;
+        });
 
         try {
-            System.out.println("Fetching companies from Bolagsfakta...");
-            BolagsfaktaService.SearchResponse response =
-                bolagsfaktaService.searchCompanies(searchQuery, 1, employeeFilter);
+            int checked = 0;
+            for (int page = firstPage; page <= lastPage && checked < maxCompanies && !stopped; page++) {
+                int currentPage = page;
+                fetchingPage = page;
+                Log.info("Fetching companies from Bolagsfakta (page %d)...", page);
+                BolagsfaktaService.SearchResponse response = bolagsfaktaRetryPolicy.execute(() ->
+                    bolagsfaktaService.searchCompanies(searchQuery, currentPage, employeeFilter));
 
-            System.out.println("Found " + response.getTotalCount() + " total companies");
-            System.out.println("Checking first " + Math.min(maxCompanies, response.getCompanies().size()) + " companies...\n");
+                List<BolagsfaktaCompany> companies = new ArrayList<>();
+                for (BolagsfaktaCompany company : response.getCompanies()) {
+                    if (filter.test(company)) {
+                        companies.add(company);
+                    }
+                }
 
-            int checked = 0;
-            for (BolagsfaktaCompany company : response.getCompanies()) {
-                if (checked >= maxCompanies) break;
-                if (apiCallCount >= maxApiCalls) {
-                    System.out.println("\n[!] Reached API call limit (" + maxApiCalls + "). Stopping.");
+                if (page == firstPage) {
+                    Log.info("Found %d total companies", response.getTotalCount());
+                }
+                int offset = page == firstPage ? Math.min(firstOffset, companies.size()) : 0;
+                companies = companies.subList(offset, companies.size());
+                Log.info("Checking %d companies...", Math.min(maxCompanies - checked, companies.size()));
+
+                List<CompletableFuture<CheckResult>> pageChecks = new ArrayList<>();
+                for (int i = 0; i < companies.size(); i++) {
+                    BolagsfaktaCompany company = companies.get(i);
+                    if (checked >= maxCompanies) break;
+                    // Admit the next company only once a worker is free, so the stop checks below see the
+                    // state at the time it would actually start
+                    slots.acquireUninterruptibly();
+                    String reason = null;
+                    if (apiCallBudget.isExhausted()) {
+                        Log.warn("Reached API call limit (run: %d/%d, today: %d/%d). Stopping.", apiCallBudget.getUsedThisRun(),
+                                apiCallBudget.getMaxPerRun(), apiCallBudget.getUsedToday(), apiCallBudget.getMaxPerDay());
+                        reason = "API call limit reached";
+                    } else if (Shutdown.isRequested()) {
+                        reason = "Shutting down";
+                    } else if (!deadline.tryAdmit()) {
+                        reason = "Deadline reached";
+                    }
+                    if (reason != null) {
+                        slots.release();
+                        String stopReason = reason;
+                        int stopPage = page;
+                        int stopOffset = offset + i;
+                        List<BolagsfaktaCompany> remainingOnPage = companies.subList(i, companies.size());
+                        resumePoint = () -> writeRemainingHarvest(stopReason, searchQuery, employeeFilter, stopPage,
+                                stopOffset, lastPage, remainingOnPage);
+                        stopped = true;
+                        break;
+                    }
+
+                    // The worker only starts the check, registry URL first; a search waiting out
+                    // a retry backoff holds its slot, not the thread
+                    CompletableFuture<CheckResult> pageCheck = CompletableFuture
+                            .supplyAsync(() -> checkAdmitted(company, checkRegistryUrl(company)), pool)
+                            .thenCompose(check -> check);
+                    pageCheck.whenComplete((result, error) -> {
+                        // Small delay after a search to avoid rate limiting
+                        if (result != null && result.getResolvedBy() == ResolutionTier.SEARCH) {
+                            CompletableFuture.delayedExecutor(300, TimeUnit.MILLISECONDS).execute(slots::release);
+                        } else {
+                            slots.release();
+                        }
+                    });
+                    pageChecks.add(pageCheck);
+                    checked++;
+                }
+                // In page order, so everything before the resume position is saved with this page
+                for (CompletableFuture<CheckResult> pageCheck : pageChecks) {
+                    results.add(pageCheck.join());
+                }
+
+                saveIfStored(results.subList(saved, results.size()));
+                saved = results.size();
+                if (!response.isHasNextPage()) {
                     break;
                 }
+            }
+
+        } catch (CircuitOpenException e) {
+            Log.error("Bolagsfakta unavailable, stopping the harvest: %s", e.getMessage());
+            resumePoint = failedFetchResumePoint("Bolagsfakta unavailable", searchQuery, employeeFilter,
+                    fetchingPage, firstPage, firstOffset, lastPage);
+            stopped = true;
+        } catch (IOException e) {
+            Log.error("Error fetching companies: %s", e.getMessage());
+            resumePoint = failedFetchResumePoint("Fetch failed", searchQuery, employeeFilter,
+                    fetchingPage, firstPage, firstOffset, lastPage);
+            stopped = true;
+        } finally {
+            pool.shutdown();
+        }
+
+        saveIfStored(results.subList(saved, results.size()));
+        if (resumePoint != null) {
+            resumePoint.run();
+        }
+        if (!stopped) {
+            saveIfStored(retryDeferred(results));
+        } else {
+            rememberDeferred(results);
+        }
+        return results;
+    }
+
+    /**
+     * Save results to the storage set with setStorage, if any. A failed save ends the
+     * command: going on would check companies whose results can't be kept.
+     */
+    private void saveIfStored(List<CheckResult> results) {
+        if (storage == null || results.isEmpty()) {
+            return;
+        }
+        try {
+            saveResults(storage, results);
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not save results: " + e.getMessage(), e);
+        }
+    }
 
-                CheckResult result = checkCompanyWebsite(company);
-                results.add(result);
-                checked++;
+    /**
+     * Check the deduplicated output of a fan-out harvest as it arrives. Harvesting runs
+     * on a background thread and feeds a bounded queue, so checking starts with the first
+     * page instead of after the last one.
+     */
+    public List<CheckResult> checkHarvest(FanOutHarvester harvester, List<FanOutHarvester.Query> queries,
+                                          int maxCompanies, Predicate<BolagsfaktaCompany> filter) {
+        List<CheckResult> results = new ArrayList<>();
+        BlockingQueue<PendingCheck> pending = new ArrayBlockingQueue<>(1024);
+        AtomicInteger queued = new AtomicInteger();
 
-                // Small delay to avoid rate limiting
+        Thread producer = new Thread(() -> {
+            try {
+                harvester.harvest(queries, company -> {
+                    // Companies past maxCompanies are never checked, so don't probe their registry URLs
+                    if (!filter.test(company) || queued.get() >= maxCompanies) {
+                        return;
+                    }
+                    queued.incrementAndGet();
+                    try {
+                        pending.put(new PendingCheck(company, checkRegistryUrl(company)));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
                 try {
-                    Thread.sleep(300);
+                    pending.put(PendingCheck.END);
                 } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
+                    // Interrupted only once the consumer has stopped reading
+                }
+            }
+        }, "harvest-producer");
+        producer.setDaemon(true);
+        producer.start();
+
+        List<String> unchecked = new ArrayList<>();
+        String stopReason = null;
+        try {
+            while (results.size() < maxCompanies) {
+                PendingCheck next = pending.take();
+                if (next == PendingCheck.END) {
+                    break;
+                }
+                if (apiCallBudget.isExhausted()) {
+                    stopReason = "Reached API call limit";
+                } else if (Shutdown.isRequested()) {
+                    stopReason = "Shutting down";
+                }
+                if (stopReason != null) {
+                    unchecked.add(next.company.getCompanyName());
+                    break;
+                }
+                results.add(checkCompanyWebsite(next.company, next.registryCheck));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            producer.interrupt();
+        }
+        if (stopReason != null) {
+            // Companies already harvested but not checked; pages not yet fetched are harvested again next run
+            try {
+                producer.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (PendingCheck next : pending) {
+                if (next != PendingCheck.END) {
+                    unchecked.add(next.company.getCompanyName());
+                }
+            }
+            addRemainingWork(unchecked, stopReason);
+        }
+        retryDeferred(results);
+
+        Log.info("Harvested %d pages, skipped %d duplicate companies%s", harvester.getPagesFetched(),
+                harvester.getDuplicates(),
+                harvester.getFailedQueries() > 0 ? ", " + harvester.getFailedQueries() + " queries failed" : "");
+        return results;
+    }
+
+    /**
+     * Check companies highest lead score first on the given number of workers, stopping
+     * when the API budget runs out. Companies left unchecked are the least valuable ones.
+     */
+    public List<CheckResult> checkByPriority(Iterable<? extends CompanyRecord> companies, LeadScorer scorer,
+                                             int workers, int maxCompanies) {
+        PriorityCheckScheduler scheduler = new PriorityCheckScheduler(scorer, workers);
+        scheduler.submitAll(companies);
+
+        try {
+            List<CheckResult> results = scheduler.run(
+                    record -> {
+                        // Only companies that are checked are copied out of their storage
+                        BolagsfaktaCompany company = record.toCompany();
+                        return checkCompanyWebsite(company, checkRegistryUrl(company));
+                    },
+                    maxCompanies, () -> apiCallBudget.isExhausted() || Shutdown.isRequested());
+            retryDeferred(results);
+            if (apiCallBudget.isExhausted()) {
+                Log.warn("Reached API call limit with %d lower-priority companies left unchecked.",
+                        scheduler.getPending());
+            }
+            if (apiCallBudget.isExhausted() || Shutdown.isRequested()) {
+                List<String> unchecked = new ArrayList<>();
+                for (CompanyRecord company : scheduler.drainPending()) {
+                    unchecked.add(company.getCompanyName());
+                }
+                addRemainingWork(unchecked, apiCallBudget.isExhausted() ? "Reached API call limit" : "Shutting down");
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Harvest, search, match and persist as separate stages joined by bounded queues.
+     * Each stage has its own workers, so a slow stage only holds up the stages before it
+     * once its queue is full. Harvesting stops after maxCompanies or when the API budget
+     * runs out. Queue depths are logged every few seconds and per-stage totals at the end.
+     *
+     * The other harvest commands keep their own loops: the default run and fanout stream
+     * each search only up to its first match, which needs matching inside the search call;
+     * prioritized checks in lead-score order, which FIFO stage queues don't keep.
+     */
+    public List<CheckResult> runPipeline(String searchQuery, int[] employeeFilter, int pages, int maxCompanies,
+                                         Predicate<BolagsfaktaCompany> filter, StorageService storage,
+                                         int searchWorkers, int matchWorkers, int queueCapacity)
+            throws InterruptedException {
+        List<CheckResult> results = Collections.synchronizedList(new ArrayList<>());
+        List<CheckResult> unsaved = new ArrayList<>();
+        // Admitted companies the search stage never started; listed for check-remaining afterwards
+        List<String> unchecked = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger admitted = new AtomicInteger();
+        AtomicBoolean lastPageSeen = new AtomicBoolean();
+
+        PipelineStage<CheckResult> persist = new PipelineStage<CheckResult>("persist", 1, queueCapacity, result -> {
+            results.add(result);
+            unsaved.add(result);
+            if (unsaved.size() >= PIPELINE_PERSIST_BATCH) {
+                saveResults(storage, unsaved);
+                unsaved.clear();
+            }
+        }).onDrained(() -> {
+            try {
+                saveResults(storage, unsaved);
+                unsaved.clear();
+            } catch (Exception e) {
+                Log.error("Could not save the last %d results: %s", unsaved.size(), e.getMessage());
+            }
+        });
+
+        PipelineStage<CheckResult> match = new PipelineStage<>("match", matchWorkers, queueCapacity, result -> {
+            try {
+                recordMatch(result, CompanyNameMatcher.findMatchingUrl(result.getSearchUrls(),
+                        result.getCompany().getCompanyName()));
+            } catch (RuntimeException e) {
+                recordError(result, e);
+            }
+            persist.put(result);
+        });
+        match.onDrained(persist::close);
+
+        // The whole URL list is fetched here so that matching can run as its own stage.
+        // Retries wait out their backoff off the search workers, which move on to the next
+        // company meanwhile; the stage closes the match stage once pending retries are done.
+        // Slots keep searches in flight, retries included, to one per worker, and finished
+        // searches are handed on from their own threads so a full queue never blocks the
+        // retry policy's.
+        Phaser searchesInFlight = new Phaser(1);
+        Semaphore searchSlots = new Semaphore(Math.max(1, searchWorkers));
+        AtomicInteger handoffThreads = new AtomicInteger();
+        ExecutorService handoff = Executors.newFixedThreadPool(Math.max(1, searchWorkers), runnable -> {
+            Thread thread = new Thread(runnable, "pipeline-search-handoff-" + handoffThreads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        PipelineStage<PendingCheck> search = new PipelineStage<>("search", searchWorkers, queueCapacity, pending -> {
+            if (Shutdown.isRequested()) {
+                unchecked.add(pending.company.getCompanyName());
+                return;
+            }
+            BolagsfaktaCompany company = pending.company;
+            CheckResult result = new CheckResult();
+            result.setCompany(company);
+            boolean slot = false;
+            boolean acquired = false;
+            boolean searching = false;
+            try {
+                CheckResult resolved = resolveWithoutSearch(company, pending.registryCheck);
+                if (resolved != null) {
+                    persist.put(resolved);
+                    return;
+                }
+                searchSlots.acquire();
+                slot = true;
+                if (!apiCallBudget.tryAcquire()) {
+                    result.setError("API call budget exhausted");
+                    unchecked.add(company.getCompanyName());
+                    persist.put(result);
+                    return;
+                }
+                acquired = true;
+                searchesInFlight.register();
+                CompletableFuture<SearchService.SearchResult> searched;
+                try {
+                    searched = searchRetryPolicy.executeAsync(
+                            () -> searchService.searchCompanyWebsite(company.getCompanyName()), Runnable::run);
+                } catch (RuntimeException e) {
+                    searchesInFlight.arriveAndDeregister();
+                    throw e;
+                }
+                // From here the callback owns the search slot, the budget slot and the result
+                searching = true;
+                searched.whenCompleteAsync((searchResult, error) -> {
+                    try {
+                        if (error == null) {
+                            if (searchResult.isShared()) {
+                                apiCallBudget.release();
+                            }
+                            result.setSearchUrls(searchResult.getAllUrls());
+                            match.put(result);
+                            return;
+                        }
+                        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                        if (cause instanceof CircuitOpenException) {
+                            defer(result, (CircuitOpenException) cause);
+                        } else {
+                            recordError(result, cause);
+                        }
+                        persist.put(result);
+                    } catch (InterruptedException e) {
+                        // Stopped before the result was handed on; listed so it gets checked again
+                        unchecked.add(company.getCompanyName());
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        searchSlots.release();
+                        searchesInFlight.arriveAndDeregister();
+                    }
+                }, handoff);
+            } catch (InterruptedException e) {
+                unchecked.add(company.getCompanyName());
+                throw e;
+            } catch (RuntimeException e) {
+                // Recorded as an error so the company isn't silently lost
+                recordError(result, e);
+                persist.put(result);
+            } finally {
+                if (acquired && !searching) {
+                    apiCallBudget.release();
+                }
+                if (slot && !searching) {
+                    searchSlots.release();
                 }
             }
+        });
+        search.onDrained(() -> {
+            searchesInFlight.arriveAndAwaitAdvance();
+            handoff.shutdown();
+            match.close();
+        });
 
+        PipelineStage<Integer> harvest = new PipelineStage<>("harvest", 1, queueCapacity, page -> {
+            if (lastPageSeen.get() || admitted.get() >= maxCompanies || apiCallBudget.isExhausted()
+                    || Shutdown.isRequested()) {
+                return;
+            }
+            BolagsfaktaService.SearchResponse response = bolagsfaktaRetryPolicy.execute(() ->
+                bolagsfaktaService.searchCompanies(searchQuery, page, employeeFilter));
+            if (!response.isHasNextPage()) {
+                lastPageSeen.set(true);
+            }
+            for (BolagsfaktaCompany company : response.getCompanies()) {
+                if (!filter.test(company)) {
+                    continue;
+                }
+                if (admitted.get() >= maxCompanies || apiCallBudget.isExhausted() || Shutdown.isRequested()) {
+                    return;
+                }
+                admitted.incrementAndGet();
+                search.put(new PendingCheck(company, checkRegistryUrl(company)));
+            }
+        });
+        harvest.onDrained(search::close);
+
+        List<PipelineStage<?>> stages = List.of(harvest, search, match, persist);
+        ScheduledExecutorService metrics = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pipeline-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        metrics.scheduleAtFixedRate(() -> Log.info("Pipeline queues: %s", stages.stream()
+                .map(PipelineStage::describeDepth).collect(Collectors.joining(" | "))),
+                PIPELINE_METRICS_SECONDS, PIPELINE_METRICS_SECONDS, TimeUnit.SECONDS);
+
+        for (PipelineStage<?> stage : stages) {
+            stage.start();
+        }
+        try {
+            for (int page = 1; page <= pages && !lastPageSeen.get() && !Shutdown.isRequested(); page++) {
+                harvest.put(page);
+            }
+            harvest.close();
+            persist.awaitDrained();
+        } catch (InterruptedException e) {
+            for (PipelineStage<?> stage : stages) {
+                stage.abort();
+            }
+            handoff.shutdownNow();
+            throw e;
+        } finally {
+            metrics.shutdownNow();
+        }
+
+        for (PipelineStage<?> stage : stages) {
+            Log.info("Pipeline %s", stage.describeTotals());
+        }
+        addRemainingWork(unchecked, apiCallBudget.isExhausted() ? "Reached API call limit" : "Shutting down");
+
+        List<CheckResult> finished = new ArrayList<>(results);
+        List<CheckResult> retried = retryDeferred(finished);
+        if (!retried.isEmpty()) {
+            try {
+                saveResults(storage, retried);
+            } catch (Exception e) {
+                Log.error("Could not save %d retried results: %s", retried.size(), e.getMessage());
+            }
+        }
+        return finished;
+    }
+
+    private static class PendingCheck {
+        static final PendingCheck END = new PendingCheck(null, null);
+
+        final BolagsfaktaCompany company;
+        final CompletableFuture<String> registryCheck;
+
+        PendingCheck(BolagsfaktaCompany company, CompletableFuture<String> registryCheck) {
+            this.company = company;
+            this.registryCheck = registryCheck;
+        }
+    }
+
+    /**
+     * Answer lookups from results already stored in the companies table when they
+     * are recent enough, so companies checked by an earlier run aren't searched again.
+     * Page-by-page harvests also save their results here as they go.
+     */
+    public void setStorage(StorageService storage) {
+        this.storage = storage;
+        this.websiteCache = new WebsiteCache(storage);
+    }
+
+    /**
+     * Stop admitting checks once one started now probably won't finish by the deadline,
+     * writing the resume point to remainingFile
+     */
+    public void setDeadline(Deadline deadline, Path remainingFile) {
+        this.deadline = deadline;
+        this.remainingFile = remainingFile;
+    }
+
+    /**
+     * Whether a run stopped early and wrote its resume point to the remaining-work file
+     */
+    public boolean hasWrittenRemaining() {
+        return remainingWritten;
+    }
+
+    /**
+     * The page that failed to load is fetched again on resume, from the offset it would have started at
+     */
+    private Runnable failedFetchResumePoint(String reason, String searchQuery, int[] employeeFilter, int page,
+                                            int firstPage, int firstOffset, int lastPage) {
+        int offset = page == firstPage ? firstOffset : 0;
+        return () -> writeRemainingHarvest(reason, searchQuery, employeeFilter, page, offset, lastPage,
+                Collections.emptyList());
+    }
+
+    private void writeRemainingHarvest(String reason, String searchQuery, int[] employeeFilter, int page, int offset,
+                                       int lastPage, List<BolagsfaktaCompany> remainingOnPage) {
+        List<String> names = new ArrayList<>();
+        for (BolagsfaktaCompany company : remainingOnPage) {
+            names.add(company.getCompanyName());
+        }
+        RemainingWork marker = new RemainingWork(names)
+                .setAttribute("query", searchQuery)
+                .setAttribute("employee_filter", employeeFilter == null ? "" :
+                        Arrays.stream(employeeFilter).mapToObj(String::valueOf).collect(Collectors.joining(",")))
+                .setAttribute("next_page", page)
+                .setAttribute("next_offset", offset)
+                .setAttribute("last_page", lastPage)
+                .setAttribute("written_at", Instant.now());
+        if (deadline != Deadline.NONE) {
+            marker.setAttribute("deadline", deadline.getEnd())
+                    .setAttribute("avg_check_ms", deadline.getEstimatedCheckTime().toMillis());
+        }
+        try {
+            marker.write(remainingFile);
+            remainingWritten = true;
+            Log.info("%s. Resume point (page %d, position %d) written to %s", reason, page, offset, remainingFile);
         } catch (IOException e) {
-            System.err.println("Error fetching companies: " + e.getMessage());
+            Log.error("Could not write remaining work to %s: %s", remainingFile, e.getMessage());
         }
+    }
+
+    /**
+     * Write check results to storage, inserting companies that aren't stored yet.
+     * URL lists from the search tier are kept for offline re-matching. Lists the streaming
+     * search cut off at the first match are stored as incomplete. Companies another tier
+     * decided lose any list an earlier search left, so re-matching never overrides them.
+     * Cache hits are skipped: they are stored already, and saving them again would
+     * refresh checked_at and keep them from ever expiring.
+     */
+    public void saveResults(StorageService storageService, List<CheckResult> results) throws Exception {
+        List<Company> companies = new ArrayList<>();
+        Map<String, List<String>> searchUrls = new HashMap<>();
+        Map<String, List<String>> partialSearchUrls = new HashMap<>();
+        List<String> decidedWithoutSearch = new ArrayList<>();
+        for (CheckResult result : results) {
+            if (result.getError() != null || result.getResolvedBy() == ResolutionTier.CACHE) {
+                continue;
+            }
+            Company company = new Company(result.getCompany().getCompanyName());
+            company.setWebsite(result.getMatchedUrl());
+            company.setHasWebsite(result.isHasWebsite());
+            companies.add(company);
+            if (result.getResolvedBy() == ResolutionTier.SEARCH && result.getSearchUrls() != null) {
+                (result.isSearchUrlsComplete() ? searchUrls : partialSearchUrls)
+                        .put(company.getName(), result.getSearchUrls());
+            } else {
+                decidedWithoutSearch.add(company.getName());
+            }
+        }
+        storageService.upsertCompanies(companies);
+        storageService.saveSearchUrls(searchUrls, true);
+        storageService.saveSearchUrls(partialSearchUrls, false);
+        storageService.deleteSearchUrls(decidedWithoutSearch);
+    }
 
+    /**
+     * Harvest Bolagsfakta result pages into the shared job queue for worker processes.
+     * Returns the number of newly queued companies.
+     */
+    public int enqueueHarvest(JobQueue queue, String searchQuery, int[] employeeFilter, int pages)
+            throws IOException, SQLException {
+        int queued = 0;
+        for (int page = 1; page <= pages; page++) {
+            int currentPage = page;
+            BolagsfaktaService.SearchResponse response = bolagsfaktaRetryPolicy.execute(() ->
+                bolagsfaktaService.searchCompanies(searchQuery, currentPage, employeeFilter));
+            queued += queue.enqueue(response.getCompanies());
+            if (!response.isHasNextPage()) {
+                break;
+            }
+        }
+        return queued;
+    }
+
+    /**
+     * Lease batches of jobs from the queue and check them until the queue is drained
+     * or the API budget runs out. Leases are renewed by a heartbeat while the batch is
+     * being worked on, so only a crashed worker's jobs get picked up by others.
+     * Each batch's results are saved to storage before its jobs are marked done.
+     */
+    public List<CheckResult> runWorker(JobQueue queue, StorageService storage, String workerId, int batchSize)
+            throws Exception {
+        List<CheckResult> results = new ArrayList<>();
+        ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "job-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleAtFixedRate(() -> {
+            try {
+                queue.heartbeat(workerId, JOB_LEASE_MILLIS);
+            } catch (SQLException e) {
+                Log.warn("Heartbeat failed: %s", e.getMessage());
+            }
+        }, JOB_LEASE_MILLIS / 3, JOB_LEASE_MILLIS / 3, TimeUnit.MILLISECONDS);
+
+        try {
+            while (!apiCallBudget.isExhausted() && !Shutdown.isRequested()) {
+                List<JobQueue.Job> jobs = queue.lease(workerId, batchSize, JOB_LEASE_MILLIS);
+                if (jobs.isEmpty()) {
+                    break;
+                }
+
+                CircuitBreaker breaker = searchService.getCircuitBreaker();
+                List<JobQueue.Job> checkedJobs = new ArrayList<>();
+                List<CheckResult> checked = new ArrayList<>();
+                for (JobQueue.Job job : jobs) {
+                    if (apiCallBudget.isExhausted() || breaker.getState() == CircuitBreaker.State.OPEN
+                            || Shutdown.isRequested()) {
+                        queue.release(job, workerId);
+                        continue;
+                    }
+
+                    BolagsfaktaCompany company = job.toCompany();
+                    CheckResult result = checkCompanyWebsite(company, checkRegistryUrl(company));
+                    if (result.getError() == null) {
+                        checkedJobs.add(job);
+                        checked.add(result);
+                    } else if (result.isDeferred() || apiCallBudget.isExhausted()) {
+                        // Back to the queue without spending an attempt
+                        queue.release(job, workerId);
+                    } else {
+                        queue.fail(job, workerId, result.getError());
+                        results.add(result);
+                    }
+                }
+
+                // A crash between the two leaves the jobs leased; they're checked again, never lost
+                saveResults(storage, checked);
+                for (int i = 0; i < checkedJobs.size(); i++) {
+                    CheckResult result = checked.get(i);
+                    queue.complete(checkedJobs.get(i), workerId, result.isHasWebsite(), result.getMatchedUrl());
+                }
+                results.addAll(checked);
+
+                long pauseMillis = breaker.getTimeUntilRetry().toMillis();
+                if (pauseMillis > 0) {
+                    Log.info("%s unavailable, pausing %d s before leasing more jobs", breaker.getName(),
+                            TimeUnit.MILLISECONDS.toSeconds(pauseMillis));
+                    if (Shutdown.awaitRequest(pauseMillis, TimeUnit.MILLISECONDS)) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            heartbeat.shutdownNow();
+        }
+
+        if (apiCallBudget.isExhausted()) {
+            Log.warn("Reached API call limit. Remaining jobs are left for other workers.");
+        } else if (Shutdown.isRequested()) {
+            Log.info("Shutting down. Unchecked jobs were released for other workers.");
+        }
         return results;
     }
 
-    private CheckResult checkCompanyWebsite(BolagsfaktaCompany company) {
+    /**
+     * Start verifying the website Bolagsfakta lists for the company, if any and if
+     * its domain matches the company name. Completes with the reachable URL or null.
+     */
+    private CompletableFuture<String> checkRegistryUrl(BolagsfaktaCompany company) {
+        String url = company.getCompanyUrl();
+        if (url == null || !url.matches("(?i)^https?://.+")
+                || CompanyNameMatcher.extractDomainFromUrl(url).toLowerCase().endsWith("bolagsfakta.se")) {
+            return CompletableFuture.completedFuture(null);
+        }
+        // Listed URLs can belong to a parent company or a former owner
+        if (!CompanyNameMatcher.urlMatchesCompanyName(url, company.getCompanyName())) {
+            Log.debug("Registry URL %s doesn't match %s, ignoring it", url, company.getCompanyName());
+            return CompletableFuture.completedFuture(null);
+        }
+        // A redirect can lead somewhere else entirely, so the final URL has to match too
+        return domainProbe.checkUrlAsync(url).thenApply(finalUrl -> {
+            if (finalUrl != null && !CompanyNameMatcher.urlMatchesCompanyName(finalUrl, company.getCompanyName())) {
+                Log.debug("Registry URL %s redirects to %s, which doesn't match %s, ignoring it", url, finalUrl,
+                        company.getCompanyName());
+                return null;
+            }
+            return finalUrl;
+        });
+    }
+
+    /**
+     * Resolve a company's website through the cheapest tier that answers:
+     * registry URL, cache, direct domain probe and finally the search API.
+     */
+    private CheckResult checkCompanyWebsite(BolagsfaktaCompany company, CompletableFuture<String> registryCheck) {
+        return checkCompanyWebsiteAsync(company, registryCheck).join();
+    }
+
+    /**
+     * Like checkCompanyWebsite, but a search that has to be retried completes later:
+     * retries are scheduled after their backoff instead of holding the calling thread.
+     */
+    private CompletableFuture<CheckResult> checkCompanyWebsiteAsync(BolagsfaktaCompany company,
+                                                                    CompletableFuture<String> registryCheck) {
+        CheckResult resolved = resolveWithoutSearch(company, registryCheck);
+        if (resolved != null) {
+            return CompletableFuture.completedFuture(resolved);
+        }
         CheckResult result = new CheckResult();
         result.setCompany(company);
 
-        System.out.print("Checking: " + company.getCompanyName() + "... ");
+        if (!apiCallBudget.tryAcquire()) {
+            Log.info("Checking: %s... SKIPPED (API call budget exhausted)", company.getCompanyName());
+            result.setError("API call budget exhausted");
+            return CompletableFuture.completedFuture(result);
+        }
+
+        // Matching happens while the response streams in, so the body is cut off at the first match
+        return searchRetryPolicy.executeAsync(() -> searchService.searchForMatchingUrl(company.getCompanyName()),
+                Runnable::run).handle((searchResult, error) -> {
+            if (error == null) {
+                if (searchResult.isShared()) {
+                    apiCallBudget.release();
+                }
+                result.setSearchUrls(searchResult.getAllUrls());
+                result.setSearchUrlsComplete(searchResult.isComplete());
+                recordMatch(result, new CompanyNameMatcher.MatchResult(
+                    searchResult.getMatchedUrl() != null, searchResult.getMatchedUrl()));
+                return result;
+            }
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause instanceof CircuitOpenException) {
+                defer(result, (CircuitOpenException) cause);
+            } else {
+                recordError(result, cause);
+            }
+            return result;
+        });
+    }
 
+    /**
+     * Check a company admitted against the deadline, feeding its time into the estimate
+     */
+    private CompletableFuture<CheckResult> checkAdmitted(BolagsfaktaCompany company,
+                                                         CompletableFuture<String> registryCheck) {
+        long start = deadline.begin();
+        CompletableFuture<CheckResult> check;
         try {
-            apiCallCount++;
-            SearchService.SearchResult searchResult =
-                searchService.searchCompanyWebsite(company.getCompanyName());
+            check = checkCompanyWebsiteAsync(company, registryCheck);
+        } catch (RuntimeException e) {
+            CheckResult result = new CheckResult();
+            result.setCompany(company);
+            recordError(result, e);
+            check = CompletableFuture.completedFuture(result);
+        }
+        return check.thenApply(result -> {
+            // A deferred check failed fast without calling out; timing it would skew the estimate
+            if (!result.isDeferred()) {
+                deadline.complete(start);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * The tiers that cost no search call: registry URL, cache and direct domain probe.
+     * Returns null when the company still needs a search.
+     */
+    private CheckResult resolveWithoutSearch(BolagsfaktaCompany company, CompletableFuture<String> registryCheck) {
+        CheckResult result = new CheckResult();
+        result.setCompany(company);
+
+        String registryUrl = registryCheck.join();
+        if (registryUrl != null) {
+            result.setHasWebsite(true);
+            result.setMatchedUrl(registryUrl);
+            result.setSearchUrls(List.of(registryUrl));
+            result.setResolvedBy(ResolutionTier.REGISTRY);
+            websiteCache.put(company, true, registryUrl);
+            Log.info("Checking: %s... HAS WEBSITE (registry): %s", company.getCompanyName(), registryUrl);
+            return result;
+        }
 
-            List<String> urls = searchResult.getAllUrls();
-            CompanyNameMatcher.MatchResult matchResult =
-                CompanyNameMatcher.findMatchingUrl(urls, company.getCompanyName());
+        WebsiteCache.Entry cached = websiteCache.get(company);
+        if (cached != null) {
+            result.setHasWebsite(cached.isHasWebsite());
+            result.setMatchedUrl(cached.getUrl());
+            result.setSearchUrls(cached.getUrl() != null ? List.of(cached.getUrl()) : List.of());
+            result.setResolvedBy(ResolutionTier.CACHE);
+            Log.info("Checking: %s... %s", company.getCompanyName(),
+                    cached.isHasWebsite() ? "HAS WEBSITE (cached): " + cached.getUrl() : "NO WEBSITE FOUND (cached)");
+            return result;
+        }
 
-            result.setHasWebsite(matchResult.isMatched());
-            result.setMatchedUrl(matchResult.getMatchedUrl());
-            result.setSearchUrls(urls);
+        // Try the company name as a domain before paying for a search
+        CompanyNameMatcher.MatchResult probeResult = domainProbe.probe(company.getCompanyName());
+        if (probeResult.isMatched()) {
+            result.setHasWebsite(true);
+            result.setMatchedUrl(probeResult.getMatchedUrl());
+            result.setSearchUrls(List.of(probeResult.getMatchedUrl()));
+            result.setResolvedBy(ResolutionTier.DOMAIN_PROBE);
+            websiteCache.put(company, true, probeResult.getMatchedUrl());
+            Log.info("Checking: %s... HAS WEBSITE (direct domain): %s", company.getCompanyName(), probeResult.getMatchedUrl());
+            return result;
+        }
 
-            if (matchResult.isMatched()) {
-                System.out.println("HAS WEBSITE: " + matchResult.getMatchedUrl());
-            } else {
-                System.out.println("NO WEBSITE FOUND");
+        return null;
+    }
+
+    private void recordError(CheckResult result, Throwable error) {
+        String message = error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+        Log.warn("Checking: %s... ERROR: %s", result.getCompany().getCompanyName(), message);
+        result.setError(message);
+    }
+
+    private void defer(CheckResult result, CircuitOpenException e) {
+        // The call was never made, so it shouldn't count against the budget
+        apiCallBudget.release();
+        result.setError(e.getMessage());
+        result.setDeferred(true);
+        Log.info("Checking: %s... DEFERRED (%s)", result.getCompany().getCompanyName(), e.getMessage());
+    }
+
+    /**
+     * Check deferred companies again once the search circuit lets calls through. Each
+     * pass waits at most one open period for it; passes repeat while they get at least
+     * one company through. Results are replaced in place. Companies still deferred at
+     * the end are left out of storage and listed in the remaining-work marker for
+     * check-remaining. Returns the results that were checked.
+     */
+    private List<CheckResult> retryDeferred(List<CheckResult> results) {
+        List<CheckResult> retried = new ArrayList<>();
+        CircuitBreaker breaker = searchService.getCircuitBreaker();
+        boolean progress = true;
+        while (progress && results.stream().anyMatch(CheckResult::isDeferred)) {
+            long waitMillis = breaker.getTimeUntilRetry().toMillis();
+            if (waitMillis > breaker.getOpenDuration().toMillis()
+                    || Shutdown.awaitRequest(waitMillis, TimeUnit.MILLISECONDS)) {
+                break;
+            }
+
+            progress = false;
+            for (int i = 0; i < results.size(); i++) {
+                CheckResult previous = results.get(i);
+                if (!previous.isDeferred()) {
+                    continue;
+                }
+                if (breaker.getState() == CircuitBreaker.State.OPEN || apiCallBudget.isExhausted()
+                        || Shutdown.isRequested() || !deadline.tryAdmit()) {
+                    break;
+                }
+                long start = deadline.begin();
+                // The registry URL was already checked before this company was deferred
+                CheckResult result = checkCompanyWebsite(previous.getCompany(), CompletableFuture.completedFuture(null));
+                results.set(i, result);
+                if (!result.isDeferred()) {
+                    deadline.complete(start);
+                    retried.add(result);
+                    progress = true;
+                }
+            }
+            if (apiCallBudget.isExhausted() || Shutdown.isRequested() || deadline.isClosed()) {
+                break;
+            }
+        }
+        rememberDeferred(results);
+        return retried;
+    }
+
+    /**
+     * List the companies still deferred for check-remaining, to be checked once the search API is back
+     */
+    private void rememberDeferred(List<CheckResult> results) {
+        List<String> names = new ArrayList<>();
+        for (CheckResult result : results) {
+            if (result.isDeferred()) {
+                names.add(result.getCompany().getCompanyName());
+            }
+        }
+        addRemainingWork(names, "Search API unavailable");
+    }
+
+    /**
+     * Where companies a run stopped before checking are listed; the file BatchRunner's
+     * check-remaining reads, so it should match its --remaining-file
+     */
+    public void setRemainingWorkFile(Path remainingWorkFile) {
+        this.remainingWorkFile = remainingWorkFile;
+    }
+
+    /**
+     * Add companies a run stopped before checking to the remaining-work marker, keeping
+     * whatever it already lists, so check-remaining picks them up
+     */
+    private void addRemainingWork(Collection<String> names, String reason) {
+        if (names.isEmpty()) {
+            return;
+        }
+
+        Path file = remainingWorkFile;
+        try {
+            Set<String> items = new LinkedHashSet<>();
+            if (Files.exists(file)) {
+                items.addAll(RemainingWork.read(file).getItems());
+            }
+            items.addAll(names);
+            new RemainingWork(new ArrayList<>(items))
+                    .setAttribute("command", "harvest")
+                    .setAttribute("written_at", Instant.now())
+                    .setAttribute("remaining", items.size())
+                    .write(file);
+            Log.warn("%s; %d companies left for check-remaining in %s", reason, names.size(), file);
+        } catch (IOException e) {
+            Log.error("Could not write remaining work to %s: %s", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Store the outcome of matching a search result's URLs and log it
+     */
+    private void recordMatch(CheckResult result, CompanyNameMatcher.MatchResult matchResult) {
+        BolagsfaktaCompany company = result.getCompany();
+        List<String> urls = result.getSearchUrls();
+        result.setHasWebsite(matchResult.isMatched());
+        result.setMatchedUrl(matchResult.getMatchedUrl());
+        result.setResolvedBy(ResolutionTier.SEARCH);
+        websiteCache.put(company, matchResult.isMatched(), matchResult.getMatchedUrl());
+
+        if (matchResult.isMatched()) {
+            Log.info("Checking: %s... HAS WEBSITE: %s", company.getCompanyName(), matchResult.getMatchedUrl());
+        } else {
+            Log.info("Checking: %s... NO WEBSITE FOUND", company.getCompanyName());
+            if (Log.isEnabled(Log.Level.DEBUG)) {
                 if (!urls.isEmpty()) {
-                    System.out.println("  Search returned " + urls.size() + " URLs:");
+                    Log.debug("  Search returned %d URLs:", urls.size());
                     for (int i = 0; i < Math.min(3, urls.size()); i++) {
-                        System.out.println("    - " + urls.get(i));
+                        Log.debug("    - %s", urls.get(i));
                     }
                 } else {
-                    System.out.println("  (No URLs returned from search)");
+                    Log.debug("  (No URLs returned from search)");
                 }
             }
-
-        } catch (IOException e) {
-            System.out.println("ERROR: " + e.getMessage());
-            result.setError(e.getMessage());
         }
-
-        return result;
     }
 
     public void printSummary(List<CheckResult> results) {
+        Log.flush();
         System.out.println("\n" + "=".repeat(60));
         System.out.println("SUMMARY");
         System.out.println("=".repeat(60));
@@ -110,9 +1113,12 @@ public class WebsiteChecker {
         List<CheckResult> withWebsite = new ArrayList<>();
         List<CheckResult> withoutWebsite = new ArrayList<>();
         List<CheckResult> errors = new ArrayList<>();
+        int deferred = 0;
 
         for (CheckResult result : results) {
-            if (result.getError() != null) {
+            if (result.isDeferred()) {
+                deferred++;
+            } else if (result.getError() != null) {
                 errors.add(result);
             } else if (result.isHasWebsite()) {
                 withWebsite.add(result);
@@ -125,7 +1131,22 @@ public class WebsiteChecker {
         System.out.println("With website: " + withWebsite.size());
         System.out.println("Without website: " + withoutWebsite.size());
         System.out.println("Errors: " + errors.size());
-        System.out.println("API calls used: " + apiCallCount);
+        if (deferred > 0) {
+            System.out.println("Deferred (upstream unavailable, not saved): " + deferred);
+        }
+        System.out.println("API calls used: " + apiCallBudget.getUsedThisRun() +
+                " (today: " + apiCallBudget.getUsedToday() + "/" + apiCallBudget.getMaxPerDay() + ")");
+
+        Map<ResolutionTier, Integer> tierCounts = new EnumMap<>(ResolutionTier.class);
+        for (CheckResult result : results) {
+            if (result.getResolvedBy() != null) {
+                tierCounts.merge(result.getResolvedBy(), 1, Integer::sum);
+            }
+        }
+        int paidCallsSaved = results.size() - errors.size() - deferred - tierCounts.getOrDefault(ResolutionTier.SEARCH, 0);
+        System.out.println("Resolved by tier: " + tierCounts + " (search calls saved: " + paidCallsSaved + ")");
+        System.out.println(searchService.getLimiter());
+        System.out.println(bolagsfaktaService.getLimiter());
 
         if (!withoutWebsite.isEmpty()) {
             System.out.println("\n--- Companies WITHOUT a website ---");
@@ -149,7 +1170,21 @@ public class WebsiteChecker {
     }
 
     public int getApiCallCount() {
-        return apiCallCount;
+        return apiCallBudget.getUsedThisRun();
+    }
+
+    public ApiCallBudget getApiCallBudget() {
+        return apiCallBudget;
+    }
+
+    /**
+     * Which step of the resolution pipeline produced a check result
+     */
+    public enum ResolutionTier {
+        REGISTRY,
+        CACHE,
+        DOMAIN_PROBE,
+        SEARCH
     }
 
     public static class CheckResult {
@@ -157,7 +1192,10 @@ public class WebsiteChecker {
         private boolean hasWebsite;
         private String matchedUrl;
         private List<String> searchUrls;
+        private boolean searchUrlsComplete = true;
         private String error;
+        private boolean deferred;
+        private ResolutionTier resolvedBy;
 
         public BolagsfaktaCompany getCompany() {
             return company;
@@ -191,6 +1229,14 @@ public class WebsiteChecker {
             this.searchUrls = searchUrls;
         }
 
+        public boolean isSearchUrlsComplete() {
+            return searchUrlsComplete;
+        }
+
+        public void setSearchUrlsComplete(boolean searchUrlsComplete) {
+            this.searchUrlsComplete = searchUrlsComplete;
+        }
+
         public String getError() {
             return error;
         }
@@ -198,9 +1244,85 @@ public class WebsiteChecker {
         public void setError(String error) {
             this.error = error;
         }
+
+        public ResolutionTier getResolvedBy() {
+            return resolvedBy;
+        }
+
+        public void setResolvedBy(ResolutionTier resolvedBy) {
+            this.resolvedBy = resolvedBy;
+        }
+
+        /**
+         * True when the check was not attempted because an upstream's circuit was open.
+         * The error says which; the company should be checked again rather than stored.
+         */
+        public boolean isDeferred() {
+            return deferred;
+        }
+
+        public void setDeferred(boolean deferred) {
+            this.deferred = deferred;
+        }
+    }
+
+    /**
+     * A checker for a command-line command, whose budget is closed on shutdown
+     */
+    private static WebsiteChecker forCommand(int maxApiCalls) {
+        WebsiteChecker checker = new WebsiteChecker(ApiCallBudget.forProcess(maxApiCalls));
+        checker.setRemainingWorkFile(commandRemainingWorkFile);
+        return checker;
     }
 
     public static void main(String[] args) {
+        // The shutdown hook waits for the command to return, including its final saves
+        int exitCode;
+        Shutdown.Work work = Shutdown.begin(args.length > 0 ? args[0] : "check");
+        try {
+            exitCode = run(args);
+        } finally {
+            work.close();
+        }
+        if (args.length > 0) {
+            System.exit(exitCode);
+        }
+    }
+
+    private static int run(String[] args) {
+        // --remaining-file goes with any command, naming the file check-remaining reads
+        List<String> commandArgs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--remaining-file") && i + 1 < args.length) {
+                commandRemainingWorkFile = Paths.get(args[++i]);
+            } else {
+                commandArgs.add(args[i]);
+            }
+        }
+        args = commandArgs.toArray(new String[0]);
+
+        if (args.length > 0 && (args[0].equals("enqueue") || args[0].equals("worker"))) {
+            return runQueueCommand(args);
+        }
+        if (args.length > 0 && (args[0].equals("--shard") || args[0].equals("merge"))) {
+            return runShardCommand(args);
+        }
+        if (args.length > 0 && args[0].equals("fanout")) {
+            return runFanOutCommand(args);
+        }
+        if (args.length > 0 && args[0].equals("prioritized")) {
+            return runPrioritizedCommand(args);
+        }
+        if (args.length > 0 && args[0].equals("timeboxed")) {
+            return runTimeboxedCommand(args);
+        }
+        if (args.length > 0 && args[0].equals("incremental")) {
+            return runIncrementalCommand(args);
+        }
+        if (args.length > 0 && args[0].equals("pipeline")) {
+            return runPipelineCommand(args);
+        }
+
         System.out.println("=".repeat(60));
         System.out.println("Website Checker - Finding small companies without websites");
         System.out.println("=".repeat(60));
@@ -210,18 +1332,397 @@ public class WebsiteChecker {
         int maxCompaniesToCheck = 5;
         int maxApiCalls = 20;
 
-        WebsiteChecker checker = new WebsiteChecker(maxApiCalls);
+        WebsiteChecker checker = forCommand(maxApiCalls);
 
         // Search for small companies (0-9 employees)
         // e=0 means 0 employees, e=1 means 1-9 employees
         int[] employeeFilter = {0, 1};
 
-        List<CheckResult> results = checker.findCompaniesWithoutWebsite(
-            "Frisör",
-            employeeFilter,
-            maxCompaniesToCheck
-        );
+        // Results are saved as they go, so a run stopped early resumes where it left off
+        try (DatabaseService storage = new DatabaseService()) {
+            checker.setStorage(storage);
+            List<CheckResult> results = checker.harvestOrResume("Frisör", employeeFilter, 1, maxCompaniesToCheck);
+            checker.printSummary(results);
+            return 0;
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            return 1;
+        }
+    }
 
-        checker.printSummary(results);
+    /**
+     * --shard i/N <query> [pages]   - check the companies whose org.nr hashes to shard i on the first
+     *                                pages result pages, into companies-shard-i-of-N.db
+     * merge <shard.db>...           - merge shard databases into companies.db
+     */
+    private static int runShardCommand(String[] args) {
+        int[] employeeFilter = {0, 1};
+
+        try {
+            if (args[0].equals("merge")) {
+                if (args.length < 2) {
+                    System.err.println("Usage: merge <shard.db>...");
+                    return 2;
+                }
+                try (DatabaseService target = new DatabaseService()) {
+                    for (int i = 1; i < args.length; i++) {
+                        int merged = target.mergeFrom(args[i]);
+                        System.out.println("Merged " + merged + " companies from " + args[i]);
+                    }
+                }
+                return 0;
+            }
+
+            if (args.length < 3) {
+                System.err.println("Usage: --shard i/N <query> [pages]");
+                return 2;
+            }
+            ShardSpec shard = ShardSpec.parse(args[1]);
+            int pages = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+
+            WebsiteChecker checker = forCommand(Integer.MAX_VALUE);
+            try (DatabaseService storage = new DatabaseService(shard.getStorageFile())) {
+                checker.setStorage(storage);
+                List<CheckResult> results = checker.checkShard(args[2], employeeFilter, pages, shard);
+                checker.printSummary(results);
+                System.out.println("Shard " + shard + " wrote " + results.size() + " results to " + shard.getStorageFile());
+            }
+            return 0;
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return 2;
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * fanout <query>[:filters]... [--pages N] [--parallelism N]
+     *   - harvest several queries in parallel, e.g. fanout "Frisör Uppsala:0,1" "Frisör Malmö:0,1"
+     */
+    private static int runFanOutCommand(String[] args) {
+        List<String> specs = new ArrayList<>();
+        int pages = 1;
+        int parallelism = 4;
+
+        try {
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("--pages") && i + 1 < args.length) {
+                    pages = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--parallelism") && i + 1 < args.length) {
+                    parallelism = Integer.parseInt(args[++i]);
+                } else {
+                    specs.add(args[i]);
+                }
+            }
+            if (specs.isEmpty()) {
+                System.err.println("Usage: fanout <query>[:filters]... [--pages N] [--parallelism N]");
+                return 2;
+            }
+
+            List<FanOutHarvester.Query> queries = new ArrayList<>();
+            for (String spec : specs) {
+                queries.add(FanOutHarvester.Query.parse(spec, pages));
+            }
+
+            WebsiteChecker checker = forCommand(Integer.MAX_VALUE);
+            FanOutHarvester harvester = new FanOutHarvester(
+                    checker.bolagsfaktaService, checker.bolagsfaktaRetryPolicy, parallelism);
+            try (DatabaseService storage = new DatabaseService()) {
+                checker.setStorage(storage);
+                List<CheckResult> results = checker.checkHarvest(harvester, queries, Integer.MAX_VALUE, company -> true);
+                checker.printSummary(results);
+                checker.saveResults(storage, results);
+            }
+            return 0;
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return 2;
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * pipeline <query> [pages] [--search-workers N] [--match-workers N] [--queue N] [--max-calls N]
+     *   - harvest, search, match and save in parallel stages with bounded queues between them
+     */
+    private static int runPipelineCommand(String[] args) {
+        int[] employeeFilter = {0, 1};
+        List<String> positional = new ArrayList<>();
+        int searchWorkers = 4;
+        int matchWorkers = 2;
+        int queueCapacity = 64;
+        int maxApiCalls = Integer.MAX_VALUE;
+
+        try {
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("--search-workers") && i + 1 < args.length) {
+                    searchWorkers = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--match-workers") && i + 1 < args.length) {
+                    matchWorkers = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--queue") && i + 1 < args.length) {
+                    queueCapacity = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--max-calls") && i + 1 < args.length) {
+                    maxApiCalls = Integer.parseInt(args[++i]);
+                } else {
+                    positional.add(args[i]);
+                }
+            }
+            if (positional.isEmpty() || searchWorkers < 1 || matchWorkers < 1 || queueCapacity < 1) {
+                System.err.println("Usage: pipeline <query> [pages] [--search-workers N] [--match-workers N] " +
+                        "[--queue N] [--max-calls N]");
+                return 2;
+            }
+            int pages = positional.size() > 1 ? Integer.parseInt(positional.get(1)) : 1;
+
+            try (DatabaseService storage = new DatabaseService()) {
+                WebsiteChecker checker = forCommand(maxApiCalls);
+                checker.setStorage(storage);
+                List<CheckResult> results = checker.runPipeline(positional.get(0), employeeFilter, pages,
+                        Integer.MAX_VALUE, company -> true, storage, searchWorkers, matchWorkers, queueCapacity);
+                checker.printSummary(results);
+            }
+            return 0;
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return 2;
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * prioritized <query> [pages] [--workers N] [--max-calls N] [--snapshot FILE]
+     *   - harvest first, then spend the search budget on the highest-scoring companies.
+     *     With --snapshot the harvest is saved to FILE, and later runs with the same query
+     *     and pages load it from there instead of querying Bolagsfakta again, for up to
+     *     24 hours; after that the harvest is fetched and saved again.
+     */
+    private static int runPrioritizedCommand(String[] args) {
+        int[] employeeFilter = {0, 1};
+        List<String> positional = new ArrayList<>();
+        int workers = 4;
+        int maxApiCalls = Integer.MAX_VALUE;
+        Path snapshotFile = null;
+
+        try {
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("--workers") && i + 1 < args.length) {
+                    workers = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--max-calls") && i + 1 < args.length) {
+                    maxApiCalls = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--snapshot") && i + 1 < args.length) {
+                    snapshotFile = Paths.get(args[++i]);
+                } else {
+                    positional.add(args[i]);
+                }
+            }
+            if (positional.isEmpty()) {
+                System.err.println("Usage: prioritized <query> [pages] [--workers N] [--max-calls N] [--snapshot FILE]");
+                return 2;
+            }
+            int pages = positional.size() > 1 ? Integer.parseInt(positional.get(1)) : 1;
+
+            String snapshotSource = "query=" + positional.get(0) + "; pages=" + pages + "; employees="
+                    + Arrays.stream(employeeFilter).mapToObj(String::valueOf).collect(Collectors.joining(","));
+            try (DatabaseService storage = new DatabaseService();
+                 CompanySnapshot snapshot = openReusableSnapshot(snapshotFile, snapshotSource)) {
+                Map<String, String> checkedAt = new HashMap<>();
+                for (Company company : storage.getAllCompanies()) {
+                    checkedAt.put(company.getName(), company.getCheckedAt());
+                }
+                LeadScorer scorer = LeadScorer.configured(
+                        company -> LeadScorer.daysSince(checkedAt.get(company.getCompanyName())));
+
+                WebsiteChecker checker = forCommand(maxApiCalls);
+                checker.setStorage(storage);
+                Iterable<CompanyRecord> companies;
+                if (snapshot != null) {
+                    Log.info("Loaded %d companies from %s, checking by priority...", snapshot.size(), snapshotFile);
+                    companies = snapshot;
+                } else {
+                    CompactCompanyStore harvested = checker.harvestAll(positional.get(0), employeeFilter, pages);
+                    if (snapshotFile != null) {
+                        CompanySnapshot.writeCompanies(snapshotFile, harvested, snapshotSource);
+                        Log.info("Saved the harvest to %s", snapshotFile);
+                    }
+                    Log.info("Harvested %d companies, checking by priority...", harvested.size());
+                    companies = harvested;
+                }
+
+                List<CheckResult> results = checker.checkByPriority(companies, scorer, workers, Integer.MAX_VALUE);
+                checker.printSummary(results);
+                checker.saveResults(storage, results);
+            }
+            return 0;
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return 2;
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * The snapshot in file if it was written from the same harvest and isn't older than
+     * SNAPSHOT_MAX_AGE, else null so the harvest is fetched again
+     */
+    private static CompanySnapshot openReusableSnapshot(Path file, String source) throws IOException {
+        if (file == null || !Files.exists(file)) {
+            return null;
+        }
+        Duration age = Duration.between(Files.getLastModifiedTime(file).toInstant(), Instant.now());
+        if (age.compareTo(SNAPSHOT_MAX_AGE) > 0) {
+            Log.info("Snapshot %s is %d hours old, harvesting again", file, age.toHours());
+            return null;
+        }
+        CompanySnapshot snapshot;
+        try {
+            snapshot = CompanySnapshot.open(file);
+        } catch (IOException e) {
+            Log.warn("Can't use snapshot %s, harvesting again: %s", file, e.getMessage());
+            return null;
+        }
+        if (!source.equals(snapshot.getSource())) {
+            Log.info("Snapshot %s is from another harvest (%s), harvesting again", file, snapshot.getSource());
+            snapshot.close();
+            return null;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Fetch up to the given number of result pages. The whole harvest is held until
+     * checking starts, so it is kept columnar.
+     */
+    private CompactCompanyStore harvestAll(String searchQuery, int[] employeeFilter, int pages) throws IOException {
+        CompactCompanyStore companies = new CompactCompanyStore();
+        for (int page = 1; page <= pages; page++) {
+            int currentPage = page;
+            BolagsfaktaService.SearchResponse response = bolagsfaktaRetryPolicy.execute(() ->
+                bolagsfaktaService.searchCompanies(searchQuery, currentPage, employeeFilter));
+            companies.addAll(response.getCompanies());
+            if (!response.isHasNextPage()) {
+                break;
+            }
+        }
+        companies.trimToSize();
+        return companies;
+    }
+
+    /**
+     * timeboxed <deadline> <query> [pages]
+     *   - harvest and check until the deadline; the next run with the same query resumes
+     *     from remaining_harvest.txt
+     */
+    private static int runTimeboxedCommand(String[] args) {
+        int[] employeeFilter = {0, 1};
+
+        if (args.length < 3) {
+            System.err.println("Usage: timeboxed <HH:mm|yyyy-MM-ddTHH:mm|90m> <query> [pages]");
+            return 2;
+        }
+
+        try (DatabaseService storage = new DatabaseService()) {
+            Deadline deadline = Deadline.parse(args[1], Duration.ofSeconds(2));
+            int pages = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+
+            WebsiteChecker checker = forCommand(Integer.MAX_VALUE);
+            checker.setStorage(storage);
+            checker.setDeadline(deadline, Paths.get(REMAINING_HARVEST_FILE));
+
+            List<CheckResult> results = checker.harvestOrResume(args[2], employeeFilter, pages, Integer.MAX_VALUE);
+            checker.printSummary(results);
+            System.out.printf("Average check time %d ms, %.1f checks/min%n",
+                    deadline.getEstimatedCheckTime().toMillis(), deadline.getThroughputPerMinute());
+            return deadline.isClosed() ? BatchRunner.EXIT_DEADLINE_REACHED : 0;
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return 2;
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * incremental <query> [pages]   - check only companies that are new or changed since the last run
+     */
+    private static int runIncrementalCommand(String[] args) {
+        int[] employeeFilter = {0, 1};
+
+        if (args.length < 2) {
+            System.err.println("Usage: incremental <query> [pages]");
+            return 2;
+        }
+        int pages = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+        try (DatabaseService storage = new DatabaseService()) {
+            HarvestFingerprints fingerprints = new HarvestFingerprints();
+            AtomicInteger unchanged = new AtomicInteger();
+            Predicate<BolagsfaktaCompany> newOrChanged = company -> {
+                if (fingerprints.isNewOrChanged(company)) {
+                    return true;
+                }
+                unchanged.incrementAndGet();
+                return false;
+            };
+
+            WebsiteChecker checker = forCommand(Integer.MAX_VALUE);
+            checker.setStorage(storage);
+            List<CheckResult> results = checker.findCompaniesWithoutWebsite(
+                args[1], employeeFilter, pages, Integer.MAX_VALUE, newOrChanged);
+            checker.printSummary(results);
+
+            fingerprints.recordAll(results);
+            fingerprints.save();
+            System.out.println("Skipped " + unchanged.get() + " unchanged companies (" +
+                    fingerprints.size() + " fingerprints stored)");
+            return 0;
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * enqueue <query> [pages]   - harvest companies into the shared job queue
+     * worker [batchSize]        - check queued companies until the queue is empty
+     */
+    private static int runQueueCommand(String[] args) {
+        int[] employeeFilter = {0, 1};
+
+        try (JobQueue queue = new JobQueue(); DatabaseService storage = new DatabaseService()) {
+            WebsiteChecker checker = forCommand(Integer.MAX_VALUE);
+            checker.setStorage(storage);
+
+            if (args[0].equals("enqueue")) {
+                if (args.length < 2) {
+                    System.err.println("Usage: enqueue <query> [pages]");
+                    return 2;
+                }
+                int pages = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+                int queued = checker.enqueueHarvest(queue, args[1], employeeFilter, pages);
+                Log.flush();
+                System.out.println("Queued " + queued + " new companies. Queue: " + queue.countByState());
+                return 0;
+            }
+
+            int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+            String workerId = ManagementFactory.getRuntimeMXBean().getName();
+            Log.info("Worker %s starting (batch size %d)", workerId, batchSize);
+            List<CheckResult> results = checker.runWorker(queue, storage, workerId, batchSize);
+            checker.printSummary(results);
+            System.out.println("Queue: " + queue.countByState());
+            return 0;
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            return 1;
+        }
     }
 }
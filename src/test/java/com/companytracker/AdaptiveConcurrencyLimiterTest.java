@@ -0,0 +1,79 @@
+package com.companytracker;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class AdaptiveConcurrencyLimiterTest {
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static void complete(AdaptiveConcurrencyLimiter limiter, long latencyNanos, boolean dropped) throws Exception {
+        limiter.acquire();
+        limiter.release(latencyNanos, dropped);
+    }
+
+    @Test
+    public void growsByAboutOnePerWindowOfFastCalls() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 2, 1, 32);
+        complete(limiter, FAST, false);
+        assertEquals(2, limiter.getLimit());
+        for (int i = 0; i < 3; i++) {
+            complete(limiter, FAST, false);
+        }
+        assertEquals(3, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void halvesOnThrottling() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 8, 1, 32);
+        try {
+            limiter.execute(() -> {
+                throw new UpstreamException("Too Many Requests", 429, "1");
+            });
+            fail();
+        } catch (UpstreamException e) {
+            assertEquals(4, limiter.getLimit());
+        }
+
+        // A client error says nothing about load
+        try {
+            limiter.execute(() -> {
+                throw new UpstreamException("Bad Request", 400, null);
+            });
+            fail();
+        } catch (UpstreamException e) {
+            assertEquals(4, limiter.getLimit());
+        }
+    }
+
+    @Test
+    public void backsOffGentlyWhenLatencyRises() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 10, 1, 32);
+        complete(limiter, FAST, false);
+        assertEquals(10, limiter.getLimit());
+        complete(limiter, SLOW, false);
+        assertEquals(9, limiter.getLimit());
+    }
+
+    @Test
+    public void staysBetweenFloorAndCeiling() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 2, 1, 3);
+        for (int i = 0; i < 50; i++) {
+            complete(limiter, FAST, false);
+        }
+        assertEquals(3, limiter.getLimit());
+
+        for (int i = 0; i < 5; i++) {
+            complete(limiter, FAST, true);
+        }
+        assertEquals(1, limiter.getLimit());
+        // At the floor, one call can still go out
+        limiter.acquire();
+        assertEquals(1, limiter.getInFlight());
+    }
+}
@@ -0,0 +1,61 @@
+package com.companytracker;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ApiCallBudgetTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void stopsAtTheRunLimit() throws Exception {
+        ApiCallBudget budget = new ApiCallBudget(3, 100, folder.getRoot().toPath().resolve("budget.properties"));
+        assertTrue(budget.tryAcquire());
+        assertTrue(budget.tryAcquire());
+        assertTrue(budget.tryAcquire());
+        assertFalse(budget.tryAcquire());
+        assertTrue(budget.isExhausted());
+
+        budget.release();
+        assertEquals(2, budget.getUsedThisRun());
+        assertTrue(budget.tryAcquire());
+        budget.close();
+    }
+
+    @Test
+    public void budgetsSharingAStateFileNeverExceedTheDailyLimit() throws Exception {
+        Path state = folder.getRoot().toPath().resolve("budget.properties");
+        ApiCallBudget first = new ApiCallBudget(Integer.MAX_VALUE, 25, state);
+        ApiCallBudget second = new ApiCallBudget(Integer.MAX_VALUE, 25, state);
+
+        int granted = 0;
+        for (int i = 0; i < 40; i++) {
+            granted += first.tryAcquire() ? 1 : 0;
+            granted += second.tryAcquire() ? 1 : 0;
+        }
+        assertEquals(25, granted);
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void closeReturnsUnusedClaimedCalls() throws Exception {
+        Path state = folder.getRoot().toPath().resolve("budget.properties");
+        ApiCallBudget first = new ApiCallBudget(Integer.MAX_VALUE, 100, state);
+        assertTrue(first.tryAcquire());
+        assertTrue(first.tryAcquire());
+        first.close();
+
+        ApiCallBudget next = new ApiCallBudget(Integer.MAX_VALUE, 100, state);
+        assertEquals(2, next.getUsedToday());
+        assertEquals(98, next.getRemaining());
+        next.close();
+    }
+}
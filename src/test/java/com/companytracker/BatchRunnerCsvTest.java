@@ -0,0 +1,91 @@
+package com.companytracker;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BatchRunnerCsvTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DatabaseService storage;
+    private ApiCallBudget budget;
+    private BatchRunner runner;
+
+    @Before
+    public void openStorage() throws Exception {
+        storage = new DatabaseService(folder.getRoot().toPath().resolve("companies.db").toString());
+        budget = new ApiCallBudget(0, 0, folder.getRoot().toPath().resolve("budget.properties"));
+        runner = new BatchRunner(storage, new SearchService(null), budget);
+    }
+
+    @After
+    public void closeStorage() throws Exception {
+        budget.close();
+        storage.close();
+    }
+
+    private int importLines(String... lines) throws Exception {
+        Path file = folder.getRoot().toPath().resolve("in.csv");
+        Files.write(file, List.of(lines), StandardCharsets.UTF_8);
+        return runner.run(new String[]{"import", file.toString(), "--quiet"});
+    }
+
+    @Test
+    public void quotedFieldsKeepCommasAndQuotes() {
+        assertEquals(List.of("1", "Svea Bygg, Väst AB", "", "say \"hi\""),
+                BatchRunner.parseCsvLine("1,\"Svea Bygg, Väst AB\",,\"say \"\"hi\"\"\""));
+        assertEquals(List.of(""), BatchRunner.parseCsvLine(""));
+
+        String name = "Frisör \"Åsa\", Uppsala";
+        assertEquals(List.of(name), BatchRunner.parseCsvLine(BatchRunner.escapeCsv(name)));
+        assertEquals("", BatchRunner.escapeCsv(null));
+    }
+
+    @Test
+    public void importSkipsBlankLinesAndRowsWithoutAName() throws Exception {
+        int exitCode = importLines(
+                "\"Name\",website,has_website",
+                "\"Svea Bygg, Väst AB\",https://sveabygg.se,true",
+                "",
+                "   ",
+                ",https://nameless.se,1",
+                "Norrlands Frisör HB,,0");
+        assertEquals(BatchRunner.EXIT_OK, exitCode);
+
+        assertEquals(2, storage.getAllCompanies().size());
+        Company svea = storage.getCompanyByName("Svea Bygg, Väst AB");
+        assertEquals("https://sveabygg.se", svea.getWebsite());
+        assertTrue(svea.isHasWebsite());
+        Company frisor = storage.getCompanyByName("Norrlands Frisör HB");
+        assertNull(frisor.getWebsite());
+        assertFalse(frisor.isHasWebsite());
+    }
+
+    @Test
+    public void aMissingHeaderIsAUsageError() throws Exception {
+        int exitCode = importLines(
+                "Svea Bygg AB,https://sveabygg.se,true",
+                "Norrlands Frisör HB,,false");
+        assertEquals(BatchRunner.EXIT_USAGE, exitCode);
+        assertTrue(storage.getAllCompanies().isEmpty());
+    }
+
+    @Test
+    public void anEmptyFileImportsNothing() throws Exception {
+        assertEquals(BatchRunner.EXIT_OK, importLines());
+        assertTrue(storage.getAllCompanies().isEmpty());
+    }
+}
@@ -0,0 +1,110 @@
+package com.companytracker;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CircuitBreakerTest {
+
+    /**
+     * Opens once half of at least two calls failed, then lets one probe through
+     */
+    private static CircuitBreaker breaker(Duration openDuration) {
+        return new CircuitBreaker("test", 4, 2, 0.5, Duration.ofMinutes(1), 1.0, openDuration, 1);
+    }
+
+    private static void failWith(CircuitBreaker breaker, Exception error) {
+        try {
+            breaker.execute(() -> {
+                throw error;
+            });
+            fail();
+        } catch (Exception e) {
+            // Expected
+        }
+    }
+
+    private static CompletableFuture<String> blockedCall(CircuitBreaker breaker, CountDownLatch started,
+                                                         CountDownLatch release) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return breaker.execute(() -> {
+                    started.countDown();
+                    release.await();
+                    return "ok";
+                });
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    @Test
+    public void opensAfterFailuresAndRejectsCalls() throws Exception {
+        CircuitBreaker breaker = breaker(Duration.ofMinutes(1));
+        failWith(breaker, new IOException("connection reset"));
+        failWith(breaker, new IOException("connection reset"));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        try {
+            breaker.execute(() -> "not called");
+            fail();
+        } catch (CircuitOpenException e) {
+            assertEquals("test", e.getUpstream());
+        }
+    }
+
+    @Test
+    public void runtimeErrorsCountAsFailures() {
+        CircuitBreaker breaker = breaker(Duration.ofMinutes(1));
+        failWith(breaker, new IllegalStateException("garbled body"));
+        failWith(breaker, new IllegalStateException("garbled body"));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void clientErrorsDoNotOpenTheCircuit() {
+        CircuitBreaker breaker = breaker(Duration.ofMinutes(1));
+        for (int i = 0; i < 4; i++) {
+            failWith(breaker, new UpstreamException("bad request", 400, null));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void aLateCallFromBeforeTheCircuitOpenedIsNotAProbe() throws Exception {
+        CircuitBreaker breaker = breaker(Duration.ZERO);
+        CountDownLatch lateStarted = new CountDownLatch(1);
+        CountDownLatch releaseLate = new CountDownLatch(1);
+        CompletableFuture<String> late = blockedCall(breaker, lateStarted, releaseLate);
+        assertTrue(lateStarted.await(5, TimeUnit.SECONDS));
+
+        failWith(breaker, new IOException("connection reset"));
+        failWith(breaker, new IOException("connection reset"));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        // The open period is already over, so this call is the half-open probe
+        CountDownLatch probeStarted = new CountDownLatch(1);
+        CountDownLatch releaseProbe = new CountDownLatch(1);
+        CompletableFuture<String> probe = blockedCall(breaker, probeStarted, releaseProbe);
+        assertTrue(probeStarted.await(5, TimeUnit.SECONDS));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        // Succeeding now must not close the circuit in the probe's place
+        releaseLate.countDown();
+        assertEquals("ok", late.get(5, TimeUnit.SECONDS));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        releaseProbe.countDown();
+        assertEquals("ok", probe.get(5, TimeUnit.SECONDS));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+}
@@ -0,0 +1,125 @@
+package com.companytracker;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class CompactCompanyStoreTest {
+
+    private static BolagsfaktaCompany company(String orgNr, String name) {
+        BolagsfaktaCompany company = new BolagsfaktaCompany();
+        company.setOrgNr(orgNr);
+        company.setCompanyName(name);
+        company.setCompanyPopularName(name + " Popular");
+        company.setAddress("Storgatan 1");
+        company.setCompanyUrl("https://example.se");
+        company.setPostNr("111 22");
+        company.setPostOrt("Stockholm");
+        company.setSniText("Hårvård");
+        company.setBolagsform("Aktiebolag");
+        company.setCompanyCode(42);
+        company.setResponsibleCount(3);
+        company.setOmsattning(1_234_567.5);
+        company.setAntalAnstallda(16_777_217.25);
+        return company;
+    }
+
+    @Test
+    public void rowsReadBackEveryField() {
+        CompactCompanyStore store = new CompactCompanyStore();
+        BolagsfaktaCompany original = company("556123-4567", "Frisör Åsa AB");
+        store.add(original);
+
+        CompanyRecord row = store.get(0);
+        assertEquals("556123-4567", row.getOrgNr());
+        assertEquals("Frisör Åsa AB", row.getCompanyName());
+        assertEquals("Frisör Åsa AB Popular", row.getCompanyPopularName());
+        assertEquals("Storgatan 1", row.getAddress());
+        assertEquals("https://example.se", row.getCompanyUrl());
+        assertEquals("111 22", row.getPostNr());
+        assertEquals("Stockholm", row.getPostOrt());
+        assertEquals("Hårvård", row.getSniText());
+        assertEquals("Aktiebolag", row.getBolagsform());
+        assertEquals(42, row.getCompanyCode());
+        assertEquals(3, row.getResponsibleCount());
+        assertEquals(1_234_567.5, row.getOmsattning(), 0);
+        // Would round to 16777216 as a float
+        assertEquals(16_777_217.25, row.getAntalAnstallda(), 0);
+    }
+
+    @Test
+    public void nullsAndIrregularOrgNrsSurvive() {
+        CompactCompanyStore store = new CompactCompanyStore();
+        BolagsfaktaCompany sparse = new BolagsfaktaCompany();
+        sparse.setOrgNr("SE-12");
+        store.add(sparse);
+
+        CompanyRecord row = store.get(0);
+        assertEquals("SE-12", row.getOrgNr());
+        assertNull(row.getCompanyName());
+        assertNull(row.getPostOrt());
+        assertNull(row.getCompanyUrl());
+    }
+
+    @Test
+    public void orgNrsPackBothForms() {
+        assertEquals("556123-4567", CompactCompanyStore.unpackOrgNr(CompactCompanyStore.packOrgNr("5561234567")));
+        assertEquals("16556123-4567", CompactCompanyStore.unpackOrgNr(CompactCompanyStore.packOrgNr("16556123-4567")));
+        assertEquals(-1L, CompactCompanyStore.packOrgNr("12345"));
+        assertEquals(-1L, CompactCompanyStore.packOrgNr(null));
+    }
+
+    @Test
+    public void growsAgainAfterTrimmingEmptyOrSingleRowStores() {
+        for (int initialRows = 0; initialRows <= 1; initialRows++) {
+            CompactCompanyStore store = new CompactCompanyStore();
+            for (int i = 0; i < initialRows; i++) {
+                store.add(company("556000-000" + i, "Bolag " + i));
+            }
+            store.trimToSize();
+            for (int i = initialRows; i < 40; i++) {
+                store.add(company(String.format("556000-%04d", i), "Bolag " + i));
+            }
+            assertEquals(40, store.size());
+            assertEquals("Bolag 39", store.get(39).getCompanyName());
+            assertEquals("556000-0039", store.get(39).getOrgNr());
+        }
+    }
+
+    @Test
+    public void iteratorAndMaterializedCopiesMatch() {
+        CompactCompanyStore store = new CompactCompanyStore();
+        store.addAll(List.of(company("556000-0001", "Ett AB"), company("556000-0002", "Två AB")));
+
+        List<String> names = new ArrayList<>();
+        for (CompanyRecord row : store) {
+            names.add(row.getCompanyName());
+        }
+        assertEquals(List.of("Ett AB", "Två AB"), names);
+
+        BolagsfaktaCompany copy = store.toCompany(1);
+        copy.setCompanyName("Changed");
+        assertEquals("Två AB", store.get(1).getCompanyName());
+    }
+
+    @Test
+    public void rowsAreViewsNotCompanies() {
+        CompactCompanyStore store = new CompactCompanyStore();
+        store.add(company("556000-0001", "Ett AB"));
+
+        // A row holds its row number, not a company's fields; toCompany copies them out
+        CompanyRecord row = store.get(0);
+        assertFalse(row instanceof BolagsfaktaCompany);
+        BolagsfaktaCompany company = row.toCompany();
+        assertNotSame(company, row.toCompany());
+        assertEquals("Ett AB", company.getCompanyName());
+        assertSame(company, company.toCompany());
+    }
+}
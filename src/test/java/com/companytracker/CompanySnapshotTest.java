@@ -0,0 +1,107 @@
+package com.companytracker;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CompanySnapshotTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static WebsiteChecker.CheckResult result(String orgNr, String name, String url) {
+        BolagsfaktaCompany company = new BolagsfaktaCompany();
+        company.setOrgNr(orgNr);
+        company.setCompanyName(name);
+        company.setBolagsform("Aktiebolag");
+        company.setAntalAnstallda(16_777_217.25);
+
+        WebsiteChecker.CheckResult result = new WebsiteChecker.CheckResult();
+        result.setCompany(company);
+        result.setHasWebsite(url != null);
+        result.setMatchedUrl(url);
+        result.setResolvedBy(WebsiteChecker.ResolutionTier.SEARCH);
+        return result;
+    }
+
+    @Test
+    public void resultsReadBackThroughTheMapping() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("harvest.snapshot");
+        CompanySnapshot.write(file, List.of(
+                result("556123-4567", "Frisör Åsa AB", "https://frisorasa.se"),
+                result("SE-12", "Bygg HB", null)));
+
+        try (CompanySnapshot snapshot = CompanySnapshot.open(file)) {
+            assertEquals(2, snapshot.size());
+            CompanySnapshot.Record first = snapshot.get(0);
+            assertEquals("556123-4567", first.getOrgNr());
+            assertEquals("Frisör Åsa AB", first.getCompanyName());
+            assertEquals(16_777_217.25, first.getAntalAnstallda(), 0);
+            assertTrue(first.isHasWebsite());
+            assertEquals("https://frisorasa.se", first.getMatchedUrl());
+            assertEquals(WebsiteChecker.ResolutionTier.SEARCH, first.getResolvedBy());
+
+            CompanySnapshot.Record second = snapshot.get(1);
+            assertEquals("SE-12", second.getOrgNr());
+            assertEquals("Aktiebolag", second.getBolagsform());
+            assertTrue(second.isChecked());
+            assertFalse(second.isHasWebsite());
+            assertNull(second.getMatchedUrl());
+        }
+    }
+
+    @Test
+    public void rewritingReplacesTheFileAndKeepsItsSource() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("harvest.snapshot");
+        CompanySnapshot.write(file, List.of(result("556123-4567", "Frisör Åsa AB", null)));
+
+        try (CompanySnapshot old = CompanySnapshot.open(file)) {
+            assertNull(old.getSource());
+            CompanySnapshot.writeCompanies(file, List.of(result("556000-0001", "Ett AB", null).getCompany(),
+                    result("556000-0002", "Två AB", null).getCompany()), "query=Frisyr; pages=2");
+            // A reader of the old file keeps its mapping; the new file only appears once complete
+            assertEquals("Frisör Åsa AB", old.get(0).getCompanyName());
+        }
+        try (CompanySnapshot snapshot = CompanySnapshot.open(file)) {
+            assertEquals(2, snapshot.size());
+            assertEquals("query=Frisyr; pages=2", snapshot.getSource());
+            assertFalse(snapshot.get(1).isChecked());
+            assertEquals("Två AB", snapshot.get(1).getCompanyName());
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder.getRoot().toPath())) {
+            int count = 0;
+            for (Path ignored : files) {
+                count++;
+            }
+            assertEquals("Temporary files left behind", 1, count);
+        }
+    }
+
+    @Test
+    public void truncatedFilesAreRejectedOnOpen() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("harvest.snapshot");
+        CompanySnapshot.write(file, List.of(result("556123-4567", "Frisör Åsa AB", null)));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(60);
+        }
+
+        try (CompanySnapshot snapshot = CompanySnapshot.open(file)) {
+            fail("Opened a truncated snapshot with " + snapshot.size() + " records");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("Truncated"));
+        }
+    }
+}
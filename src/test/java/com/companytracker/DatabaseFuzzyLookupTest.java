@@ -0,0 +1,120 @@
+package com.companytracker;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DatabaseFuzzyLookupTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String dbPath;
+    private DatabaseService storage;
+
+    @Before
+    public void openDatabase() throws Exception {
+        dbPath = folder.getRoot().toPath().resolve("companies.db").toString();
+        storage = new DatabaseService(dbPath);
+    }
+
+    @After
+    public void closeDatabase() throws Exception {
+        storage.close();
+    }
+
+    private void add(String... names) throws Exception {
+        for (String name : names) {
+            storage.addCompany(new Company(name));
+        }
+    }
+
+    private List<String> find(String query, int limit) throws Exception {
+        List<String> names = new ArrayList<>();
+        for (Company company : storage.findCompaniesFuzzy(query, limit)) {
+            names.add(company.getName());
+        }
+        return names;
+    }
+
+    @Test
+    public void matchesNormalizedWordsAndPrefixes() throws Exception {
+        add("K Frisör AB", "Frisörsalongen Åsa HB", "Bygg & Måleri i Täby AB");
+
+        // Names with only some of the words fill up the rest of the limit
+        assertEquals(List.of("K Frisör AB", "Frisörsalongen Åsa HB"), find("Frisor K", 10));
+        assertEquals(List.of("K Frisör AB"), find("Frisor K", 1));
+        assertEquals(List.of("Bygg & Måleri i Täby AB"), find("maleri taby", 10));
+        // "fris" is a prefix of both names' first words
+        assertEquals(2, find("FRIS", 10).size());
+    }
+
+    @Test
+    public void namesWithEveryWordComeBeforeNamesWithSome() throws Exception {
+        add("Täby Bygg AB", "Täby Måleri AB", "Måleri Norr AB", "Täby Måleri & Bygg AB");
+
+        List<String> names = find("Täby Måleri", 10);
+        assertEquals(4, names.size());
+        assertEquals(Set.of("Täby Måleri AB", "Täby Måleri & Bygg AB"), new HashSet<>(names.subList(0, 2)));
+        assertEquals(4, new HashSet<>(names).size());
+        assertEquals(2, find("Täby Måleri", 2).size());
+    }
+
+    @Test
+    public void queriesWithoutWordsOrWithFtsSyntaxAreSafe() throws Exception {
+        add("AND Konsult AB", "Near Bygg AB");
+
+        assertTrue(find("AB", 10).isEmpty());
+        assertTrue(find("  ", 10).isEmpty());
+        assertEquals(List.of("AND Konsult AB"), find("\"and\" (konsult", 10));
+        assertEquals(List.of("Near Bygg AB"), find("NEAR*", 10));
+        assertEquals("\"frisor\"* AND \"k\"", DatabaseService.toFtsQuery("Frisör K AB", " AND "));
+    }
+
+    @Test
+    public void deletedCompaniesLeaveTheIndex() throws Exception {
+        add("Kvarnbo Bygg AB", "Kvarnbo Bygg Aktiebolag");
+        Company keeper = storage.getCompanyByName("Kvarnbo Bygg AB");
+        storage.mergeDuplicates(keeper, List.of(storage.getCompanyByName("Kvarnbo Bygg Aktiebolag")));
+
+        assertEquals(List.of("Kvarnbo Bygg AB"), find("Kvarnbo", 10));
+    }
+
+    @Test
+    public void mergedShardRowsAreIndexed() throws Exception {
+        String shardPath = folder.getRoot().toPath().resolve("shard.db").toString();
+        try (DatabaseService shard = new DatabaseService(shardPath)) {
+            shard.addCompany(new Company("Tallbo Måleri AB"));
+        }
+        storage.mergeFrom(shardPath);
+
+        assertEquals(List.of("Tallbo Måleri AB"), find("tallbo", 10));
+    }
+
+    @Test
+    public void existingRowsAreIndexedWhenTheIndexIsCreated() throws Exception {
+        storage.close();
+        String oldPath = folder.getRoot().toPath().resolve("old.db").toString();
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + oldPath);
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE companies (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL UNIQUE, " +
+                    "website TEXT, has_website INTEGER DEFAULT 0, created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+            stmt.execute("INSERT INTO companies(name) VALUES ('Östra Hamnens Fisk AB'), ('Tallbo Måleri AB')");
+        }
+
+        storage = new DatabaseService(oldPath);
+        assertEquals(List.of("Östra Hamnens Fisk AB"), find("ostra hamn", 10));
+    }
+}
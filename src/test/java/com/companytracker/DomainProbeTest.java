@@ -0,0 +1,110 @@
+package com.companytracker;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DomainProbeTest {
+
+    /**
+     * Answers each domain with its final URL after the given delay; domains not listed don't answer
+     */
+    private static DomainProbe.HttpTarget sites(Map<String, String> finalUrls, Map<String, Long> delays) {
+        return domain -> {
+            try {
+                Thread.sleep(delays.getOrDefault(domain, 0L));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            return finalUrls.get(domain);
+        };
+    }
+
+    @Test
+    public void candidatesComeFromTheNormalizedName() {
+        assertEquals(List.of("kfrisor.se", "kfrisor.com", "kfrisor.nu", "k-frisor.se", "k-frisor.com", "k-frisor.nu"),
+                DomainProbe.candidateDomains("K Frisör AB"));
+        assertEquals(List.of("frisyr.se", "frisyr.com", "frisyr.nu"), DomainProbe.candidateDomains("Frisyr AB"));
+        assertTrue(DomainProbe.candidateDomains("AB").isEmpty());
+    }
+
+    @Test
+    public void theFirstMatchingAnswerWins() {
+        DomainProbe probe = new DomainProbe(host -> true, sites(
+                Map.of("kfrisor.se", "https://kfrisor.se/",
+                        "kfrisor.com", "https://kfrisor.com/",
+                        // Parked domain redirecting somewhere else: answers first but doesn't match
+                        "kfrisor.nu", "https://parkering.se/"),
+                Map.of("kfrisor.se", 300L, "kfrisor.com", 50L)), 2000);
+
+        CompanyNameMatcher.MatchResult result = probe.probe("K Frisör AB");
+        assertTrue(result.isMatched());
+        assertEquals("https://kfrisor.com/", result.getMatchedUrl());
+    }
+
+    @Test
+    public void givesUpAtTheTimeout() {
+        DomainProbe probe = new DomainProbe(host -> true,
+                sites(Map.of("frisyr.se", "https://frisyr.se/"), Map.of("frisyr.se", 5000L)), 200);
+
+        long start = System.nanoTime();
+        CompanyNameMatcher.MatchResult result = probe.probe("Frisyr AB");
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        assertFalse(result.isMatched());
+        assertNull(result.getMatchedUrl());
+        assertTrue("Took " + elapsedMillis + " ms", elapsedMillis < 2000);
+    }
+
+    @Test
+    public void queuedUrlChecksGetTheirFullTimeout() {
+        // Each answers after 300 ms; the second wave of checks only starts once the first is done
+        DomainProbe probe = new DomainProbe(host -> true, domain -> {
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "https://" + domain + "/";
+        }, 500);
+
+        List<CompletableFuture<String>> checks = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            checks.add(probe.checkUrlAsync("https://frisyr" + i + ".se"));
+        }
+        for (int i = 0; i < checks.size(); i++) {
+            assertEquals("https://frisyr" + i + ".se/", checks.get(i).join());
+        }
+    }
+
+    @Test
+    public void dnsAnswersAreCached() {
+        Map<String, AtomicInteger> lookups = new ConcurrentHashMap<>();
+        DomainProbe probe = new DomainProbe(host -> {
+            lookups.computeIfAbsent(host, key -> new AtomicInteger()).incrementAndGet();
+            // Only frisyr.com exists; a negative answer is cached too
+            return host.equals("frisyr.com");
+        }, sites(Map.of(), Map.of()), 2000);
+
+        probe.probe("Frisyr AB");
+        probe.probe("Frisyr AB");
+        assertEquals(3, lookups.size());
+        for (AtomicInteger count : lookups.values()) {
+            assertEquals(1, count.get());
+        }
+
+        probe.clearDnsCache();
+        probe.probe("Frisyr AB");
+        assertEquals(2, lookups.get("frisyr.se").get());
+    }
+}
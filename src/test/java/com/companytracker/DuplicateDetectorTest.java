@@ -0,0 +1,86 @@
+package com.companytracker;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DuplicateDetectorTest {
+
+    private static List<Company> companies(String... names) {
+        List<Company> companies = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            Company company = new Company(names[i]);
+            company.setId(i + 1);
+            companies.add(company);
+        }
+        return companies;
+    }
+
+    private static List<List<String>> names(List<List<Company>> clusters) {
+        List<List<String>> names = new ArrayList<>();
+        for (List<Company> cluster : clusters) {
+            List<String> clusterNames = new ArrayList<>();
+            for (Company company : cluster) {
+                clusterNames.add(company.getName());
+            }
+            names.add(clusterNames);
+        }
+        return names;
+    }
+
+    @Test
+    public void spellingVariantsCluster() {
+        List<List<Company>> clusters = new DuplicateDetector().findClusters(
+                companies("K Frisör AB", "k frisor", "Svea Bygg AB"));
+        assertEquals(List.of(List.of("K Frisör AB", "k frisor")), names(clusters));
+    }
+
+    @Test
+    public void keeperWithAWebsiteComesFirst() {
+        List<Company> companies = companies("Norrlands Frisör", "Norrlands Frisör AB");
+        companies.get(1).setHasWebsite(true);
+        List<List<Company>> clusters = new DuplicateDetector().findClusters(companies);
+        assertEquals(List.of(List.of("Norrlands Frisör AB", "Norrlands Frisör")), names(clusters));
+    }
+
+    @Test
+    public void differentLegalFormsAreDifferentCompanies() {
+        assertTrue(new DuplicateDetector().findClusters(
+                companies("Svea Bygg AB", "Svea Bygg HB", "Svea Bygg Handelsbolag KB")).isEmpty());
+        assertEquals(List.of(List.of("Svea Bygg AB", "Svea Bygg Aktiebolag")), names(new DuplicateDetector()
+                .findClusters(companies("Svea Bygg AB", "Svea Bygg Aktiebolag"))));
+    }
+
+    @Test
+    public void aNameWithoutAFormDoesNotBridgeTwoForms() {
+        List<List<Company>> clusters = new DuplicateDetector().findClusters(
+                companies("Svea Bygg", "Svea Bygg AB", "Svea Bygg HB"));
+        assertEquals(List.of(List.of("Svea Bygg", "Svea Bygg AB")), names(clusters));
+    }
+
+    @Test
+    public void emptyAndShortNamesAreSkipped() {
+        assertTrue(new DuplicateDetector().findClusters(
+                companies("AB", "HB", "Aktiebolaget", "ICA AB", "Ica", "!!")).isEmpty());
+    }
+
+    @Test
+    public void membersMustMatchTheKeeperNotJustEachOther() {
+        // Each name is within 0.5 of its neighbour, but the ends of the chain are not
+        List<List<Company>> clusters = new DuplicateDetector(0.5).findClusters(
+                companies("abcdefgh", "abcdefghij", "cdefghijkl", "efghijklmn"));
+        for (List<Company> cluster : clusters) {
+            Company keeper = cluster.get(0);
+            int[] keeperShingles = DuplicateDetector.shingles(keeper.getName());
+            for (Company member : cluster) {
+                assertTrue(member.getName() + " joined " + keeper.getName(), DuplicateDetector.jaccard(
+                        keeperShingles, DuplicateDetector.shingles(member.getName())) >= 0.5);
+            }
+        }
+        assertEquals(List.of(List.of("abcdefgh", "abcdefghij"), List.of("cdefghijkl", "efghijklmn")), names(clusters));
+    }
+}
@@ -0,0 +1,138 @@
+package com.companytracker;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HarvestFingerprintsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static BolagsfaktaCompany company(String orgNr, String name) {
+        BolagsfaktaCompany company = new BolagsfaktaCompany();
+        company.setOrgNr(orgNr);
+        company.setCompanyName(name);
+        company.setAddress("Storgatan 1");
+        company.setSniText("Hårvård");
+        company.setCompanyUrl("https://www.bolagsfakta.se/" + orgNr);
+        return company;
+    }
+
+    private Path file() {
+        return folder.getRoot().toPath().resolve("fingerprints.bin");
+    }
+
+    @Test
+    public void onlyNewOrChangedCompaniesNeedChecking() {
+        HarvestFingerprints fingerprints = new HarvestFingerprints(file());
+        BolagsfaktaCompany company = company("556123-4567", "Frisör Åsa AB");
+        assertTrue(fingerprints.isNewOrChanged(company));
+
+        fingerprints.record(company);
+        assertFalse(fingerprints.isNewOrChanged(company));
+        // Other fields don't count
+        company.setAntalAnstallda(12);
+        assertFalse(fingerprints.isNewOrChanged(company));
+
+        company.setAddress("Storgatan 2");
+        assertTrue(fingerprints.isNewOrChanged(company));
+        fingerprints.record(company);
+        assertFalse(fingerprints.isNewOrChanged(company));
+        assertEquals(1, fingerprints.size());
+    }
+
+    @Test
+    public void fieldBoundariesAreFingerprinted() {
+        BolagsfaktaCompany first = company("556123-4567", "Frisör Å");
+        first.setAddress("sa AB");
+        BolagsfaktaCompany second = company("556123-4567", "Frisör Åsa");
+        second.setAddress(" AB");
+        assertNotEquals(HarvestFingerprints.fingerprint(first), HarvestFingerprints.fingerprint(second));
+
+        BolagsfaktaCompany nullAddress = company("556123-4567", "Frisör Åsa AB");
+        nullAddress.setAddress(null);
+        BolagsfaktaCompany emptyAddress = company("556123-4567", "Frisör Åsa AB");
+        emptyAddress.setAddress("");
+        assertNotEquals(HarvestFingerprints.fingerprint(nullAddress), HarvestFingerprints.fingerprint(emptyAddress));
+    }
+
+    @Test
+    public void companiesWithoutAnOrgNrAlwaysCountAsNew() {
+        HarvestFingerprints fingerprints = new HarvestFingerprints(file());
+        BolagsfaktaCompany company = company(null, "Okänt AB");
+        fingerprints.record(company);
+        assertTrue(fingerprints.isNewOrChanged(company));
+        assertEquals(0, fingerprints.size());
+
+        // Org.nrs that don't pack are tracked by their hash
+        BolagsfaktaCompany irregular = company("SE-12", "Bygg HB");
+        fingerprints.record(irregular);
+        assertFalse(fingerprints.isNewOrChanged(irregular));
+    }
+
+    @Test
+    public void fingerprintsSurviveASaveAndReloadPastTheInitialCapacity() throws Exception {
+        HarvestFingerprints fingerprints = new HarvestFingerprints(file());
+        for (int i = 0; i < 3000; i++) {
+            fingerprints.record(company(String.format("556%03d-%04d", i / 1000, i % 1000), "Bolag " + i));
+        }
+        fingerprints.save();
+
+        HarvestFingerprints reloaded = new HarvestFingerprints(file());
+        assertEquals(3000, reloaded.size());
+        for (int i = 0; i < 3000; i++) {
+            assertFalse(reloaded.isNewOrChanged(
+                    company(String.format("556%03d-%04d", i / 1000, i % 1000), "Bolag " + i)));
+        }
+        assertTrue(reloaded.isNewOrChanged(company("556999-0001", "Nytt AB")));
+    }
+
+    @Test
+    public void onlyResultsWithoutErrorsAreRecorded() {
+        HarvestFingerprints fingerprints = new HarvestFingerprints(file());
+        WebsiteChecker.CheckResult checked = new WebsiteChecker.CheckResult();
+        checked.setCompany(company("556000-0001", "Ett AB"));
+        WebsiteChecker.CheckResult failed = new WebsiteChecker.CheckResult();
+        failed.setCompany(company("556000-0002", "Två AB"));
+        failed.setError("timeout");
+
+        fingerprints.recordAll(List.of(checked, failed));
+        assertFalse(fingerprints.isNewOrChanged(checked.getCompany()));
+        assertTrue(fingerprints.isNewOrChanged(failed.getCompany()));
+    }
+
+    @Test
+    public void savingWithoutChangesWritesNothing() throws Exception {
+        HarvestFingerprints fingerprints = new HarvestFingerprints(file());
+        fingerprints.save();
+        assertFalse(Files.exists(file()));
+
+        BolagsfaktaCompany company = company("556123-4567", "Frisör Åsa AB");
+        fingerprints.record(company);
+        fingerprints.save();
+        assertTrue(Files.exists(file()));
+
+        // Recording the same fingerprint again changes nothing, so nothing is written
+        Files.delete(file());
+        fingerprints.record(company);
+        fingerprints.save();
+        assertFalse(Files.exists(file()));
+    }
+
+    @Test
+    public void unrecognizedFilesAreIgnored() throws Exception {
+        Files.write(file(), new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        HarvestFingerprints fingerprints = new HarvestFingerprints(file());
+        assertEquals(0, fingerprints.size());
+        assertTrue(fingerprints.isNewOrChanged(company("556123-4567", "Frisör Åsa AB")));
+    }
+}
@@ -0,0 +1,111 @@
+package com.companytracker;
+
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HttpArchiveTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private final AtomicInteger calls = new AtomicInteger();
+    private String closedPortUrl;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/sida", exchange -> {
+            byte[] body = ("svar " + calls.incrementAndGet()).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/plain");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPortUrl = "http://127.0.0.1:" + socket.getLocalPort() + "/";
+        }
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private Path archive() {
+        return folder.getRoot().toPath().resolve("archive.gz");
+    }
+
+    private static OkHttpClient client(HttpArchive archive) {
+        return new OkHttpClient.Builder().addInterceptor(archive).build();
+    }
+
+    private static String get(OkHttpClient client, String url) throws IOException {
+        try (Response response = client.newCall(new Request.Builder().url(url).build()).execute()) {
+            return response.code() + " " + response.body().string();
+        }
+    }
+
+    private String serverUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/sida";
+    }
+
+    @Test
+    public void responsesReplayInRecordedOrder() throws Exception {
+        try (HttpArchive recording = new HttpArchive(HttpArchive.Mode.RECORD, archive(), 0)) {
+            OkHttpClient client = client(recording);
+            assertEquals("200 svar 1", get(client, serverUrl()));
+            assertEquals("200 svar 2", get(client, serverUrl()));
+        }
+        server.stop(0);
+
+        OkHttpClient replay = client(new HttpArchive(HttpArchive.Mode.REPLAY, archive(), 0));
+        assertEquals("200 svar 1", get(replay, serverUrl()));
+        assertEquals("200 svar 2", get(replay, serverUrl()));
+        // The last recording repeats
+        assertEquals("200 svar 2", get(replay, serverUrl()));
+        assertTrue(get(replay, serverUrl() + "?annan=1").startsWith("404 "));
+    }
+
+    @Test
+    public void failedCallsReplayAsTheSameFailure() throws Exception {
+        try (HttpArchive recording = new HttpArchive(HttpArchive.Mode.RECORD, archive(), 0)) {
+            try {
+                get(client(recording), closedPortUrl);
+                fail("Nothing listens on " + closedPortUrl);
+            } catch (ConnectException e) {
+                // Recorded
+            }
+        }
+
+        OkHttpClient replay = client(new HttpArchive(HttpArchive.Mode.REPLAY, archive(), 0));
+        try {
+            get(replay, closedPortUrl);
+            fail("Replayed a response for a call that failed");
+        } catch (ConnectException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Replayed failure"));
+        }
+    }
+}
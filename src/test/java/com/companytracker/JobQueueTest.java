@@ -0,0 +1,87 @@
+package com.companytracker;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JobQueueTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private JobQueue queue;
+
+    @Before
+    public void openQueue() throws Exception {
+        queue = new JobQueue(folder.getRoot().toPath().resolve("queue.db").toString(), 2);
+        queue.enqueue(List.of(company("5560000001", "Svea Bygg AB"), company("5560000002", "Norrlands Frisör HB")));
+    }
+
+    @After
+    public void closeQueue() throws Exception {
+        queue.close();
+    }
+
+    private static BolagsfaktaCompany company(String orgNr, String name) {
+        BolagsfaktaCompany company = new BolagsfaktaCompany();
+        company.setOrgNr(orgNr);
+        company.setCompanyName(name);
+        return company;
+    }
+
+    @Test
+    public void leasedJobsAreNotLeasedAgain() throws Exception {
+        assertEquals(1, queue.lease("a", 1, 60_000).size());
+        List<JobQueue.Job> jobs = queue.lease("b", 10, 60_000);
+        assertEquals(1, jobs.size());
+        assertEquals("Norrlands Frisör HB", jobs.get(0).getCompanyName());
+        assertTrue(queue.lease("c", 10, 60_000).isEmpty());
+    }
+
+    @Test
+    public void expiredLeasesAreLeasedAgainUntilAttemptsRunOut() throws Exception {
+        // A negative lease expires at once, as if the worker had crashed
+        JobQueue.Job first = queue.lease("a", 1, -1).get(0);
+        JobQueue.Job second = queue.lease("b", 1, -1).get(0);
+        assertEquals(first.getId(), second.getId());
+        assertEquals(2, second.getAttempts());
+
+        // The worker that lost its lease can't complete the job any more
+        assertFalse(queue.complete(first, "a", true, "https://sveabygg.se"));
+
+        // Out of attempts: marked failed instead of being leased a third time
+        List<JobQueue.Job> next = queue.lease("c", 10, 60_000);
+        assertEquals(1, next.size());
+        assertTrue(next.get(0).getId() != first.getId());
+        assertEquals(Integer.valueOf(1), queue.countByState().get(JobQueue.FAILED));
+    }
+
+    @Test
+    public void releaseDoesNotSpendAnAttempt() throws Exception {
+        JobQueue.Job job = queue.lease("a", 1, 60_000).get(0);
+        assertTrue(queue.release(job, "a"));
+        for (int i = 0; i < 3; i++) {
+            JobQueue.Job again = queue.lease("a", 1, 60_000).get(0);
+            assertEquals(job.getId(), again.getId());
+            assertEquals(1, again.getAttempts());
+            assertTrue(queue.release(again, "a"));
+        }
+    }
+
+    @Test
+    public void failedAttemptsGoBackToPendingUntilMaxAttempts() throws Exception {
+        JobQueue.Job job = queue.lease("a", 1, 60_000).get(0);
+        assertTrue(queue.fail(job, "a", "timeout"));
+        JobQueue.Job again = queue.lease("a", 1, 60_000).get(0);
+        assertEquals(job.getId(), again.getId());
+        assertTrue(queue.fail(again, "a", "timeout"));
+        assertEquals(Integer.valueOf(1), queue.countByState().get(JobQueue.FAILED));
+    }
+}
@@ -0,0 +1,64 @@
+package com.companytracker;
+
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class LeadScorerTest {
+
+    private static BolagsfaktaCompany company(double omsattning, double antalAnstallda, String bolagsform) {
+        BolagsfaktaCompany company = new BolagsfaktaCompany();
+        company.setCompanyName("Frisör Åsa AB");
+        company.setOmsattning(omsattning);
+        company.setAntalAnstallda(antalAnstallda);
+        company.setBolagsform(bolagsform);
+        return company;
+    }
+
+    @Test
+    public void scoreAddsLogRevenueLogEmployeesFormAndStaleness() {
+        LeadScorer scorer = new LeadScorer(1.0, 2.0, 3.0, Map.of("Aktiebolag", 0.5), company -> 73);
+
+        // log10(1 + 999) = 3, log2(1 + 7) = 3, 73 of 365 days = 0.2
+        double expected = 3 + 2 * 3 + 0.5 + 3 * 0.2;
+        assertEquals(expected, scorer.score(company(999, 7, "Aktiebolag")), 1e-9);
+    }
+
+    @Test
+    public void bolagsformWeightsIgnoreCaseAndDefaultToZero() {
+        LeadScorer scorer = new LeadScorer(0, 0, 0, Map.of("Aktiebolag", 1.0), company -> 0);
+        assertEquals(1.0, scorer.score(company(0, 0, "AKTIEBOLAG")), 0);
+        assertEquals(0.0, scorer.score(company(0, 0, "Handelsbolag")), 0);
+        assertEquals(0.0, scorer.score(company(0, 0, null)), 0);
+    }
+
+    @Test
+    public void stalenessIsCappedAtAYearAndNeverCheckedCountsAsAYear() {
+        LeadScorer old = new LeadScorer(0, 0, 2.0, Map.of(), company -> 5000);
+        LeadScorer never = new LeadScorer(0, 0, 2.0, Map.of(), company -> Double.POSITIVE_INFINITY);
+        LeadScorer fresh = new LeadScorer(0, 0, 2.0, Map.of(), company -> 0);
+        assertEquals(2.0, old.score(company(0, 0, null)), 0);
+        assertEquals(2.0, never.score(company(0, 0, null)), 0);
+        assertEquals(0.0, fresh.score(company(0, 0, null)), 0);
+    }
+
+    @Test
+    public void negativeFiguresCountAsZero() {
+        LeadScorer scorer = new LeadScorer(1.0, 1.0, 0, Map.of(), company -> 0);
+        assertEquals(0.0, scorer.score(company(-50_000, -3, null)), 0);
+    }
+
+    @Test
+    public void daysSinceReadsSqliteTimestampsInUtc() {
+        String twoDaysAgo = LocalDateTime.now(ZoneOffset.UTC).minusDays(2)
+                .format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        assertEquals(2.0, LeadScorer.daysSince(twoDaysAgo), 0.01);
+        assertEquals(Double.POSITIVE_INFINITY, LeadScorer.daysSince(null), 0);
+        assertEquals(Double.POSITIVE_INFINITY, LeadScorer.daysSince("yesterday"), 0);
+    }
+}
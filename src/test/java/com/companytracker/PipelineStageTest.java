@@ -0,0 +1,134 @@
+package com.companytracker;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PipelineStageTest {
+
+    @Test
+    public void putWaitsWhileTheQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> handled = Collections.synchronizedList(new ArrayList<>());
+        PipelineStage<Integer> stage = new PipelineStage<Integer>("slow", 1, 1, item -> {
+            release.await();
+            handled.add(item);
+        }).start();
+
+        stage.put(1);
+        // Wait until the worker holds the first item, leaving the one queue slot free
+        while (stage.getBusyWorkers() == 0) {
+            Thread.sleep(5);
+        }
+        stage.put(2);
+
+        Thread producer = new Thread(() -> {
+            try {
+                stage.put(3);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        producer.join(300);
+        assertTrue("put returned with the queue full", producer.isAlive());
+        assertEquals(1, stage.getDepth());
+
+        release.countDown();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        stage.close();
+        assertTrue(stage.awaitDrained(5, TimeUnit.SECONDS));
+        assertEquals(List.of(1, 2, 3), handled);
+        assertTrue(stage.getBlockedPutMillis() >= 200);
+    }
+
+    @Test
+    public void closingDrainsQueuedItemsInOrder() throws Exception {
+        List<Integer> handled = Collections.synchronizedList(new ArrayList<>());
+        PipelineStage<Integer> stage = new PipelineStage<>("ordered", 1, 100, handled::add);
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            stage.put(i);
+            expected.add(i);
+        }
+        stage.close();
+        stage.start();
+
+        assertTrue(stage.awaitDrained(5, TimeUnit.SECONDS));
+        assertEquals(expected, handled);
+        assertEquals(100, stage.getProcessed());
+        try {
+            stage.put(100);
+            fail("Accepted an item after close");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void onDrainedRunsOnceAfterEveryWorkerIsDone() throws Exception {
+        AtomicInteger handled = new AtomicInteger();
+        AtomicInteger drained = new AtomicInteger();
+        AtomicInteger handledWhenDrained = new AtomicInteger(-1);
+        PipelineStage<Integer> stage = new PipelineStage<Integer>("wide", 8, 1000, item -> {
+            if (item % 7 == 0) {
+                throw new IllegalArgumentException("item " + item);
+            }
+            handled.incrementAndGet();
+        }).onDrained(() -> {
+            drained.incrementAndGet();
+            handledWhenDrained.set(handled.get());
+        }).start();
+
+        for (int i = 1; i <= 700; i++) {
+            stage.put(i);
+        }
+        stage.close();
+
+        assertTrue(stage.awaitDrained(5, TimeUnit.SECONDS));
+        // awaitDrained only returns once the callback has run
+        assertEquals(1, drained.get());
+        assertEquals(600, handledWhenDrained.get());
+        assertEquals(600, stage.getProcessed());
+        assertEquals(100, stage.getFailed());
+    }
+
+    @Test
+    public void abortDropsQueuedItemsAndStopsWorkers() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicInteger handled = new AtomicInteger();
+        AtomicInteger drained = new AtomicInteger();
+        PipelineStage<Integer> stage = new PipelineStage<Integer>("stuck", 2, 10, item -> {
+            started.countDown();
+            Thread.sleep(60_000);
+            handled.incrementAndGet();
+        }).onDrained(drained::incrementAndGet).start();
+        for (int i = 0; i < 10; i++) {
+            stage.put(i);
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        stage.abort();
+        assertTrue(stage.awaitDrained(5, TimeUnit.SECONDS));
+        assertEquals(0, handled.get());
+        assertEquals(0, stage.getDepth());
+        assertEquals(1, drained.get());
+        try {
+            stage.put(10);
+            fail("Accepted an item after abort");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.companytracker;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PriorityCheckSchedulerTest {
+    // Scores log10(1 + omsattning) only
+    private static final LeadScorer BY_REVENUE = new LeadScorer(1.0, 0, 0, Map.of(), company -> 0);
+
+    private static BolagsfaktaCompany company(String name, double omsattning) {
+        BolagsfaktaCompany company = new BolagsfaktaCompany();
+        company.setCompanyName(name);
+        company.setOmsattning(omsattning);
+        return company;
+    }
+
+    private static List<String> names(List<? extends CompanyRecord> companies) {
+        List<String> names = new ArrayList<>();
+        for (CompanyRecord company : companies) {
+            names.add(company.getCompanyName());
+        }
+        return names;
+    }
+
+    @Test
+    public void checksRunHighestScoreFirstAndTiesInSubmissionOrder() throws Exception {
+        PriorityCheckScheduler scheduler = new PriorityCheckScheduler(BY_REVENUE, 1);
+        scheduler.submitAll(List.of(company("Liten", 10), company("Stor", 1_000_000),
+                company("Mellan A", 5_000), company("Mellan B", 5_000)));
+
+        List<String> order = scheduler.run(CompanyRecord::getCompanyName, Integer.MAX_VALUE, () -> false);
+        assertEquals(List.of("Stor", "Mellan A", "Mellan B", "Liten"), order);
+        assertEquals(0, scheduler.getPending());
+    }
+
+    @Test
+    public void companiesPastMaxChecksStayQueuedAndDrainHighestFirst() throws Exception {
+        PriorityCheckScheduler scheduler = new PriorityCheckScheduler(BY_REVENUE, 1);
+        for (int i = 1; i <= 5; i++) {
+            scheduler.submit(company("Bolag " + i, Math.pow(10, i)));
+        }
+
+        List<String> checked = scheduler.run(CompanyRecord::getCompanyName, 2, () -> false);
+        assertEquals(List.of("Bolag 5", "Bolag 4"), checked);
+        assertEquals(3, scheduler.getPending());
+
+        assertEquals(List.of("Bolag 3", "Bolag 2", "Bolag 1"), names(scheduler.drainPending()));
+        assertEquals(0, scheduler.getPending());
+        assertTrue(scheduler.drainPending().isEmpty());
+    }
+
+    @Test
+    public void shouldStopLeavesTheRestQueued() throws Exception {
+        PriorityCheckScheduler scheduler = new PriorityCheckScheduler(BY_REVENUE, 2);
+        for (int i = 0; i < 10; i++) {
+            scheduler.submit(company("Bolag " + i, i));
+        }
+
+        AtomicInteger checks = new AtomicInteger();
+        List<Integer> results = scheduler.run(company -> checks.incrementAndGet(), Integer.MAX_VALUE,
+                () -> checks.get() >= 3);
+        assertTrue("Ran " + results.size() + " checks", results.size() >= 3 && results.size() <= 4);
+        assertEquals(10 - results.size(), scheduler.getPending());
+    }
+
+    @Test
+    public void everyCompanyIsCheckedOnceAcrossWorkers() throws Exception {
+        PriorityCheckScheduler scheduler = new PriorityCheckScheduler(BY_REVENUE, 4);
+        for (int i = 0; i < 200; i++) {
+            scheduler.submit(company("Bolag " + i, i % 7));
+        }
+
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+        List<Boolean> firstTime = scheduler.run(company -> seen.add(company.getCompanyName()),
+                Integer.MAX_VALUE, () -> false);
+        assertEquals(200, firstTime.size());
+        assertTrue(firstTime.stream().allMatch(Boolean::booleanValue));
+        assertEquals(200, seen.size());
+    }
+}
@@ -0,0 +1,43 @@
+package com.companytracker;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class RemainingWorkTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void itemsThatLookLikeHeadersReadBackAsItems() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("remaining.txt");
+        new RemainingWork(List.of("# 1 Städ AB", "Svea Bygg AB", "\\Snedstreck HB", "#Hashtag AB"))
+                .setAttribute("query", "Frisör")
+                .setAttribute("next_page", 3)
+                .write(file);
+
+        RemainingWork read = RemainingWork.read(file);
+        assertEquals(List.of("# 1 Städ AB", "Svea Bygg AB", "\\Snedstreck HB", "#Hashtag AB"), read.getItems());
+        assertEquals("Frisör", read.getAttribute("query"));
+        assertEquals(3, read.getIntAttribute("next_page", 1));
+        assertNull(read.getAttribute("1 Städ AB"));
+    }
+
+    @Test
+    public void lineBreaksInValuesDoNotSplitEntries() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("remaining.txt");
+        new RemainingWork(List.of("Två\nrader AB"))
+                .setAttribute("query", "a\r\n# next_page: 9")
+                .write(file);
+
+        RemainingWork read = RemainingWork.read(file);
+        assertEquals(List.of("Två rader AB"), read.getItems());
+        assertEquals(1, read.getIntAttribute("next_page", 1));
+    }
+}
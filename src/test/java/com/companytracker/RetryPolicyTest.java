@@ -0,0 +1,98 @@
+package com.companytracker;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RetryPolicyTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private RetryPolicy policy(ApiCallBudget budget) {
+        return new RetryPolicy("test", budget, 4, 1, 5, 1000, 0.1, 10);
+    }
+
+    @Test
+    public void retriesTransientFailuresUntilSuccess() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        String result = policy(null).execute(() -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new IOException("connection reset");
+            }
+            return "ok";
+        });
+        assertEquals("ok", result);
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void doesNotRetryClientErrors() {
+        AtomicInteger calls = new AtomicInteger();
+        try {
+            policy(null).execute(() -> {
+                calls.incrementAndGet();
+                throw new UpstreamException("bad request", 400, null);
+            });
+            fail();
+        } catch (IOException e) {
+            assertEquals(1, calls.get());
+        }
+    }
+
+    @Test
+    public void interruptsAreNotRetryableButTimeoutsAre() {
+        RetryPolicy policy = policy(null);
+        assertFalse(policy.isRetryable(new InterruptedIOException("interrupted")));
+        assertTrue(policy.isRetryable(new SocketTimeoutException("timeout")));
+        assertFalse(policy.isRetryable(new CircuitOpenException("test", java.time.Instant.now())));
+    }
+
+    @Test
+    public void eachRetryIsChargedToTheBudget() throws Exception {
+        ApiCallBudget budget = new ApiCallBudget(2, 100, folder.getRoot().toPath().resolve("budget.properties"));
+        assertTrue(budget.tryAcquire()); // the first attempt, as callers do
+        AtomicInteger calls = new AtomicInteger();
+        try {
+            policy(budget).execute(() -> {
+                calls.incrementAndGet();
+                throw new IOException("connection reset");
+            });
+            fail();
+        } catch (IOException e) {
+            // One retry fit the run budget of two, the next was refused
+            assertEquals(2, calls.get());
+            assertEquals(2, budget.getUsedThisRun());
+        }
+        budget.close();
+    }
+
+    @Test
+    public void errorsCompleteTheFuture() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<String> future = policy(null).executeAsync(() -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new IOException("connection reset");
+            }
+            throw new AssertionError("boom");
+        }, Runnable::run);
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof AssertionError);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.companytracker;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SearchResultRematcherTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DatabaseService storage;
+    private final WebsiteChecker checker = new WebsiteChecker();
+
+    @Before
+    public void openDatabase() throws Exception {
+        storage = new DatabaseService(folder.getRoot().toPath().resolve("companies.db").toString());
+    }
+
+    @After
+    public void closeDatabase() throws Exception {
+        storage.close();
+    }
+
+    private static WebsiteChecker.CheckResult result(String name, String matchedUrl,
+                                                     WebsiteChecker.ResolutionTier tier, List<String> searchUrls) {
+        BolagsfaktaCompany company = new BolagsfaktaCompany();
+        company.setCompanyName(name);
+        WebsiteChecker.CheckResult result = new WebsiteChecker.CheckResult();
+        result.setCompany(company);
+        result.setMatchedUrl(matchedUrl);
+        result.setHasWebsite(matchedUrl != null);
+        result.setResolvedBy(tier);
+        result.setSearchUrls(searchUrls);
+        return result;
+    }
+
+    @Test
+    public void searchDecisionsAreRematched() throws Exception {
+        // Stored as no match, as an older version of the matching rules decided
+        checker.saveResults(storage, List.of(result("Kvarnbo Bygg AB", null, WebsiteChecker.ResolutionTier.SEARCH,
+                List.of("https://www.allabolag.se/kvarnbo", "https://kvarnbobygg.se/"))));
+
+        assertEquals(1, new SearchResultRematcher(storage, 2).run());
+        Company company = storage.getCompanyByName("Kvarnbo Bygg AB");
+        assertEquals("https://kvarnbobygg.se/", company.getWebsite());
+        assertTrue(company.isHasWebsite());
+    }
+
+    @Test
+    public void decisionsFromOtherTiersDropEarlierSearchResults() throws Exception {
+        checker.saveResults(storage, List.of(result("Tallbo Måleri AB", null, WebsiteChecker.ResolutionTier.SEARCH,
+                List.of("https://www.hitta.se/tallbo", "https://www.allabolag.se/tallbo"))));
+        assertEquals(1, storage.getSearchResults(0, 10).size());
+
+        checker.saveResults(storage, List.of(result("Tallbo Måleri AB", "https://tallbo.nu/",
+                WebsiteChecker.ResolutionTier.DOMAIN_PROBE, null)));
+        assertTrue(storage.getSearchResults(0, 10).isEmpty());
+
+        // The old non-matching list would otherwise have cleared the probed website
+        assertEquals(0, new SearchResultRematcher(storage, 2).run());
+        assertEquals("https://tallbo.nu/", storage.getCompanyByName("Tallbo Måleri AB").getWebsite());
+    }
+
+    @Test
+    public void cacheHitsKeepTheirSearchResults() throws Exception {
+        checker.saveResults(storage, List.of(result("Östra Fisk AB", null, WebsiteChecker.ResolutionTier.SEARCH,
+                List.of("https://www.hitta.se/ostra"))));
+        checker.saveResults(storage, List.of(result("Östra Fisk AB", null, WebsiteChecker.ResolutionTier.CACHE, null)));
+
+        assertEquals(1, storage.getSearchResults(0, 10).size());
+        assertFalse(storage.getCompanyByName("Östra Fisk AB").isHasWebsite());
+    }
+}
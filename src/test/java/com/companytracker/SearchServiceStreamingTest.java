@@ -0,0 +1,127 @@
+package com.companytracker;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SearchServiceStreamingTest {
+    private static final long TAIL_BYTES = 64L << 20;
+
+    private HttpServer server;
+    private volatile String head;
+    private volatile boolean endlessTail;
+    private final AtomicLong tailWritten = new AtomicLong();
+    private final CountDownLatch responseEnded = new CountDownLatch(1);
+
+    /**
+     * LangSearch stand-in: answers with head, followed by a huge run of non-matching
+     * results when endlessTail is set, and counts how much of that tail got out
+     */
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/search", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(head.getBytes(StandardCharsets.UTF_8));
+                if (endlessTail) {
+                    byte[] chunk = ",{\"url\":\"https://www.annat-bolag.se/sida\"}".repeat(1000)
+                            .getBytes(StandardCharsets.UTF_8);
+                    while (tailWritten.get() < TAIL_BYTES) {
+                        body.write(chunk);
+                        body.flush();
+                        tailWritten.addAndGet(chunk.length);
+                    }
+                    body.write("]}}}".getBytes(StandardCharsets.UTF_8));
+                }
+            } catch (IOException e) {
+                // The client hung up
+            } finally {
+                responseEnded.countDown();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private SearchService service() {
+        return new SearchService("test-key", "http://127.0.0.1:" + server.getAddress().getPort() + "/search");
+    }
+
+    private static String results(String... urls) {
+        StringBuilder json = new StringBuilder();
+        for (String url : urls) {
+            json.append(json.length() == 0 ? "" : ",").append("{\"name\":\"x\",\"url\":\"").append(url).append("\"}");
+        }
+        return json.toString();
+    }
+
+    @Test
+    public void stopsReadingAtTheFirstMatch() throws Exception {
+        head = "{\"code\":200,\"data\":{\"webPages\":{\"value\":["
+                + results("https://www.allabolag.se/kvarnbo", "https://kvarnbobygg.se/");
+        endlessTail = true;
+
+        SearchService.SearchResult result = service().searchForMatchingUrl("Kvarnbo Bygg AB");
+        assertEquals("https://kvarnbobygg.se/", result.getMatchedUrl());
+        assertEquals(List.of("https://www.allabolag.se/kvarnbo", "https://kvarnbobygg.se/"), result.getAllUrls());
+        assertEquals("https://www.allabolag.se/kvarnbo", result.getWebsiteUrl());
+        assertFalse(result.isComplete());
+
+        // Closing the connection makes the server's writes fail long before the tail is out
+        assertTrue(responseEnded.await(10, TimeUnit.SECONDS));
+        assertTrue("Sent " + tailWritten.get() + " bytes of the tail", tailWritten.get() < TAIL_BYTES);
+    }
+
+    @Test
+    public void readsEveryResultWhenNoneMatches() throws Exception {
+        head = "{\"code\":200,\"data\":{\"queryContext\":{\"originalQuery\":\"q\"},\"webPages\":{\"value\":["
+                + results("https://www.allabolag.se/ostra", "https://www.hitta.se/ostra")
+                + ",\"not an object\",{\"name\":\"no url\"}]},\"images\":[]}}";
+
+        SearchService.SearchResult result = service().searchForMatchingUrl("Östra Måleri AB");
+        assertNull(result.getMatchedUrl());
+        assertEquals(List.of("https://www.allabolag.se/ostra", "https://www.hitta.se/ostra"), result.getAllUrls());
+        assertTrue(result.isComplete());
+    }
+
+    @Test
+    public void readsResponsesWithoutTheDataWrapper() throws Exception {
+        head = "{\"webPages\":{\"value\":[" + results("https://www.hitta.se/tallbo", "https://tallbomaleri.se") + "]}}";
+
+        SearchService.SearchResult result = service().searchForMatchingUrl("Tallbo Måleri AB");
+        assertEquals("https://tallbomaleri.se", result.getMatchedUrl());
+        assertFalse(result.isComplete());
+    }
+
+    @Test
+    public void emptyResponsesHaveNoWebsite() throws Exception {
+        head = "{\"code\":200,\"data\":{\"webPages\":{\"value\":[]}}}";
+
+        SearchService.SearchResult result = service().searchForMatchingUrl("Ingenstans Konsult AB");
+        assertNull(result.getMatchedUrl());
+        assertFalse(result.isHasWebsite());
+        assertTrue(result.getAllUrls().isEmpty());
+        assertTrue(result.isComplete());
+    }
+}
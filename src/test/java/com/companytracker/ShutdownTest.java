@@ -0,0 +1,128 @@
+package com.companytracker;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The shutdown hook is process-wide and can only run once, so it is exercised in a
+ * child JVM that runs Child and exits; the test reads back what happened in which order.
+ */
+public class ShutdownTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Marks the child's own lines, which share stdout with the log
+    private static final String CHILD = "child: ";
+    private String errors;
+
+    /**
+     * Starts work and resources, then exits with 3 from another thread the way a
+     * signal would. With "finish" the work ends once shutdown is requested; without,
+     * it never does and the hook has to give up at the timeout.
+     */
+    public static class Child {
+        public static void main(String[] args) throws Exception {
+            boolean finish = args.length > 0 && args[0].equals("finish");
+            Shutdown.Work work = Shutdown.begin("batch");
+            Shutdown.register("first", () -> print("closed first"));
+            Shutdown.register("second", () -> print("closed second"));
+            AutoCloseable closedNormally = () -> print("closed unregistered");
+            Shutdown.register("unregistered", closedNormally);
+            Shutdown.unregister(closedNormally);
+            Shutdown.register("failing", () -> {
+                throw new IllegalStateException("already closed");
+            });
+            Shutdown.onRequest(() -> print("stop admitting"));
+
+            print("started");
+            new Thread(() -> System.exit(3)).start();
+            if (!Shutdown.awaitRequest(10, TimeUnit.SECONDS)) {
+                print("never requested");
+                return;
+            }
+            print("requested " + Shutdown.isRequested());
+            if (!finish) {
+                Thread.sleep(60_000);
+            }
+            Thread.sleep(200);
+            print("saved");
+            work.close();
+            Thread.sleep(60_000);
+        }
+
+        private static synchronized void print(String line) {
+            System.out.println(CHILD + line);
+            System.out.flush();
+        }
+    }
+
+    private List<String> runChild(String mode, int exitCode) throws Exception {
+        File output = folder.newFile();
+        File errorOutput = folder.newFile();
+        Process process = new ProcessBuilder(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), Child.class.getName(), mode)
+                .directory(folder.getRoot())
+                .redirectOutput(output)
+                .redirectError(errorOutput)
+                .start();
+        assertTrue("Child didn't exit", process.waitFor(20, TimeUnit.SECONDS));
+        assertEquals(exitCode, process.exitValue());
+        errors = Files.readString(errorOutput.toPath());
+        List<String> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(output.toPath(), StandardCharsets.UTF_8)) {
+            if (line.startsWith(CHILD)) {
+                lines.add(line.substring(CHILD.length()));
+            }
+        }
+        return lines;
+    }
+
+    @Test
+    public void runningWorkFinishesBeforeResourcesCloseInReverseOrder() throws Exception {
+        assertEquals(Arrays.asList("started", "stop admitting", "requested true", "saved",
+                "closed second", "closed first"), runChild("finish", 3));
+        // A resource that fails to close doesn't keep the others open
+        assertTrue(errors, errors.contains("Could not close failing: already closed"));
+    }
+
+    @Test
+    public void resourcesAreClosedWhenWorkOutlastsTheTimeout() throws Exception {
+        Files.write(folder.getRoot().toPath().resolve(".env"),
+                "SHUTDOWN_TIMEOUT=1\n".getBytes(StandardCharsets.UTF_8));
+
+        long start = System.nanoTime();
+        List<String> lines = runChild("hang", 3);
+        long elapsedSeconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start);
+        assertEquals(Arrays.asList("started", "stop admitting", "requested true", "closed second", "closed first"),
+                lines);
+        assertTrue(errors, errors.contains("Shutdown timed out after 1 s with batch still running"));
+        assertTrue("Took " + elapsedSeconds + " s", elapsedSeconds < 15);
+    }
+
+    @Test
+    public void awaitRequestTimesOutWhileNoShutdownIsRequested() {
+        long start = System.nanoTime();
+        assertFalse(Shutdown.awaitRequest(50, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertFalse(Shutdown.isRequested());
+        // Closing work nobody waits for is harmless, and so is closing it twice
+        Shutdown.Work work = Shutdown.begin("test");
+        work.close();
+        work.close();
+    }
+}
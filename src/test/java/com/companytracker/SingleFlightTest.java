@@ -0,0 +1,114 @@
+package com.companytracker;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+
+    @Test
+    public void concurrentCallersShareOneCall() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletableFuture<SingleFlight.Call<String>> first = CompletableFuture.supplyAsync(() -> {
+            try {
+                return flight.execute("acme", () -> {
+                    calls.incrementAndGet();
+                    started.countDown();
+                    release.await();
+                    return "https://acme.se";
+                });
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<SingleFlight.Call<String>> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return flight.execute("acme", () -> {
+                    calls.incrementAndGet();
+                    return "other";
+                });
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        // Wait until the second caller is parked on the shared call
+        while (flight.getSharedCalls() == 0) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        assertFalse(first.get(5, TimeUnit.SECONDS).isShared());
+        SingleFlight.Call<String> shared = second.get(5, TimeUnit.SECONDS);
+        assertTrue(shared.isShared());
+        assertEquals("https://acme.se", shared.getValue());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void anErrorCompletesWaitingCallers() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> {
+            try {
+                flight.execute("acme", () -> {
+                    started.countDown();
+                    release.await();
+                    throw new AssertionError("boom");
+                });
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<SingleFlight.Call<String>> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return flight.joinIfInFlight("acme");
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        while (flight.getSharedCalls() == 0) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        try {
+            waiter.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof AssertionError);
+        }
+        try {
+            first.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof AssertionError);
+        }
+    }
+
+    @Test
+    public void joinIfInFlightDoesNotStartACall() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        assertNull(flight.joinIfInFlight("acme"));
+        assertEquals(0, flight.getSharedCalls());
+    }
+}